@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.bench;
+
+import net.shipilev.fjptrace.Event;
+import net.shipilev.fjptrace.EventType;
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.Options;
+import net.shipilev.fjptrace.TaskStatus;
+import net.shipilev.fjptrace.TraceGenerator;
+import net.shipilev.fjptrace.WorkerStatus;
+import net.shipilev.fjptrace.tasks.PrintTaskTreesTask;
+import net.shipilev.fjptrace.tasks.ReadTask;
+import net.shipilev.fjptrace.tasks.RenderWorkerStateTask;
+import net.shipilev.fjptrace.tasks.TaskStatusTask;
+import net.shipilev.fjptrace.tasks.WorkerStatusTask;
+import net.shipilev.fjptrace.util.Multimap;
+import net.shipilev.fjptrace.util.Timeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyzer stages on the synthetic traces. Every stage gets a fresh task over the
+ * same prepared input; the inputs for the later stages are computed once per trial.
+ * <p>
+ * The largest configurations need lots of heap, pass -Xmx with -jvmArgsAppend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AnalyzerBenchmark {
+
+    /**
+     * Timeline queries per operation.
+     */
+    public static final int QUERIES = 1024;
+
+    @Param({"1000000", "10000000", "100000000"})
+    public long events;
+
+    @Param({"8", "64", "256"})
+    public int workers;
+
+    private PrintStream stdout;
+    private File dir;
+    private Options opts;
+
+    private Events trace;
+    private WorkerStatus workerStatus;
+
+    private PrintTaskTreesTask trees;
+    private Multimap<Long, Event> byTag;
+    private Graphics2D graphics;
+
+    private Timeline<Integer> timeline;
+    private long[] sweep;
+    private long[] scattered;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        // stages are chatty, keep their progress out of the benchmark output
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                // discard
+            }
+        }));
+
+        dir = File.createTempFile("fjp-analyzer", "");
+        dir.delete();
+        dir.mkdirs();
+
+        File file = new File(dir, "synthetic.trace");
+        long generated;
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+            generated = generator(workers).generate(os, events);
+        }
+        stdout.printf("# Synthetic trace: %d events requested, %d generated%n", events, generated);
+
+        opts = new Options(new String[]{"-s", file.getAbsolutePath(), "-t", new File(dir, "out").getAbsolutePath()});
+        opts.parse();
+
+        trace = new ReadTask(opts).invoke();
+        workerStatus = new WorkerStatusTask(opts, trace).invoke();
+
+        // full render once, so the edge renderer has its coordinate mapping
+        trees = new PrintTaskTreesTask(opts, trace);
+        trees.invoke();
+        byTag = new Multimap<>();
+        for (Event e : trace) {
+            byTag.put(e.tag, e);
+        }
+        graphics = new BufferedImage(opts.getWidth(), opts.getHeight(), BufferedImage.TYPE_INT_RGB).createGraphics();
+
+        // the timeline of the single worker, queried the way the renderers do
+        long worker = Collections.max(trace.getWorkers());
+        timeline = new Timeline<>();
+        int count = 0;
+        for (Event e : trace) {
+            if (e.workerId == worker) {
+                timeline.add(e.time, count++);
+            }
+        }
+
+        sweep = new long[QUERIES];
+        scattered = new long[QUERIES];
+        Random r = new Random(42);
+        for (int q = 0; q < QUERIES; q++) {
+            sweep[q] = trace.getStart() + (trace.getEnd() - trace.getStart()) * q / QUERIES;
+            scattered[q] = trace.getStart() + (long) (r.nextDouble() * (trace.getEnd() - trace.getStart()));
+        }
+        Arrays.sort(sweep);
+    }
+
+    /**
+     * @return the generator of the traces with the given worker count; it is seeded,
+     *         so the trace is the same in every trial
+     */
+    static TraceGenerator generator(int workers) {
+        return new TraceGenerator().workers(workers);
+    }
+
+    /**
+     * @return the number of events in the trace the trials run on, which is over
+     *         the requested count by a single tree at most
+     */
+    static long generatedEvents(long events, int workers) throws IOException {
+        return generator(workers).generate(new OutputStream() {
+            @Override
+            public void write(int b) {
+                // discard
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                // discard
+            }
+        }, events);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        System.setOut(stdout);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public Events read() {
+        return new ReadTask(opts).invoke();
+    }
+
+    @Benchmark
+    public TaskStatus taskStatus() {
+        return new TaskStatusTask(trace).invoke();
+    }
+
+    @Benchmark
+    public void renderWorkerState() {
+        new RenderWorkerStateTask(opts, trace, workerStatus).invoke();
+    }
+
+    @Benchmark
+    public void renderEdges() {
+        trees.renderEdges(byTag, graphics, EventType.FORK, EventType.EXEC, false, Color.GREEN);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void timelineSweep(Blackhole bh) {
+        for (long time : sweep) {
+            bh.consume(timeline.getStatus(time, false));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void timelineScattered(Blackhole bh) {
+        for (long time : scattered) {
+            bh.consume(timeline.getStatus(time, false));
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.bench;
+
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs {@link AnalyzerBenchmark} with the GC profiler, and reports the stage
+ * throughput and allocation normalized to the single trace event. The events
+ * are counted in the generated trace, which can be a bit over the requested size.
+ */
+public class AnalyzerHotPaths {
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        OptionParser parser = new OptionParser();
+
+        OptionSpec<String> events = parser.accepts("events", "Trace sizes")
+                .withRequiredArg().ofType(String.class).withValuesSeparatedBy(',').describedAs("N");
+
+        OptionSpec<String> workers = parser.accepts("workers", "Worker counts")
+                .withRequiredArg().ofType(String.class).withValuesSeparatedBy(',').describedAs("N");
+
+        OptionSpec<String> stages = parser.accepts("stages", "Run only the stages matching the regexp")
+                .withRequiredArg().ofType(String.class).describedAs("regexp").defaultsTo(".*");
+
+        OptionSpec<String> heap = parser.accepts("heap", "Heap size for the benchmark JVM")
+                .withRequiredArg().ofType(String.class).describedAs("size");
+
+        parser.accepts("h", "Print this help");
+
+        OptionSet set;
+        try {
+            set = parser.parse(args);
+        } catch (OptionException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            System.err.println();
+            parser.printHelpOn(System.err);
+            System.exit(1);
+            return;
+        }
+
+        if (set.has("h")) {
+            parser.printHelpOn(System.out);
+            return;
+        }
+
+        ChainedOptionsBuilder opts = new OptionsBuilder()
+                .include(AnalyzerBenchmark.class.getName() + "\\." + set.valueOf(stages) + "$")
+                .addProfiler(GCProfiler.class);
+        if (set.has(events)) {
+            opts = opts.param("events", set.valuesOf(events).toArray(new String[0]));
+        }
+        if (set.has(workers)) {
+            opts = opts.param("workers", set.valuesOf(workers).toArray(new String[0]));
+        }
+        if (set.has(heap)) {
+            opts = opts.jvmArgsAppend("-Xms" + set.valueOf(heap), "-Xmx" + set.valueOf(heap));
+        }
+
+        System.out.println();
+        System.out.printf("%-20s %12s %8s %12s %14s %14s %12s%n",
+                "Stage", "Events", "Workers", "ms/op", "Mevents/s", "Alloc, MB/op", "B/event");
+
+        // normalize to the events actually in the trace, not the requested count
+        Map<String, Long> counts = new HashMap<>();
+        for (RunResult r : new Runner(opts.build()).run()) {
+            BenchmarkParams params = r.getParams();
+            String benchmark = params.getBenchmark();
+            String stage = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+            long count = generatedEvents(counts, params);
+
+            double msPerOp = r.getPrimaryResult().getScore();
+            double alloc = allocPerOp(r.getSecondaryResults());
+
+            // timeline ops are single queries, not the passes over the trace
+            boolean perEvent = !stage.startsWith("timeline");
+
+            System.out.printf("%-20s %12d %8s %12.3f %14s %14.2f %12s%n",
+                    stage, count, params.getParam("workers"), msPerOp,
+                    perEvent ? String.format("%.2f", count / msPerOp / 1000) : "-",
+                    alloc / 1024 / 1024,
+                    perEvent ? String.format("%.1f", alloc / count) : "-");
+        }
+    }
+
+    private static long generatedEvents(Map<String, Long> counts, BenchmarkParams params) throws IOException {
+        long events = Long.parseLong(params.getParam("events"));
+        int workers = Integer.parseInt(params.getParam("workers"));
+        String key = events + "/" + workers;
+        Long count = counts.get(key);
+        if (count == null) {
+            count = AnalyzerBenchmark.generatedEvents(events, workers);
+            counts.put(key, count);
+        }
+        return count;
+    }
+
+    private static double allocPerOp(Map<String, Result> secondary) {
+        for (Map.Entry<String, Result> e : secondary.entrySet()) {
+            if (e.getKey().endsWith("gc.alloc.rate.norm")) {
+                return e.getValue().getScore();
+            }
+        }
+        return Double.NaN;
+    }
+
+}
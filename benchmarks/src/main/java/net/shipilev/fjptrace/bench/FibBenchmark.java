@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Recursive Fibonacci: lots of tiny tasks, fork-heavy.
+ */
+@State(Scope.Benchmark)
+public class FibBenchmark extends PoolBenchmark {
+
+    @Param("24")
+    public int n;
+
+    /**
+     * Subproblems below this are computed sequentially.
+     */
+    @Param("8")
+    public int threshold;
+
+    @Benchmark
+    public long fib() {
+        countOp();
+        return pool.invoke(new Fib(n, threshold));
+    }
+
+    static class Fib extends RecursiveTask<Long> {
+        private final int n;
+        private final int threshold;
+
+        Fib(int n, int threshold) {
+            this.n = n;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected Long compute() {
+            if (n <= threshold) {
+                return seq(n);
+            }
+            Fib left = new Fib(n - 1, threshold);
+            Fib right = new Fib(n - 2, threshold);
+            left.fork();
+            return right.compute() + left.join();
+        }
+
+        private static long seq(int n) {
+            return (n <= 1) ? n : seq(n - 1) + seq(n - 2);
+        }
+    }
+
+}
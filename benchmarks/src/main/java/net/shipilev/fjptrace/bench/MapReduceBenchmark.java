@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.CountedCompleter;
+
+/**
+ * Map-reduce (sum of squares) over {@link CountedCompleter}: no joins,
+ * completion is propagated through the pending counts.
+ */
+@State(Scope.Benchmark)
+public class MapReduceBenchmark extends PoolBenchmark {
+
+    @Param("1000000")
+    public int size;
+
+    /**
+     * Ranges below this are reduced sequentially.
+     */
+    @Param("1000")
+    public int threshold;
+
+    private long[] source;
+
+    @Setup(Level.Trial)
+    public void setupArray() {
+        source = new long[size];
+        for (int i = 0; i < size; i++) {
+            source[i] = i;
+        }
+    }
+
+    @Benchmark
+    public long mapReduce() {
+        countOp();
+        return pool.invoke(new SumSquares(null, source, 0, source.length, threshold));
+    }
+
+    static class SumSquares extends CountedCompleter<Long> {
+        private final long[] array;
+        private final int lo;
+        private final int hi;
+        private final int threshold;
+        private SumSquares sibling;
+        private long result;
+
+        SumSquares(CountedCompleter<?> parent, long[] array, int lo, int hi, int threshold) {
+            super(parent);
+            this.array = array;
+            this.lo = lo;
+            this.hi = hi;
+            this.threshold = threshold;
+        }
+
+        @Override
+        public void compute() {
+            if (hi - lo > threshold) {
+                int mid = (lo + hi) >>> 1;
+                SumSquares left = new SumSquares(this, array, lo, mid, threshold);
+                SumSquares right = new SumSquares(this, array, mid, hi, threshold);
+                left.sibling = right;
+                right.sibling = left;
+                setPendingCount(1);
+                right.fork();
+                left.compute();
+            } else {
+                long sum = 0;
+                for (int i = lo; i < hi; i++) {
+                    sum += array[i] * array[i];
+                }
+                result = sum;
+                tryComplete();
+            }
+        }
+
+        @Override
+        public void onCompletion(CountedCompleter<?> caller) {
+            if (caller != this) {
+                SumSquares child = (SumSquares) caller;
+                result = child.result + child.sibling.result;
+            }
+        }
+
+        @Override
+        public Long getRawResult() {
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel merge sort over {@link RecursiveAction}: invokeAll-style decomposition
+ * with real work at the leaves.
+ */
+@State(Scope.Benchmark)
+public class MergeSortBenchmark extends PoolBenchmark {
+
+    @Param("100000")
+    public int size;
+
+    /**
+     * Ranges below this are sorted sequentially.
+     */
+    @Param("1000")
+    public int threshold;
+
+    private int[] source;
+
+    @Setup(Level.Trial)
+    public void setupArray() {
+        Random r = new Random(42);
+        source = new int[size];
+        for (int i = 0; i < size; i++) {
+            source[i] = r.nextInt();
+        }
+    }
+
+    @Benchmark
+    public int mergeSort() {
+        countOp();
+        int[] a = source.clone();
+        pool.invoke(new Sort(a, new int[a.length], 0, a.length, threshold));
+        return a[0];
+    }
+
+    static class Sort extends RecursiveAction {
+        private final int[] a;
+        private final int[] tmp;
+        private final int lo;
+        private final int hi;
+        private final int threshold;
+
+        Sort(int[] a, int[] tmp, int lo, int hi, int threshold) {
+            this.a = a;
+            this.tmp = tmp;
+            this.lo = lo;
+            this.hi = hi;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= threshold) {
+                Arrays.sort(a, lo, hi);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new Sort(a, tmp, lo, mid, threshold), new Sort(a, tmp, mid, hi, threshold));
+            merge(mid);
+        }
+
+        private void merge(int mid) {
+            System.arraycopy(a, lo, tmp, lo, hi - lo);
+            int i = lo, j = mid, k = lo;
+            while (i < mid && j < hi) {
+                a[k++] = (tmp[i] <= tmp[j]) ? tmp[i++] : tmp[j++];
+            }
+            while (i < mid) {
+                a[k++] = tmp[i++];
+            }
+            while (j < hi) {
+                a[k++] = tmp[j++];
+            }
+        }
+    }
+
+}
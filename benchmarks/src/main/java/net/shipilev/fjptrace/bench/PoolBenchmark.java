@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.bench;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool lifecycle shared by the recorder overhead benchmarks.
+ * <p>
+ * Benchmarks only use the public j.u.c API, so the same code runs against the
+ * stock pool and against the instrumented one on bootclasspath. If {@link #OPS_LOG}
+ * is set, the number of operations done in the trial, warmup included, is written
+ * there on teardown: that is how {@link RecorderOverhead} relates the trace size
+ * to the single operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class PoolBenchmark {
+
+    public static final String OPS_LOG = "fjptrace.bench.opsLog";
+
+    /**
+     * Pool parallelism, 0 for the number of available processors.
+     */
+    @Param("0")
+    public int threads;
+
+    protected ForkJoinPool pool;
+
+    private final AtomicLong ops = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setupPool() {
+        pool = (threads > 0) ? new ForkJoinPool(threads) : new ForkJoinPool();
+        ops.set(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardownPool() throws InterruptedException, FileNotFoundException {
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+
+        String log = System.getProperty(OPS_LOG);
+        if (log != null) {
+            try (PrintWriter pw = new PrintWriter(log)) {
+                pw.println(ops.get());
+            }
+        }
+    }
+
+    protected final void countOp() {
+        ops.incrementAndGet();
+    }
+
+}
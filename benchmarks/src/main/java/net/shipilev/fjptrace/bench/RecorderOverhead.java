@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.bench;
+
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import net.shipilev.fjptrace.TraceFormat;
+import net.shipilev.fjptrace.TraceMeta;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the workloads against the stock pool, the instrumented pool with tracing
+ * disabled, and the instrumented pool with tracing enabled at several buffer
+ * settings, then reports the throughput loss and the cost of a single event.
+ * <p>
+ * Every configuration is a separate JMH run, since the pool implementation is
+ * chosen by the JVM flags. Per-event cost is the time difference against the
+ * disabled run, divided by the number of events per operation; the latter is
+ * counted in the trace, without the metadata blocks and the records the buffer
+ * flushes write (TRACE_*, STEAL_FAILED), and divided by the operation count.
+ */
+public class RecorderOverhead {
+
+    private static final Class<?>[] WORKLOADS = {
+            FibBenchmark.class,
+            MergeSortBenchmark.class,
+            MapReduceBenchmark.class,
+            SubmissionStormBenchmark.class,
+    };
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        OptionParser parser = new OptionParser();
+
+        OptionSpec<String> jar = parser.accepts("jar", "Instrumented pool jar")
+                .withRequiredArg().ofType(String.class).describedAs("file").defaultsTo("../target/fjp-trace.jar");
+
+        OptionSpec<String> jvm = parser.accepts("jvm", "JVM to run the benchmarks with, should accept -Xbootclasspath/p")
+                .withRequiredArg().ofType(String.class).describedAs("path");
+
+        OptionSpec<String> filter = parser.accepts("workloads", "Run only the workloads matching the regexp")
+                .withRequiredArg().ofType(String.class).describedAs("regexp").defaultsTo(".*");
+
+        OptionSpec<Integer> bufferSizes = parser.accepts("bufferSizes", "Trace buffer sizes to try")
+                .withRequiredArg().ofType(int.class).withValuesSeparatedBy(',').describedAs("bytes")
+                .defaultsTo(64 * 1024, 1024 * 1024);
+
+        OptionSpec<Integer> bufferTimes = parser.accepts("bufferTimes", "Trace buffer times to try")
+                .withRequiredArg().ofType(int.class).withValuesSeparatedBy(',').describedAs("msec")
+                .defaultsTo(10, 1000);
+
+        OptionSpec<Double> maxEventCost = parser.accepts("maxEventCost", "Fail if any event costs more than this")
+                .withRequiredArg().ofType(double.class).describedAs("ns");
+
+        OptionSpec<Double> maxDisabledLoss = parser.accepts("maxDisabledLoss", "Fail if the disabled tracer loses more throughput than this")
+                .withRequiredArg().ofType(double.class).describedAs("%");
+
+        parser.accepts("h", "Print this help");
+
+        OptionSet set;
+        try {
+            set = parser.parse(args);
+        } catch (OptionException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            System.err.println();
+            parser.printHelpOn(System.err);
+            System.exit(1);
+            return;
+        }
+
+        if (set.has("h")) {
+            parser.printHelpOn(System.out);
+            return;
+        }
+
+        String bootJar = "-Xbootclasspath/p:" + new File(set.valueOf(jar)).getAbsolutePath();
+
+        List<Config> configs = new ArrayList<>();
+        configs.add(new Config("stock", false));
+        configs.add(new Config("trace=false", false, bootJar));
+        for (int size : set.valuesOf(bufferSizes)) {
+            for (int time : set.valuesOf(bufferTimes)) {
+                configs.add(new Config("trace=true, " + (size / 1024) + "Kb, " + time + "ms", true,
+                        bootJar,
+                        "-Djava.util.concurrent.ForkJoinPool.trace=true",
+                        "-Djava.util.concurrent.ForkJoinPool.bufferSize=" + size,
+                        "-Djava.util.concurrent.ForkJoinPool.bufferTimeMsec=" + time));
+            }
+        }
+
+        List<String> failures = new ArrayList<>();
+        List<String> report = new ArrayList<>();
+
+        for (Class<?> workload : WORKLOADS) {
+            if (!workload.getSimpleName().matches(set.valueOf(filter))) {
+                continue;
+            }
+
+            double stockScore = Double.NaN;
+            double disabledScore = Double.NaN;
+
+            report.add("");
+            report.add(workload.getSimpleName() + ":");
+            report.add(String.format("  %-30s %20s %10s %12s %12s", "Config", "Score, us/op", "Loss, %", "Events/op", "ns/event"));
+
+            for (Config config : configs) {
+                Measurement m = run(workload, config, set.has(jvm) ? set.valueOf(jvm) : null);
+
+                if (!config.traced && config.args.isEmpty()) {
+                    stockScore = m.score;
+                } else if (!config.traced) {
+                    disabledScore = m.score;
+                }
+
+                double loss = (1 - stockScore / m.score) * 100;
+                double eventCost = config.traced ? (m.score - disabledScore) * 1000 / m.eventsPerOp : Double.NaN;
+
+                report.add(String.format("  %-30s %12.3f +- %5.3f %10.2f %12s %12s",
+                        config.label, m.score, m.error, loss,
+                        config.traced ? String.format("%.1f", m.eventsPerOp) : "-",
+                        config.traced ? String.format("%.2f", eventCost) : "-"));
+
+                if (config.traced && set.has(maxEventCost) && eventCost > set.valueOf(maxEventCost)) {
+                    failures.add(String.format("%s, %s: %.2f ns/event", workload.getSimpleName(), config.label, eventCost));
+                }
+                if (!config.traced && !config.args.isEmpty() && set.has(maxDisabledLoss) && loss > set.valueOf(maxDisabledLoss)) {
+                    failures.add(String.format("%s, %s: %.2f%% throughput loss", workload.getSimpleName(), config.label, loss));
+                }
+            }
+        }
+
+        for (String line : report) {
+            System.out.println(line);
+        }
+
+        if (!failures.isEmpty()) {
+            System.out.println();
+            System.out.println("FAILED:");
+            for (String f : failures) {
+                System.out.println("  " + f);
+            }
+            System.exit(1);
+        }
+    }
+
+    private static Measurement run(Class<?> workload, Config config, String jvm) throws IOException, RunnerException {
+        File traceLog = File.createTempFile("fjp-bench", ".trace");
+        File opsLog = File.createTempFile("fjp-bench", ".ops");
+        try {
+            List<String> args = new ArrayList<>(config.args);
+            args.add("-Djava.util.concurrent.ForkJoinPool.traceLog=" + traceLog.getAbsolutePath());
+            args.add("-D" + PoolBenchmark.OPS_LOG + "=" + opsLog.getAbsolutePath());
+
+            ChainedOptionsBuilder opts = new OptionsBuilder()
+                    .include(workload.getName() + "\\.")
+                    .jvmArgsAppend(args.toArray(new String[args.size()]))
+                    .forks(1);
+            if (jvm != null) {
+                opts = opts.jvm(jvm);
+            }
+
+            RunResult result = new Runner(opts.build()).runSingle();
+            Result primary = result.getPrimaryResult();
+
+            double eventsPerOp = Double.NaN;
+            if (config.traced) {
+                long ops = readOps(opsLog);
+                eventsPerOp = (ops > 0) ? 1.0 * countEvents(traceLog) / ops : Double.NaN;
+            }
+            return new Measurement(primary.getScore(), primary.getScoreError(), eventsPerOp);
+        } finally {
+            traceLog.delete();
+            opsLog.delete();
+        }
+    }
+
+    /**
+     * @return the number of events the workload recorded in the trace
+     */
+    private static long countEvents(File traceLog) throws IOException {
+        long count = 0;
+        byte[] buffer = new byte[TraceFormat.CHUNK_SIZE];
+        try (InputStream is = new BufferedInputStream(new FileInputStream(traceLog))) {
+            while (is.read(buffer) == TraceFormat.CHUNK_SIZE) {
+                if (TraceMeta.isMeta(buffer)) {
+                    TraceMeta.read(buffer, is);
+                    continue;
+                }
+
+                int type = ByteBuffer.wrap(buffer).order(ByteOrder.nativeOrder()).getShort(TraceFormat.TYPE_OFFSET);
+                switch (TraceMeta.decodeType(type)) {
+                    case TRACE_BLOCK:
+                    case TRACE_UNBLOCK:
+                    case TRACE_FLUSHED:
+                    case STEAL_FAILED:
+                        // written by the buffer flushes, not per event
+                        break;
+                    default:
+                        count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static long readOps(File opsLog) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(opsLog))) {
+            String line = reader.readLine();
+            return (line == null) ? 0 : Long.parseLong(line.trim());
+        }
+    }
+
+    private static class Config {
+        private final String label;
+        private final boolean traced;
+        private final List<String> args;
+
+        private Config(String label, boolean traced, String... args) {
+            this.label = label;
+            this.traced = traced;
+            this.args = Arrays.asList(args);
+        }
+    }
+
+    private static class Measurement {
+        private final double score;
+        private final double error;
+        private final double eventsPerOp;
+
+        private Measurement(double score, double error, double eventsPerOp) {
+            this.score = score;
+            this.error = error;
+            this.eventsPerOp = eventsPerOp;
+        }
+    }
+
+}
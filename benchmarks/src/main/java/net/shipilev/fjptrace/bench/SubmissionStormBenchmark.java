@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * External submission storm: several non-pool threads submit batches of tiny
+ * tasks and wait for them. Stresses the submission queues and worker wakeups
+ * rather than the fork/join path.
+ */
+@State(Scope.Benchmark)
+public class SubmissionStormBenchmark extends PoolBenchmark {
+
+    @Param("64")
+    public int batch;
+
+    @Benchmark
+    @Threads(4)
+    public long submissionStorm() {
+        countOp();
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[batch];
+        for (int i = 0; i < batch; i++) {
+            tasks[i] = pool.submit(new Tiny(i));
+        }
+        long sum = 0;
+        for (ForkJoinTask<?> t : tasks) {
+            sum += (Integer) t.join();
+        }
+        return sum;
+    }
+
+    static class Tiny extends RecursiveTask<Integer> {
+        private final int v;
+
+        Tiny(int v) {
+            this.v = v;
+        }
+
+        @Override
+        protected Integer compute() {
+            return v + 1;
+        }
+    }
+
+}
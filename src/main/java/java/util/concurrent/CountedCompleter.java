@@ -477,16 +477,18 @@ public abstract class CountedCompleter<T> extends ForkJoinTask<T> {
         CountedCompleter<?> a = this, s = a;
         for (int c;;) {
             if ((c = a.pending) == 0) {
-                registerEvent(EventType.COMPLETING, a.traceTag);
+                registerEvent(EventType.COMPLETING, a.traceTag());
                 a.onCompletion(s);
-                registerEvent(EventType.COMPLETED, a.traceTag);
+                registerEvent(EventType.COMPLETED, a.traceTag());
                 if ((a = (s = a).completer) == null) {
                     s.quietlyComplete();
                     return;
                 }
             }
-            else if (U.compareAndSwapInt(a, PENDING, c, c - 1))
+            else if (U.compareAndSwapInt(a, PENDING, c, c - 1)) {
+                registerEvent(EventType.PROPAGATED, a.traceTag());
                 return;
+            }
         }
     }
 
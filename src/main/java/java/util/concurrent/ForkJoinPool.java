@@ -6,8 +6,12 @@
 
 package java.util.concurrent;
 
+import net.shipilev.fjptrace.Calibration;
 import net.shipilev.fjptrace.EventType;
+import net.shipilev.fjptrace.SampleType;
 import net.shipilev.fjptrace.TagGenerator;
+import net.shipilev.fjptrace.TraceFormat;
+import net.shipilev.fjptrace.TraceMeta;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -16,15 +20,27 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static net.shipilev.fjptrace.TraceFormat.TAG_OFFSET;
+import static net.shipilev.fjptrace.TraceFormat.THREAD_OFFSET;
+import static net.shipilev.fjptrace.TraceFormat.TIME_OFFSET;
+import static net.shipilev.fjptrace.TraceFormat.TYPE_OFFSET;
 
 /**
  * An {@link ExecutorService} for running {@link ForkJoinTask}s.
@@ -512,7 +528,32 @@ public class ForkJoinPool extends AbstractExecutorService {
             security.checkPermission(modifyThreadPermission);
     }
 
-    public static void registerExternalEvent(EventType event, int traceTag) {
+    public static void registerExternalEvent(EventType event, long traceTag) {
+        registerExternalEvent(event, traceTag, TraceMeta.NO_CLASS);
+    }
+
+    public static void registerExternalEvent(EventType event, long traceTag, int classId) {
+        traceSubmitter().registerEvent(event, traceTag, classId);
+    }
+
+    /**
+     * Returns the next trace tag from the range owned by the current
+     * thread, reserving the new range if needed.
+     */
+    static long nextTraceTag() {
+        if (TAG_GENERATOR == null)
+            return TagGenerator.DISABLED;
+        Thread t = Thread.currentThread(); WorkQueue w;
+        if ((t instanceof ForkJoinWorkerThread) &&
+            (w = ((ForkJoinWorkerThread)t).workQueue) != null)
+            return w.nextTraceTag();
+        return traceSubmitter().nextTraceTag();
+    }
+
+    /**
+     * Returns the submitter for the current thread, creating one if needed.
+     */
+    private static Submitter traceSubmitter() {
         int s;
         for (Submitter z = null;;) {
             if ((z = submitters.get()) == null) {
@@ -522,8 +563,7 @@ public class ForkJoinPool extends AbstractExecutorService {
                     submitters.set(z = new Submitter(s));
                 }
             } else {
-                z.registerEvent(event, traceTag);
-                return;
+                return z;
             }
         }
     }
@@ -574,81 +614,123 @@ public class ForkJoinPool extends AbstractExecutorService {
      */
     static final class Submitter {
         int seed;
-        long id;
-        byte[] traceEventBuffer;
-        int traceEventPos;
-        long nextWrite;
+        final TraceBuffer traceBuffer;
+        long traceTagNext;         // next trace tag in reserved range
+        long traceTagLimit;        // end of reserved range, exclusive
 
         Submitter(int s) {
             seed = s;
-            this.traceEventBuffer = (TRACE ? new byte[BUFFER_LIMIT] : null);
-            this.id = Thread.currentThread().getId();
+            this.traceBuffer = (TRACE ? newTraceBuffer(Thread.currentThread()) : null);
 
             // register this thread had started to be active
-            registerEvent(EventType.UNPARKED, (int) id);
+            registerEvent(EventType.UNPARKED, (int) Thread.currentThread().getId());
+        }
+
+        /**
+         * Returns next trace tag, called by owner thread only
+         */
+        final long nextTraceTag() {
+            long t = traceTagNext;
+            if (t >= traceTagLimit) {
+                t = TAG_GENERATOR.reserve();
+                traceTagLimit = t + TAG_GENERATOR.getChunkSize();
+            }
+            traceTagNext = t + 1;
+            return t;
         }
 
         /**
          * Register local event, called by owner thread only
          */
-        final void registerEvent(EventType event, int tag) {
+        final void registerEvent(EventType event, long tag) {
+            registerEvent(event, tag, TraceMeta.NO_CLASS);
+        }
+
+        /**
+         * Register local event with task class, called by owner thread only
+         */
+        final void registerEvent(EventType event, long tag, int classId) {
             if (!TRACE) return;
+            traceBuffer.register(event, tag, classId);
+        }
 
-            long time = System.nanoTime();
+    }
 
-            if (nextWrite < time || (traceEventPos + CHUNK_SIZE*2 > BUFFER_LIMIT)) {
+    /**
+     * Trace events of a single thread. Only the owner appends the
+     * events, and publishes them with the ordered write of pos; this
+     * way, the published events can be written out by any thread
+     * (see flushTrace) without stopping the owner, which saves the
+     * tail of the trace for the idle and exiting threads. Writes are
+     * serialized on the buffer itself, appends need no locking.
+     */
+    static final class TraceBuffer {
+        final byte[] buffer;
+        final Thread owner;
+        final long id;             // owner thread id
+        int pos;                   // end of published events, owner writes only
+        int written;               // end of events already in the trace, guarded by this
+        long nextWrite;
+        int stealFailures;         // lost steal races since last flush
+
+        TraceBuffer(Thread owner) {
+            this.owner = owner;
+            this.id = owner.getId();
+            this.buffer = new byte[BUFFER_LIMIT];
+        }
+
+        /**
+         * Appends the event, called by owner thread only
+         */
+        final void register(EventType event, long tag, int classId) {
+            long time = System.nanoTime();
+            if (nextWrite < time || (pos + CHUNK_SIZE*3 > BUFFER_LIMIT)) {
                 if (nextWrite == 0) {
                     // very first event, write the time and bail out
                     nextWrite = time;
                 } else {
-                    // reserved the slot for one additional event
+                    // reserved the slots for steal failures and one additional event
                     time = flush(time);
                 }
             }
 
             // All glory to hypno-toad!
-            U.putLong (traceEventBuffer, BBASE + traceEventPos + 0, time);
-            U.putShort(traceEventBuffer, BBASE + traceEventPos + 8, (short) event.ordinal());
-            U.putInt  (traceEventBuffer, BBASE + traceEventPos + 10, tag);
-            U.putLong (traceEventBuffer, BBASE + traceEventPos + 14, id);
-            traceEventPos += CHUNK_SIZE;
+            put(pos, time, TraceMeta.encodeType(event, classId), tag);
+            U.putOrderedInt(this, TBPOS, pos + CHUNK_SIZE);
         }
 
-        /**
-         * Flushes the tracing buffer
-         */
-        final long flush() {
-            return flush(System.nanoTime());
+        private void put(int p, long time, short type, long tag) {
+            U.putLong (buffer, BBASE + p + TIME_OFFSET, time);
+            U.putShort(buffer, BBASE + p + TYPE_OFFSET, type);
+            U.putLong (buffer, BBASE + p + TAG_OFFSET, tag);
+            U.putInt  (buffer, BBASE + p + THREAD_OFFSET, (int) id);
         }
 
         /**
-         * Flushes the tracing buffer and mark the current time
+         * Flushes the buffer and marks the current time, called by owner thread only
          */
         final long flush(long time) {
-            if (traceEventPos > 0) {
-                U.putLong (traceEventBuffer, BBASE + traceEventPos + 0, time);
-                U.putShort(traceEventBuffer, BBASE + traceEventPos + 8, (short) EventType.TRACE_BLOCK.ordinal());
-                U.putInt  (traceEventBuffer, BBASE + traceEventPos + 10, (int)id);
-                U.putLong (traceEventBuffer, BBASE + traceEventPos + 14, id);
-                traceEventPos += CHUNK_SIZE;
-
-                synchronized (TRACE_WRITER) {
-                    try {
-                        TRACE_WRITER.write(traceEventBuffer, 0, traceEventPos);
-                    } catch (IOException e) {
-                        // should never happen
-                    }
+            if (pos > 0) {
+                int p = pos;
+                if (stealFailures > 0) {
+                    put(p, time, (short) EventType.STEAL_FAILED.ordinal(), stealFailures);
+                    p += CHUNK_SIZE;
+                    stealFailures = 0;
+                }
+                put(p, time, (short) EventType.TRACE_BLOCK.ordinal(), id);
+                p += CHUNK_SIZE;
+
+                synchronized (this) {
+                    write(buffer, written, p);
+                    written = 0;
+                    pos = 0;
                 }
 
                 time = System.nanoTime();
                 nextWrite = time + ThreadLocalRandom.current().nextLong(BUFFER_TIME, BUFFER_TIME*2);
-                traceEventPos = 0;
 
-                U.putLong (traceEventBuffer, BBASE + traceEventPos + 0, time);
-                U.putShort(traceEventBuffer, BBASE + traceEventPos + 8, (short) EventType.TRACE_UNBLOCK.ordinal());
-                U.putInt  (traceEventBuffer, BBASE + traceEventPos + 10, (int)id);
-                U.putLong (traceEventBuffer, BBASE + traceEventPos + 14, id);
-                traceEventPos += CHUNK_SIZE;
+                put(0, time, (short) EventType.TRACE_UNBLOCK.ordinal(), id);
+                U.putOrderedInt(this, TBPOS, CHUNK_SIZE);
 
                 return time;
             } else {
@@ -657,6 +739,388 @@ public class ForkJoinPool extends AbstractExecutorService {
             }
         }
 
+        /**
+         * Writes out the events published so far, called by any thread.
+         * The events are not consumed, the owner keeps appending after them.
+         * The owner's timestamps only grow, so everything it records after
+         * we had read pos is later than TRACE_FLUSHED watermark; the only
+         * event it can miss is the one being recorded at the moment.
+         */
+        final synchronized void flushPublished() {
+            int p = U.getIntVolatile(this, TBPOS);
+            long time = System.nanoTime();
+            if (p > written) {
+                write(buffer, written, p);
+                written = p;
+            }
+
+            byte[] mark = new byte[CHUNK_SIZE];
+            U.putLong (mark, BBASE + TIME_OFFSET, time);
+            U.putShort(mark, BBASE + TYPE_OFFSET, (short) EventType.TRACE_FLUSHED.ordinal());
+            U.putLong (mark, BBASE + TAG_OFFSET, id);
+            U.putInt  (mark, BBASE + THREAD_OFFSET, (int) id);
+            write(mark, 0, CHUNK_SIZE);
+        }
+
+        private static void write(byte[] buf, int from, int to) {
+            synchronized (TRACE_WRITER) {
+                try {
+                    TRACE_WRITER.write(buf, from, to - from);
+                } catch (IOException e) {
+                    // should never happen
+                }
+            }
+        }
+    }
+
+    /**
+     * Allocates the trace buffer for the given thread, and makes it
+     * visible to flushTrace.
+     */
+    static TraceBuffer newTraceBuffer(Thread owner) {
+        TraceBuffer b = new TraceBuffer(owner);
+        TRACE_BUFFERS.add(b);
+        return b;
+    }
+
+    /**
+     * Writes out the trace events recorded so far by all threads, so
+     * that the trace is complete up to this point. The threads are not
+     * stopped, and the events they record concurrently may or may not
+     * get into the trace. Does nothing if tracing is disabled.
+     *
+     * <p>This is called periodically, at shutdown, and on pool
+     * termination, but can be also called by the application, e.g.
+     * before taking the copy of the trace while still running.
+     */
+    public static void flushTrace() {
+        if (!TRACE) return;
+        for (Iterator<TraceBuffer> it = TRACE_BUFFERS.iterator(); it.hasNext(); ) {
+            TraceBuffer b = it.next();
+            boolean dead = !b.owner.isAlive();
+            b.flushPublished();
+            if (dead) {
+                // no more events from this one
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Victim selection and idling strategy for the worker scans. The
+     * policy is chosen with -Djava.util.concurrent.ForkJoinPool.scanPolicy,
+     * either by the built-in name (random, roundRobin, nearest), or by the
+     * name of the subclass with the public no-arg constructor.
+     *
+     * <p>Idling: the worker that finds nothing goes inactive, and parks
+     * once {@link #shouldPark} says so. It is asked after every empty scan
+     * while inactive, with the number of such scans; the count is reset
+     * by the successful steal and by parking. The default is to linger for
+     * -Djava.util.concurrent.ForkJoinPool.idleScans empty scans (0 by
+     * default, parking on the first one while inactive), and policies
+     * overriding it linger for as long as they say. With the random policy
+     * and no idleScans set, the stock randomized scan runs instead, which
+     * parks on the first empty scan while inactive as well.
+     *
+     * <p>Queue indices alternate: workers are at odd indices, and shared
+     * submission queues are at even ones. The pool masks every
+     * {@link #victim} result with the queues array length - 1 (a power of
+     * two minus one), so out-of-range and negative indices are not errors,
+     * they wrap around; probing a missing or empty queue just moves on.
+     */
+    public static abstract class ScanPolicy {
+
+        /**
+         * Selects the queue to probe next. Called for every probe, should
+         * be fast.
+         *
+         * @param index the index of the scanning worker queue
+         * @param seed the random number, new for every scan
+         * @param probe the number of queues probed in this scan so far
+         * @return the index of the queue to probe, any int: the pool masks it to the queues array
+         */
+        public abstract int victim(int index, int seed, int probe);
+
+        /**
+         * Decides whether the inactive worker should park, or scan again.
+         * Called after every empty scan of the inactive worker. Defaults to
+         * parking once there were more than
+         * -Djava.util.concurrent.ForkJoinPool.idleScans empty scans.
+         *
+         * @param idleScans the number of empty scans since the worker went inactive
+         * @return true to park, false to scan again
+         */
+        public boolean shouldPark(int idleScans) {
+            return idleScans > IDLE_SCANS;
+        }
+    }
+
+    /**
+     * Probes the queues in order, starting from the random one.
+     */
+    static final class RandomScanPolicy extends ScanPolicy {
+        public int victim(int index, int seed, int probe) {
+            return seed - probe;
+        }
+    }
+
+    /**
+     * Probes the queues in order, starting from the next one.
+     */
+    static final class RoundRobinScanPolicy extends ScanPolicy {
+        public int victim(int index, int seed, int probe) {
+            return index + 1 + probe;
+        }
+    }
+
+    /**
+     * Probes the queues by increasing distance from the own one, for the
+     * workers with the adjacent indices sharing the caches or the node.
+     */
+    static final class NearestScanPolicy extends ScanPolicy {
+        public int victim(int index, int seed, int probe) {
+            int d = (probe >>> 1) + 1;
+            return ((probe & 1) == 0) ? index + d : index - d;
+        }
+    }
+
+    /**
+     * @return the policy with the given name, or null for the stock scan
+     */
+    static ScanPolicy newScanPolicy(String name) {
+        switch (name) {
+            case "random":
+                return (IDLE_SCANS > 0) ? new RandomScanPolicy() : null;
+            case "roundRobin":
+                return new RoundRobinScanPolicy();
+            case "nearest":
+                return new NearestScanPolicy();
+            default:
+                try {
+                    Class<?> c = Class.forName(name, true, ClassLoader.getSystemClassLoader());
+                    return (ScanPolicy) c.newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new IllegalArgumentException("Can not instantiate scan policy " + name, e);
+                }
+        }
+    }
+
+    /**
+     * Daemon thread periodically calling flushTrace, so that the
+     * events of the threads that went quiet are not sitting in their
+     * buffers until the shutdown.
+     */
+    static final class TraceFlusher extends Thread {
+        private final long interval;
+
+        TraceFlusher(long interval) {
+            super("ForkJoinPool-trace-flusher");
+            setDaemon(true);
+            this.interval = interval;
+        }
+
+        public void run() {
+            for (;;) {
+                LockSupport.parkNanos(this, interval);
+                flushTrace();
+            }
+        }
+    }
+
+    /**
+     * Interns task classes into small ids, and writes the dictionary
+     * entries into the trace as they appear. ClassValue gives us the
+     * fast path, while the map keeps the ids unique in the (rare) case
+     * ClassValue computes the value twice.
+     */
+    static final class ClassDictionary extends ClassValue<Integer> {
+        private final Map<Class<?>, Integer> ids = new HashMap<Class<?>, Integer>();
+
+        protected synchronized Integer computeValue(Class<?> type) {
+            Integer id = ids.get(type);
+            if (id == null) {
+                if (ids.size() + 1 >= TraceMeta.MAX_CLASSES)
+                    return TraceMeta.NO_CLASS;
+                id = ids.size() + 1;
+                ids.put(type, id);
+                writeMeta(new TraceMeta(TraceMeta.Kind.CLASS, id, type.getName()));
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Writes metadata block straight into the trace.
+     */
+    static void writeMeta(TraceMeta meta) {
+        if (!TRACE) return;
+        byte[] block = meta.encode();
+        synchronized (TRACE_WRITER) {
+            try {
+                TRACE_WRITER.write(block);
+            } catch (IOException e) {
+                // should never happen
+            }
+        }
+    }
+
+    /**
+     * Measures the cost of back-to-back registerEvent calls on this machine,
+     * once, on the first external submission: running it from the class
+     * initialization measures the code which is neither compiled nor able
+     * to access the still initializing class fast. Runs the actual
+     * recorder code against the throwaway buffer which is never flushed.
+     * Implausible estimates are not recorded, leaving the task times
+     * uncorrected.
+     */
+    private static void calibrateEventCost() {
+        synchronized (ForkJoinPool.class) {
+            if (calibrated)
+                return;
+            calibrated = true;
+        }
+
+        final int n = Math.min(10000, BUFFER_LIMIT / CHUNK_SIZE - 3);
+        if (n <= 0) {
+            return;
+        }
+
+        final TraceBuffer z = new TraceBuffer(Thread.currentThread());
+        double cost = Calibration.calibrate(new Runnable() {
+            public void run() {
+                z.pos = 0;
+                z.nextWrite = Long.MAX_VALUE;
+                for (int i = 0; i < n; i++) {
+                    z.register(EventType.FORK, i, TraceMeta.NO_CLASS);
+                }
+            }
+        }, n);
+
+        if (Double.isNaN(cost)) {
+            System.err.println("Event cost calibration is implausible, task times are not corrected");
+            return;
+        }
+        System.err.printf("Calibrated event cost: %.1f ns%n", cost);
+        writeMeta(TraceMeta.property(TraceMeta.EVENT_COST, String.valueOf(cost)));
+    }
+
+    /**
+     * Returns the trace id for the task class.
+     */
+    static int traceClassId(Class<?> type) {
+        return (TRACE_CLASSES == null) ? TraceMeta.NO_CLASS : TRACE_CLASSES.get(type);
+    }
+
+    /**
+     * Daemon thread periodically snapshotting ctl and queue occupancy
+     * for all live pools. Unlike event tracing, this does not touch the
+     * workers at all, and so it is cheap enough to be left enabled for
+     * the long runs.
+     *
+     * Samples are dumped to the separate log, in the same 22-byte
+     * chunks as the trace: time, SampleType ordinal, (pool id << 16 |
+     * queue index), and the sampled value.
+     */
+    static final class PoolSampler extends Thread {
+        private final Map<ForkJoinPool, Integer> pools =
+            new WeakHashMap<ForkJoinPool, Integer>();
+        private final OutputStream out;
+        private final long interval;
+        private final byte[] buffer;
+        private int pos;
+        private long nextWrite;
+        private boolean closed;
+
+        PoolSampler(OutputStream out, long interval) {
+            super("ForkJoinPool-sampler");
+            setDaemon(true);
+            this.out = out;
+            this.interval = interval;
+            this.buffer = new byte[BUFFER_LIMIT];
+        }
+
+        final void register(ForkJoinPool pool, int id) {
+            synchronized (pools) {
+                pools.put(pool, id);
+            }
+        }
+
+        public void run() {
+            for (;;) {
+                sample();
+                LockSupport.parkNanos(this, interval);
+            }
+        }
+
+        private synchronized void sample() {
+            if (closed) return;
+
+            long time = System.nanoTime();
+            synchronized (pools) {
+                for (Map.Entry<ForkJoinPool, Integer> e : pools.entrySet()) {
+                    ForkJoinPool p = e.getKey();
+                    if (p != null)
+                        sample(time, p, e.getValue() << 16);
+                }
+            }
+
+            if (nextWrite < time) {
+                write();
+                nextWrite = time + BUFFER_TIME;
+            }
+        }
+
+        private void sample(long time, ForkJoinPool p, int id) {
+            long c = p.ctl;
+            int par = p.config & SMASK;
+            put(time, SampleType.PARALLELISM, id, par);
+            put(time, SampleType.ACTIVE, id, (int)(c >> AC_SHIFT) + par);
+            put(time, SampleType.TOTAL, id, (short)(c >>> TC_SHIFT) + par);
+
+            int waiting = 0;
+            WorkQueue[] ws = p.workQueues;
+            if (ws != null) {
+                for (int i = 0; i < ws.length; ++i) {
+                    WorkQueue w = ws[i];
+                    if (w != null) {
+                        if ((i & 1) != 0 && w.eventCount < 0)
+                            ++waiting;
+                        put(time, SampleType.QUEUE_SIZE, id | i, w.queueSize());
+                    }
+                }
+            }
+            put(time, SampleType.WAITING, id, waiting);
+        }
+
+        private void put(long time, SampleType type, int index, long value) {
+            if (pos + CHUNK_SIZE > buffer.length)
+                write();
+            U.putLong (buffer, BBASE + pos + 0, time);
+            U.putShort(buffer, BBASE + pos + 8, (short) type.ordinal());
+            U.putInt  (buffer, BBASE + pos + 10, index);
+            U.putLong (buffer, BBASE + pos + 14, value);
+            pos += CHUNK_SIZE;
+        }
+
+        private void write() {
+            try {
+                out.write(buffer, 0, pos);
+            } catch (IOException e) {
+                // should never happen
+            }
+            pos = 0;
+        }
+
+        final synchronized void close() {
+            if (closed) return;
+            write();
+            closed = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                // do nothing
+            }
+        }
     }
 
     /**
@@ -761,19 +1225,19 @@ public class ForkJoinPool extends AbstractExecutorService {
         int poolIndex;             // index of this queue in pool (or 0)
         final int mode;            // 0: lifo, > 0: fifo, < 0: shared
         int nsteals;               // number of steals
+        int idleScans;             // empty scans since inactivation, for scan policy
         volatile int qlock;        // 1: locked, -1: terminate; else 0
         volatile int base;         // index of next slot for poll
         int top;                   // index of next slot for push
         ForkJoinTask<?>[] array;   // the elements (initially unallocated)
         final ForkJoinPool pool;   // the containing pool (may be null)
         final ForkJoinWorkerThread owner; // owning thread or null if shared
-        final long ownerId;
         volatile Thread parker;    // == owner during call to park; else null
         volatile ForkJoinTask<?> currentJoin;  // task being joined in awaitJoin
         ForkJoinTask<?> currentSteal; // current non-local task being executed
-        long nextWrite;
-        final byte[] traceEventBuffer;
-        int traceEventPos;
+        final TraceBuffer traceBuffer; // owned queues only
+        long traceTagNext;         // next trace tag in reserved range
+        long traceTagLimit;        // end of reserved range, exclusive
 
         volatile Object pad10, pad11, pad12, pad13, pad14, pad15, pad16, pad17;
         volatile Object pad18, pad19, pad1a, pad1b, pad1c, pad1d;
@@ -784,8 +1248,7 @@ public class ForkJoinPool extends AbstractExecutorService {
             this.owner = owner;
             this.mode = mode;
             this.seed = seed;
-            this.ownerId = (owner != null) ? owner.getId() : NO_OWNER_ID;
-            this.traceEventBuffer = (TRACE ? new byte[BUFFER_LIMIT] : null);
+            this.traceBuffer = (TRACE && owner != null) ? newTraceBuffer(owner) : null;
             // Place indices in the center of array (that is not yet allocated)
             base = top = INITIAL_QUEUE_CAPACITY >>> 1;
         }
@@ -1145,77 +1608,55 @@ public class ForkJoinPool extends AbstractExecutorService {
                 }
             }
             if ((p = parker) != null) {
-                registerEvent(EventType.UNPARK, (int)p.getId());
+                // recorded by the caller, this queue's buffer is owned by the parker
+                pool.registerEvent(EventType.UNPARK, (int)p.getId());
                 U.unpark(p);
             }
         }
 
         /**
-         * Register local event, called by owner thread only
+         * Returns next trace tag, called by owner thread only
          */
-        final void registerEvent(EventType event, int tag) {
-            if (!TRACE) return;
-
-            long time = System.nanoTime();
-            if (nextWrite < time || (traceEventPos + CHUNK_SIZE*2 > BUFFER_LIMIT)) {
-                if (nextWrite == 0) {
-                    // very first event, write the time and bail out
-                    nextWrite = time;
-                } else {
-                    // reserved the slot for one additional event
-                    time = flush(time);
-                }
+        final long nextTraceTag() {
+            long t = traceTagNext;
+            if (t >= traceTagLimit) {
+                t = TAG_GENERATOR.reserve();
+                traceTagLimit = t + TAG_GENERATOR.getChunkSize();
             }
-
-            // All glory to hypno-toad!
-            U.putLong (traceEventBuffer, BBASE + traceEventPos + 0, time);
-            U.putShort(traceEventBuffer, BBASE + traceEventPos + 8, (short) event.ordinal());
-            U.putInt  (traceEventBuffer, BBASE + traceEventPos + 10, tag);
-            U.putLong (traceEventBuffer, BBASE + traceEventPos + 14, ownerId);
-            traceEventPos += CHUNK_SIZE;
+            traceTagNext = t + 1;
+            return t;
         }
 
         /**
-         * Flushes the tracing buffer
+         * Returns the id of the owner thread to trace the steals from
+         * this queue, or STEAL_SHARED if the queue is shared
          */
-        final long flush() {
-            return flush(System.nanoTime());
+        final long victimId() {
+            ForkJoinWorkerThread o = owner;
+            return (o != null) ? o.getId() : EventType.STEAL_SHARED;
         }
 
         /**
-         * Flushes the tracing buffer and mark the current time
+         * Register local event, called by owner thread only
          */
-        final long flush(long time) {
-            if (traceEventPos > 0) {
-                U.putLong (traceEventBuffer, BBASE + traceEventPos + 0, time);
-                U.putShort(traceEventBuffer, BBASE + traceEventPos + 8, (short) EventType.TRACE_BLOCK.ordinal());
-                U.putInt  (traceEventBuffer, BBASE + traceEventPos + 10, (int)ownerId);
-                U.putLong (traceEventBuffer, BBASE + traceEventPos + 14, ownerId);
-                traceEventPos += CHUNK_SIZE;
-
-                synchronized (TRACE_WRITER) {
-                    try {
-                        TRACE_WRITER.write(traceEventBuffer, 0, traceEventPos);
-                    } catch (IOException e) {
-                        // should never happen
-                    }
-                }
-
-                time = System.nanoTime();
-                nextWrite = time + ThreadLocalRandom.current().nextLong(BUFFER_TIME, BUFFER_TIME*2);
-                traceEventPos = 0;
+        final void registerEvent(EventType event, long tag) {
+            registerEvent(event, tag, TraceMeta.NO_CLASS);
+        }
 
-                U.putLong (traceEventBuffer, BBASE + traceEventPos + 0, time);
-                U.putShort(traceEventBuffer, BBASE + traceEventPos + 8, (short) EventType.TRACE_UNBLOCK.ordinal());
-                U.putInt  (traceEventBuffer, BBASE + traceEventPos + 10, (int)ownerId);
-                U.putLong (traceEventBuffer, BBASE + traceEventPos + 14, ownerId);
-                traceEventPos += CHUNK_SIZE;
+        /**
+         * Register local event with task class, called by owner thread only
+         */
+        final void registerEvent(EventType event, long tag, int classId) {
+            if (!TRACE) return;
+            traceBuffer.register(event, tag, classId);
+        }
 
-                return time;
-            } else {
-                nextWrite = time + ThreadLocalRandom.current().nextLong(BUFFER_TIME, BUFFER_TIME*2);
-                return time;
-            }
+        /**
+         * Flushes the tracing buffer, called by owner thread only
+         */
+        final void flush() {
+            if (!TRACE) return;
+            traceBuffer.flush(System.nanoTime());
         }
 
         // Unsafe mechanics
@@ -1244,7 +1685,7 @@ public class ForkJoinPool extends AbstractExecutorService {
 
     // static fields (initialized in static initializer below)
 
-    protected void registerEvent(EventType event, int traceTag) {
+    protected void registerEvent(EventType event, long traceTag) {
         Thread caller = Thread.currentThread();
         if (caller instanceof ForkJoinWorkerThread)
             ((ForkJoinWorkerThread)caller).workQueue.registerEvent(event, traceTag);
@@ -1333,43 +1774,85 @@ public class ForkJoinPool extends AbstractExecutorService {
      */
     private static final int SEED_INCREMENT = 0x61c88647;
 
-    static final int CHUNK_SIZE = 22;
-    static final long NO_OWNER_ID = -1;
+    static final int CHUNK_SIZE = TraceFormat.CHUNK_SIZE;
     private static final boolean TRACE = Boolean.getBoolean("java.util.concurrent.ForkJoinPool.trace");
     private static final String TRACE_LOG = System.getProperty("java.util.concurrent.ForkJoinPool.traceLog", "forkjoin.trace");
     private static final int BUFFER_LIMIT = Integer.getInteger("java.util.concurrent.ForkJoinPool.bufferSize", 1024*1024);
     private static final long BUFFER_TIME = TimeUnit.MILLISECONDS.toNanos(Integer.getInteger("java.util.concurrent.ForkJoinPool.bufferTimeMsec", 1000));
+    static final boolean LAZY_TAGS = Boolean.getBoolean("java.util.concurrent.ForkJoinPool.lazyTags");
+    private static final long FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(Integer.getInteger("java.util.concurrent.ForkJoinPool.flushIntervalMsec", 1000));
+    private static final boolean CALIBRATE = Boolean.parseBoolean(System.getProperty("java.util.concurrent.ForkJoinPool.calibrate", "false"));
+    private static volatile boolean calibrated;
+    private static final String SCAN_POLICY_NAME = System.getProperty("java.util.concurrent.ForkJoinPool.scanPolicy", "random");
+    private static final int IDLE_SCANS = Integer.getInteger("java.util.concurrent.ForkJoinPool.idleScans", 0);
+
+    private static final long SAMPLE_INTERVAL = TimeUnit.MICROSECONDS.toNanos(Long.getLong("java.util.concurrent.ForkJoinPool.sampleIntervalUsec", 0));
+    private static final String SAMPLE_LOG = System.getProperty("java.util.concurrent.ForkJoinPool.sampleLog", TRACE_LOG + ".samples");
 
     static final TagGenerator TAG_GENERATOR;
+    static final ClassDictionary TRACE_CLASSES;
     static final OutputStream TRACE_WRITER;
+    static final Set<TraceBuffer> TRACE_BUFFERS;
+    static final PoolSampler SAMPLER;
+    static final ScanPolicy SCAN_POLICY;
 
     static {
         System.err.println("Using instrumented ForkJoinPool");
         System.err.println(TRACE ? "Tracing enabled, logging to " + TRACE_LOG + " with per-worker buffers of " + (BUFFER_LIMIT / 1024) + "Kb" : "Tracing is disabled");
+        if (TRACE && LAZY_TAGS) {
+            System.err.println("Task tags are assigned lazily, on first fork, submit or invoke");
+        }
 
         if (TRACE) {
             TAG_GENERATOR = new TagGenerator();
+            TRACE_CLASSES = new ClassDictionary();
             try {
                 TRACE_WRITER = new FileOutputStream(TRACE_LOG);
             } catch (IOException e) {
                 // FIXME: Should not throw exception here?
                 throw new IllegalStateException(e);
             }
+            TRACE_BUFFERS = Collections.newSetFromMap(new ConcurrentHashMap<TraceBuffer, Boolean>());
+            writeMeta(TraceMeta.property(TraceMeta.SCAN_POLICY, SCAN_POLICY_NAME));
+            writeMeta(TraceMeta.property(TraceMeta.IDLE_SCANS, String.valueOf(IDLE_SCANS)));
         } else {
             TAG_GENERATOR = null;
+            TRACE_CLASSES = null;
             TRACE_WRITER = null;
+            TRACE_BUFFERS = null;
+        }
+
+        SCAN_POLICY = newScanPolicy(SCAN_POLICY_NAME);
+        if (SCAN_POLICY != null) {
+            System.err.println("Scan policy is " + SCAN_POLICY_NAME + ", parking after " + IDLE_SCANS + " empty scans");
+        }
+
+        if (SAMPLE_INTERVAL > 0) {
+            System.err.println("Sampling enabled, logging to " + SAMPLE_LOG + " every " + TimeUnit.NANOSECONDS.toMicros(SAMPLE_INTERVAL) + "us");
+            try {
+                SAMPLER = new PoolSampler(new FileOutputStream(SAMPLE_LOG), SAMPLE_INTERVAL);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            SAMPLER.start();
+        } else {
+            SAMPLER = null;
         }
 
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
             public void run() {
                 if (TRACE_WRITER != null) {
+                    flushTrace();
                     try {
                         TRACE_WRITER.close();
                     } catch (IOException e) {
                         // do nothing
                     }
                 }
+                if (SAMPLER != null) {
+                    SAMPLER.close();
+                }
             }
         });
     }
@@ -1691,7 +2174,10 @@ public class ForkJoinPool extends AbstractExecutorService {
             }
 
             // flush tracing events
-            w.flush();
+            if (TRACE && w.traceBuffer != null) {
+                w.flush();
+                TRACE_BUFFERS.remove(w.traceBuffer);
+            }
         }
 
         long c;                             // adjust ctl counts
@@ -1724,13 +2210,14 @@ public class ForkJoinPool extends AbstractExecutorService {
      */
     final void externalPush(ForkJoinTask<?> task) {
         WorkQueue[] ws; WorkQueue q; Submitter z; int m; ForkJoinTask<?>[] a;
+        long tag = task.traceTag(); // assign outside the queue lock
         if ((z = submitters.get()) != null && plock > 0 &&
             (ws = workQueues) != null && (m = (ws.length - 1)) >= 0 &&
             (q = ws[m & z.seed & SQMASK]) != null &&
             U.compareAndSwapInt(q, QLOCK, 0, 1)) { // lock
             int b = q.base, s = q.top, n, an;
             if ((a = q.array) != null && (an = a.length) > (n = s + 1 - b)) {
-                z.registerEvent(EventType.SUBMIT, task.traceTag);
+                z.registerEvent(EventType.SUBMIT, tag);
                 int j = (((an - 1) & s) << ASHIFT) + ABASE;
                 U.putOrderedObject(a, j, task);
                 q.top = s + 1;                     // push on to deque
@@ -1756,7 +2243,10 @@ public class ForkJoinPool extends AbstractExecutorService {
      * them away if (very rarely) not needed.
      */
     private void fullExternalPush(ForkJoinTask<?> task) {
+        if (TRACE && CALIBRATE && !calibrated)
+            calibrateEventCost();
         int r = 0; // random index seed
+        long tag = task.traceTag();
         for (Submitter z = submitters.get();;) {
             WorkQueue[] ws; WorkQueue q; int ps, m, k;
             if (z == null) {
@@ -1783,6 +2273,7 @@ public class ForkJoinPool extends AbstractExecutorService {
                     try {                      // locked version of push
                         if ((a != null && a.length > s + 1 - q.base) ||
                             (a = q.growArray()) != null) {   // must presize
+                            z.registerEvent(EventType.SUBMIT, tag);
                             int j = (((a.length - 1) & s) << ASHIFT) + ABASE;
                             U.putOrderedObject(a, j, task);
                             q.top = s + 1;
@@ -1869,6 +2360,7 @@ public class ForkJoinPool extends AbstractExecutorService {
     final void runWorker(WorkQueue w) {
         w.growArray(); // allocate queue
         w.registerEvent(EventType.UNPARKED, (int)Thread.currentThread().getId());
+        w.registerEvent(EventType.REGISTERED, w.poolIndex);
         do { w.runTask(scan(w)); } while (w.qlock >= 0);
     }
 
@@ -1913,10 +2405,13 @@ public class ForkJoinPool extends AbstractExecutorService {
         if (w != null && (ws = workQueues) != null && (m = ws.length - 1) >= 0) {
             int ec = w.eventCount;               // ec is negative if inactive
             int r = w.seed; r ^= r << 13; r ^= r >>> 17; w.seed = r ^= r << 5;
-            int j = ((m + m + 1) | MIN_SCAN) & MAX_SCAN;
+            ScanPolicy sp = SCAN_POLICY;
+            int j0 = ((m + m + 1) | MIN_SCAN) & MAX_SCAN;
+            int j = j0;
             do {
                 WorkQueue q; ForkJoinTask<?>[] a; int b;
-                if ((q = ws[(r + j) & m]) != null && (b = q.base) - q.top < 0 &&
+                int k = (sp == null) ? (r + j) & m : sp.victim(w.poolIndex, r, j0 - j) & m;
+                if ((q = ws[k]) != null && (b = q.base) - q.top < 0 &&
                     (a = q.array) != null) {     // probably nonempty
                     int i = (((a.length - 1) & b) << ASHIFT) + ABASE;
                     ForkJoinTask<?> t = (ForkJoinTask<?>)
@@ -1925,10 +2420,14 @@ public class ForkJoinPool extends AbstractExecutorService {
                         U.compareAndSwapObject(a, i, t, null)) {
                         if ((q.base = b + 1) - q.top < 0)
                             signalWork(q);
+                        w.idleScans = 0;
+                        w.registerEvent(EventType.STEAL, q.victimId());
                         return t;                // taken
                     }
-                    else if ((ec < 0 || j < m) && (int)(ctl >> AC_SHIFT) <= 0) {
-                        w.hint = (r + j) & m;    // help signal below
+                    if (TRACE && ec >= 0 && t != null)
+                        ++w.traceBuffer.stealFailures;  // lost the race for t
+                    if ((ec < 0 || j < m) && (int)(ctl >> AC_SHIFT) <= 0) {
+                        w.hint = k;              // help signal below
                         break;                   // cannot take
                     }
                 }
@@ -1954,7 +2453,11 @@ public class ForkJoinPool extends AbstractExecutorService {
                     else if ((int)(c >> AC_SHIFT) == 1 - (config & SMASK))
                         idleAwaitWork(w, nc, c);
                 }
+                else if (sp != null && w.eventCount < 0 &&
+                         !sp.shouldPark(++w.idleScans))
+                    ;                            // linger, scan again
                 else if (w.eventCount < 0) {     // block
+                    w.idleScans = 0;
                     Thread wt = Thread.currentThread();
                     Thread.interrupted();        // clear status
                     U.putObject(wt, PARKBLOCKER, this);
@@ -2122,10 +2625,15 @@ public class ForkJoinPool extends AbstractExecutorService {
                             if (t != null && v.base == b &&
                                 U.compareAndSwapObject(a, i, t, null)) {
                                 v.base = b + 1;     // help stealer
+                                joiner.registerEvent(EventType.STEAL, v.victimId());
                                 joiner.runSubtask(t);
                             }
-                            else if (v.base == b && ++steps == MAX_HELP)
-                                break restart;      // v apparently stalled
+                            else {
+                                if (TRACE && t != null)
+                                    ++joiner.traceBuffer.stealFailures;
+                                if (v.base == b && ++steps == MAX_HELP)
+                                    break restart;  // v apparently stalled
+                            }
                         }
                         else {                      // empty -- try to descend
                             ForkJoinTask<?> next = v.currentJoin;
@@ -2184,6 +2692,18 @@ public class ForkJoinPool extends AbstractExecutorService {
      * may become starved.
      */
     final boolean tryCompensate() {
+        registerEvent(EventType.COMPENSATE, 0);
+        int how = doCompensate();
+        registerEvent(EventType.COMPENSATED, how);
+        return how != EventType.COMPENSATE_FAILED;
+    }
+
+    /**
+     * Compensation proper, see tryCompensate.
+     *
+     * @return outcome, one of EventType.COMPENSATE_*, recorded in the trace
+     */
+    private int doCompensate() {
         int pc = config & SMASK, e, i, tc; long c;
         WorkQueue[] ws; WorkQueue w; Thread p;
         if ((ws = workQueues) != null && (e = (int)(c = ctl)) >= 0) {
@@ -2197,14 +2717,14 @@ public class ForkJoinPool extends AbstractExecutorService {
                         registerEvent(EventType.UNPARK, (int)p.getId());
                         U.unpark(p);
                     }
-                    return true;   // replace with idle worker
+                    return EventType.COMPENSATE_IDLE;   // replace with idle worker
                 }
             }
             else if ((tc = (short)(c >>> TC_SHIFT)) >= 0 &&
                      (int)(c >> AC_SHIFT) + pc > 1) {
                 long nc = ((c - AC_UNIT) & AC_MASK) | (c & ~AC_MASK);
                 if (U.compareAndSwapLong(this, CTL, c, nc))
-                    return true;   // no compensation
+                    return EventType.COMPENSATE_NONE;   // no compensation
             }
             else if (tc + pc < MAX_CAP) {
                 long nc = ((c + TC_UNIT) & TC_MASK) | (c & ~TC_MASK);
@@ -2216,7 +2736,7 @@ public class ForkJoinPool extends AbstractExecutorService {
                         if ((fac = factory) != null &&
                             (wt = fac.newThread(this)) != null) {
                             wt.start();
-                            return true;
+                            return EventType.COMPENSATE_SPARE;
                         }
                     } catch (Throwable rex) {
                         ex = rex;
@@ -2225,7 +2745,7 @@ public class ForkJoinPool extends AbstractExecutorService {
                 }
             }
         }
-        return false;
+        return EventType.COMPENSATE_FAILED;
     }
 
     /**
@@ -2258,9 +2778,9 @@ public class ForkJoinPool extends AbstractExecutorService {
                             synchronized (task) {
                                 if (task.status >= 0) {
                                     try {                // see ForkJoinTask
-                                        registerEvent(EventType.WAIT, task.traceTag);
+                                        registerEvent(EventType.WAIT, task.traceTag());
                                         task.wait();     //  for explanation
-                                        registerEvent(EventType.WAITED, task.traceTag);
+                                        registerEvent(EventType.WAITED, task.traceTag());
                                     } catch (InterruptedException ie) {
                                     }
                                 }
@@ -2478,6 +2998,7 @@ public class ForkJoinPool extends AbstractExecutorService {
         for (long c;;) {
             if (((c = ctl) & STOP_BIT) != 0) {      // already terminating
                 if ((short)(c >>> TC_SHIFT) == -(config & SMASK)) {
+                    flushTrace();                   // all workers are gone
                     synchronized (this) {
                         notifyAll();                // signal when 0 workers
                     }
@@ -2770,6 +3291,8 @@ public class ForkJoinPool extends AbstractExecutorService {
         sb.append(Integer.toString(pn));
         sb.append("-worker-");
         this.workerNamePrefix = sb.toString();
+        if (SAMPLER != null)
+            SAMPLER.register(this, pn);
     }
 
     /**
@@ -2784,6 +3307,8 @@ public class ForkJoinPool extends AbstractExecutorService {
         this.factory = factory;
         this.ueh = handler;
         this.workerNamePrefix = "ForkJoinPool.commonPool-worker-";
+        if (SAMPLER != null)
+            SAMPLER.register(this, 0);
     }
 
     /**
@@ -3495,6 +4020,7 @@ public class ForkJoinPool extends AbstractExecutorService {
     private static final long INDEXSEED;
     private static final long QLOCK;
     private static final long BBASE;
+    private static final long TBPOS;
 
     static {
         int s; // initialize field offsets for CAS etc
@@ -3518,6 +4044,8 @@ public class ForkJoinPool extends AbstractExecutorService {
             Class<?> ak = ForkJoinTask[].class;
             ABASE = U.arrayBaseOffset(ak);
             BBASE = U.arrayBaseOffset(byte[].class);
+            TBPOS = U.objectFieldOffset
+                (TraceBuffer.class.getDeclaredField("pos"));
             s = U.arrayIndexScale(ak);
             ASHIFT = 31 - Integer.numberOfLeadingZeros(s);
         } catch (Exception e) {
@@ -3526,6 +4054,10 @@ public class ForkJoinPool extends AbstractExecutorService {
         if ((s & (s-1)) != 0)
             throw new Error("data type scale not a power of two");
 
+        if (TRACE && FLUSH_INTERVAL > 0) {
+            new TraceFlusher(FLUSH_INTERVAL).start();
+        }
+
         submitters = new ThreadLocal<Submitter>();
         ForkJoinWorkerThreadFactory fac = defaultForkJoinWorkerThreadFactory =
             new DefaultForkJoinWorkerThreadFactory();
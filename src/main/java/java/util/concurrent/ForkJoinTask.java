@@ -7,7 +7,6 @@
 package java.util.concurrent;
 
 import net.shipilev.fjptrace.EventType;
-import net.shipilev.fjptrace.TagGenerator;
 
 import java.io.Serializable;
 import java.lang.ref.ReferenceQueue;
@@ -222,12 +221,36 @@ public abstract class ForkJoinTask<V> implements Future<V>, Serializable {
     static final int SIGNAL      = 0x00010000;  // must be >= 1 << 16
     static final int SMASK       = 0x0000ffff;  // short bits for tags
 
-    /** fjp-trace task tag */
-    final int traceTag;
+    /** fjp-trace task tag, 0 until assigned */
+    volatile long traceTag;
 
     protected ForkJoinTask() {
-        traceTag = (ForkJoinPool.TAG_GENERATOR == null) ? TagGenerator.DISABLED : ForkJoinPool.TAG_GENERATOR.next();
-        registerEvent(EventType.CREATED);
+        if (!ForkJoinPool.LAZY_TAGS)
+            traceTag();
+    }
+
+    /**
+     * Returns the fjp-trace tag, assigning it and recording CREATED
+     * on first use. In lazy mode this happens when the task first
+     * becomes visible to the pool (fork, submit, invoke), so tasks
+     * that are only ever computed inline never touch the trace. The
+     * first use can race: completion-only parents of CountedCompleters
+     * are reached by several children at once, and waiters can come
+     * before the task is ever forked. The tag is installed with CAS,
+     * only the winner records CREATED, and the losers take its tag.
+     */
+    final long traceTag() {
+        long t = traceTag;
+        if (t == 0L) {
+            long n = ForkJoinPool.nextTraceTag();
+            if (U.compareAndSwapLong(this, TRACETAG, 0L, n)) {
+                t = n;
+                registerClassEvent(EventType.CREATED);
+            }
+            else
+                t = traceTag;
+        }
+        return t;
     }
 
     /**
@@ -258,7 +281,7 @@ public abstract class ForkJoinTask<V> implements Future<V>, Serializable {
      */
     final int doExec() {
         int s; boolean completed;
-        registerEvent(EventType.EXEC);
+        registerClassEvent(EventType.EXEC);
         if ((s = status) >= 0) {
             try {
                 completed = exec();
@@ -296,13 +319,13 @@ public abstract class ForkJoinTask<V> implements Future<V>, Serializable {
             if (U.compareAndSwapInt(this, STATUS, s, s | SIGNAL)) {
                 synchronized (this) {
                     if (status >= 0) {
-                        registerEvent(EventType.WAIT, traceTag);
+                        registerEvent(EventType.WAIT, traceTag());
                         try {
                             wait();
                         } catch (InterruptedException ie) {
                             interrupted = true;
                         }
-                        registerEvent(EventType.WAITED, traceTag);
+                        registerEvent(EventType.WAITED, traceTag());
                     }
                     else
                         notifyAll();
@@ -326,9 +349,9 @@ public abstract class ForkJoinTask<V> implements Future<V>, Serializable {
             if (U.compareAndSwapInt(this, STATUS, s, s | SIGNAL)) {
                 synchronized (this) {
                     if (status >= 0) {
-                        registerEvent(EventType.WAIT, traceTag);
+                        registerEvent(EventType.WAIT, traceTag());
                         wait();
-                        registerEvent(EventType.WAITED, traceTag);
+                        registerEvent(EventType.WAITED, traceTag());
                     } else
                         notifyAll();
                 }
@@ -690,7 +713,7 @@ public abstract class ForkJoinTask<V> implements Future<V>, Serializable {
         return getRawResult();
     }
 
-    void registerEvent(EventType event, int traceTag) {
+    void registerEvent(EventType event, long traceTag) {
         Thread caller = Thread.currentThread();
         if (caller instanceof ForkJoinWorkerThread) {
             ((ForkJoinWorkerThread) caller).workQueue.registerEvent(event, traceTag);
@@ -700,7 +723,18 @@ public abstract class ForkJoinTask<V> implements Future<V>, Serializable {
     }
 
     void registerEvent(EventType event) {
-        registerEvent(event, traceTag);
+        registerEvent(event, traceTag());
+    }
+
+    void registerClassEvent(EventType event) {
+        long traceTag = traceTag();
+        int classId = ForkJoinPool.traceClassId(getClass());
+        Thread caller = Thread.currentThread();
+        if (caller instanceof ForkJoinWorkerThread) {
+            ((ForkJoinWorkerThread) caller).workQueue.registerEvent(event, traceTag, classId);
+        } else {
+            ForkJoinPool.registerExternalEvent(event, traceTag, classId);
+        }
     }
 
     /**
@@ -1487,6 +1521,7 @@ public abstract class ForkJoinTask<V> implements Future<V>, Serializable {
     // Unsafe mechanics
     private static final sun.misc.Unsafe U;
     private static final long STATUS;
+    private static final long TRACETAG;
 
     static {
         exceptionTableLock = new ReentrantLock();
@@ -1497,6 +1532,8 @@ public abstract class ForkJoinTask<V> implements Future<V>, Serializable {
             Class<?> k = ForkJoinTask.class;
             STATUS = U.objectFieldOffset
                 (k.getDeclaredField("status"));
+            TRACETAG = U.objectFieldOffset
+                (k.getDeclaredField("traceTag"));
         } catch (Exception e) {
             throw new Error(e);
         }
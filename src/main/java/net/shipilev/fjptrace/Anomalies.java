@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace;
+
+import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Time windows where the time series deviate from their typical values:
+ * every bucket is scored with the robust z-score against the series median,
+ * and the adjacent anomalous buckets are merged into the windows.
+ */
+public class Anomalies {
+
+    public enum Kind {
+        IDLE_DIP("idle dip", "busy, %", 100, true),
+        QUEUE_BACKLOG("queue backlog", "queued tasks", 1, false),
+        WAKEUP_SPIKE("wake-up latency spike", "latency, us", 1e-3, false),
+        TRACE_BLOCK_STORM("trace block storm", "blocked, us", 1e-3, false),
+        ;
+
+        private final String label;
+        private final String unit;
+        private final double scale;
+        private final boolean low;
+
+        Kind(String label, String unit, double scale, boolean low) {
+            this.label = label;
+            this.unit = unit;
+            this.scale = scale;
+            this.low = low;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        /**
+         * @return true, if the values below the typical ones are anomalous
+         */
+        public boolean isLow() {
+            return low;
+        }
+    }
+
+    private final Map<Kind, double[]> series = new EnumMap<>(Kind.class);
+    private final Map<Kind, Double> floors = new EnumMap<>(Kind.class);
+    private final Map<Kind, Double> medians = new EnumMap<>(Kind.class);
+    private final List<Window> windows = new ArrayList<>();
+    private final long from;
+    private final long to;
+    private final long bucket;
+    private final double threshold;
+    private final int limit;
+    private int found;
+
+    /**
+     * @param from      low bound, inclusive
+     * @param to        high bound, exclusive
+     * @param bucket    time bucket of the series
+     * @param threshold bucket is anomalous with the robust z-score above this
+     * @param limit     number of the most anomalous windows to report
+     */
+    public Anomalies(long from, long to, long bucket, double threshold, int limit) {
+        this.from = from;
+        this.to = to;
+        this.bucket = Math.max(1, bucket);
+        this.threshold = threshold;
+        this.limit = limit;
+    }
+
+    public int getBucketCount() {
+        return (int) ((to - from + bucket - 1) / bucket);
+    }
+
+    public long getBucketStart(int b) {
+        return from + b * bucket;
+    }
+
+    /**
+     * @param values value per bucket, NaN where the series is not defined
+     * @param floor  lowest deviation scale, deviations within it are the noise
+     */
+    public void add(Kind kind, double[] values, double floor) {
+        series.put(kind, values);
+        floors.put(kind, floor);
+    }
+
+    /**
+     * Scores the series, and picks the most anomalous windows.
+     */
+    public void detect() {
+        int count = getBucketCount();
+        double[] scores = new double[count];
+        Kind[] kinds = new Kind[count];
+
+        Map<Kind, double[]> zs = new EnumMap<>(Kind.class);
+        for (Map.Entry<Kind, double[]> e : series.entrySet()) {
+            Kind kind = e.getKey();
+            double[] values = e.getValue();
+
+            DescriptiveStatistics stats = new DescriptiveStatistics();
+            for (double v : values) {
+                if (!Double.isNaN(v)) {
+                    stats.addValue(v);
+                }
+            }
+            if (stats.getN() == 0) {
+                continue;
+            }
+
+            double median = stats.getPercentile(50);
+            DescriptiveStatistics devs = new DescriptiveStatistics();
+            for (double v : stats.getValues()) {
+                devs.addValue(Math.abs(v - median));
+            }
+
+            // MAD is zero when most buckets are the same, e.g. no trace blocks at all
+            double scale = 1.4826 * devs.getPercentile(50);
+            if (scale == 0) {
+                scale = stats.getStandardDeviation();
+            }
+            scale = Math.max(scale, floors.get(kind));
+            medians.put(kind, median);
+
+            double[] z = new double[count];
+            for (int b = 0; b < count; b++) {
+                double v = values[b];
+                z[b] = Double.isNaN(v) ? 0 : (kind.isLow() ? median - v : v - median) / scale;
+                if (z[b] > scores[b]) {
+                    scores[b] = z[b];
+                    kinds[b] = kind;
+                }
+            }
+            zs.put(kind, z);
+        }
+
+        // merge the anomalous buckets, tolerating the single quiet bucket in between
+        Window cur = null;
+        int quiet = 0;
+        for (int b = 0; b < count; b++) {
+            if (scores[b] >= threshold) {
+                if (cur == null) {
+                    cur = new Window(getBucketStart(b));
+                    windows.add(cur);
+                }
+                cur.to = Math.min(to, getBucketStart(b + 1));
+                for (Map.Entry<Kind, double[]> e : zs.entrySet()) {
+                    if (e.getValue()[b] >= threshold) {
+                        cur.kinds.add(e.getKey());
+                    }
+                }
+                if (scores[b] > cur.score) {
+                    cur.score = scores[b];
+                    cur.kind = kinds[b];
+                    cur.value = series.get(kinds[b])[b];
+                    cur.baseline = medians.get(kinds[b]);
+                }
+                quiet = 0;
+            } else if (cur != null && ++quiet > 1) {
+                cur = null;
+            }
+        }
+
+        Collections.sort(windows, new Comparator<Window>() {
+            @Override
+            public int compare(Window o1, Window o2) {
+                return Double.compare(o2.score, o1.score);
+            }
+        });
+
+        found = windows.size();
+        if (windows.size() > limit) {
+            windows.subList(limit, windows.size()).clear();
+        }
+    }
+
+    /**
+     * @return most anomalous windows, the most anomalous first
+     */
+    public List<Window> getWindows() {
+        return windows;
+    }
+
+    /**
+     * @return number of the anomalous windows, including the ones not reported
+     */
+    public int getFound() {
+        return found;
+    }
+
+    public void printSummary(PrintWriter pw) {
+        pw.println("Anomalies:");
+        pw.printf("  the buckets of %.3f ms where the series deviate from the median by more than %.1f robust\n", bucket / 1e6, threshold);
+        pw.println("  standard deviations (1.4826 * median absolute deviation) are anomalous; adjacent anomalous");
+        pw.println("  buckets are merged into windows, ranked by the largest deviation");
+        pw.println("  (-Danomalies.sigma=#, --utilBucket=# us, --anomalies=# to tune)");
+        pw.println();
+
+        pw.printf("  %20s %12s\n", "series", "median");
+        for (Kind k : series.keySet()) {
+            Double median = medians.get(k);
+            pw.printf("  %20s %12.2f %s\n", k.label(), (median != null) ? median * k.scale : Double.NaN, k.unit);
+        }
+        pw.println();
+
+        pw.printf("  anomalous windows = %d, reported = %d\n", found, windows.size());
+        pw.println();
+
+        pw.printf("  %3s %12s %12s %8s %25s %12s %12s %s\n", "#", "from, us", "to, us", "score", "worst", "value", "median", "also");
+        int index = 1;
+        for (Window w : windows) {
+            Set<Kind> also = EnumSet.noneOf(Kind.class);
+            also.addAll(w.kinds);
+            also.remove(w.kind);
+            StringBuilder sb = new StringBuilder();
+            for (Kind k : also) {
+                sb.append((sb.length() > 0) ? ", " : "").append(k.label());
+            }
+            pw.printf("  %3d %12.2f %12.2f %8.1f %25s %12.2f %12.2f %s\n",
+                    index++, w.from / 1e3, w.to / 1e3, w.score, w.kind.label(),
+                    w.value * w.kind.scale, w.baseline * w.kind.scale, sb);
+        }
+    }
+
+    public static class Window {
+        private final long from;
+        private final Set<Kind> kinds = EnumSet.noneOf(Kind.class);
+        private long to;
+        private Kind kind;
+        private double score;
+        private double value;
+        private double baseline;
+
+        private Window(long from) {
+            this.from = from;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public long getTo() {
+            return to;
+        }
+
+        /**
+         * @return series deviating the most
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        /**
+         * @return all the series anomalous within the window
+         */
+        public Set<Kind> getKinds() {
+            return kinds;
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace;
+
+/**
+ * Measures the per-event cost of the recorder. Shared by the recorder and
+ * the tests, so the estimate sanity checks are the same.
+ */
+public class Calibration {
+
+    /**
+     * Event is recorded with a single nanoTime() call and a few stores;
+     * anything costing more than this many plain nanoTime() calls is the
+     * measurement artifact, e.g. the interpreted or not yet initialized code.
+     */
+    public static final double MAX_NANOTIME_RATIO = 10;
+
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int ROUNDS = 50;
+
+    private static long sink;
+
+    /**
+     * Times the round after the warmup rounds, so that the code is compiled.
+     * The best round is taken: the analyzer subtracts the cost from task
+     * times, and overcorrecting is worse than undercorrecting.
+     *
+     * @param round  the code under test, doing the given number of operations
+     * @param ops    number of operations in the round
+     * @return best time per operation, nanoseconds
+     */
+    public static double measure(Runnable round, int ops) {
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            round.run();
+        }
+
+        double best = Double.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            round.run();
+            best = Math.min(best, 1.0 * (System.nanoTime() - start) / ops);
+        }
+        return best;
+    }
+
+    /**
+     * @return cost of the single nanoTime() call, nanoseconds
+     */
+    public static double nanoTimeCost(final int ops) {
+        return measure(new Runnable() {
+            @Override
+            public void run() {
+                long s = 0;
+                for (int i = 0; i < ops; i++) {
+                    s += System.nanoTime();
+                }
+                sink += s;
+            }
+        }, ops);
+    }
+
+    /**
+     * @return true, if the event cost is plausible against the nanoTime() cost
+     */
+    public static boolean isSane(double eventCost, double nanoTimeCost) {
+        return eventCost > 0 && eventCost <= MAX_NANOTIME_RATIO * Math.max(1, nanoTimeCost);
+    }
+
+    /**
+     * @return per-event cost of the round, nanoseconds; NaN if the estimate is not plausible
+     */
+    public static double calibrate(Runnable round, int ops) {
+        double cost = measure(round, ops);
+        return isSane(cost, nanoTimeCost(ops)) ? cost : Double.NaN;
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace;
+
+import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * CountedCompleter completion chains: the runs of onCompletion calls one
+ * tryComplete makes on the way to the root, until it meets the completer
+ * with the pending count left.
+ */
+public class CompleterStatus implements SummarySection {
+
+    private static final Comparator<Chain> BY_LENGTH = new Comparator<Chain>() {
+        @Override
+        public int compare(Chain o1, Chain o2) {
+            int c = Integer.compare(o1.length, o2.length);
+            return (c != 0) ? c : Long.compare(o1.getDuration(), o2.getDuration());
+        }
+    };
+
+    private final SortedMap<Integer, Long> lengths = new TreeMap<>();
+    private final SortedMap<Long, long[]> workers = new TreeMap<>();
+    private final DescriptiveStatistics links = new DescriptiveStatistics();
+    private final DescriptiveStatistics completions = new DescriptiveStatistics();
+    private final DescriptiveStatistics siblingWaits = new DescriptiveStatistics();
+    private final PriorityQueue<Chain> longest;
+    private final int limit;
+    private long chains;
+    private long rootChains;
+    private long crossWorker;
+
+    public CompleterStatus(int limit) {
+        this.limit = limit;
+        this.longest = new PriorityQueue<>(Math.max(1, limit), BY_LENGTH);
+    }
+
+    public void registerChain(Chain chain) {
+        chains++;
+        if (chain.root) {
+            rootChains++;
+        }
+
+        Long c = lengths.get(chain.length);
+        lengths.put(chain.length, (c == null) ? 1 : c + 1);
+
+        long[] w = workers.get(chain.worker);
+        if (w == null) {
+            w = new long[3];
+            workers.put(chain.worker, w);
+        }
+        w[0]++;
+        w[1] += chain.length;
+        if (chain.root) {
+            w[2]++;
+        }
+
+        if (limit > 0) {
+            longest.add(chain);
+            if (longest.size() > limit) {
+                longest.poll();
+            }
+        }
+    }
+
+    /**
+     * @param latency time from the child COMPLETED to the parent COMPLETING in the same chain
+     */
+    public void registerLink(long latency) {
+        links.addValue(latency);
+    }
+
+    /**
+     * @param duration onCompletion time, COMPLETING to COMPLETED
+     */
+    public void registerCompletion(long duration) {
+        completions.addValue(duration);
+    }
+
+    /**
+     * @param wait  time from the first pending count decrement of the completer to its COMPLETING
+     * @param cross true, if the completer was completed by the worker other than the one decremented first
+     */
+    public void registerSiblingWait(long wait, boolean cross) {
+        siblingWaits.addValue(wait);
+        if (cross) {
+            crossWorker++;
+        }
+    }
+
+    public long getChains() {
+        return chains;
+    }
+
+    public long getRootChains() {
+        return rootChains;
+    }
+
+    public double getMeanLength() {
+        long sum = 0;
+        for (Map.Entry<Integer, Long> e : lengths.entrySet()) {
+            sum += e.getKey() * e.getValue();
+        }
+        return (double) sum / Math.max(1, chains);
+    }
+
+    @Override
+    public void printSummary(PrintWriter pw) {
+        if (chains == 0) {
+            return;
+        }
+
+        pw.println();
+        pw.println("Completer chains:");
+        pw.println("  chain is the run of onCompletion calls made by one tryComplete/complete, it either reaches");
+        pw.println("  the root, or stops at the completer with pending count left; link is the time from");
+        pw.println("  the child COMPLETED to the parent COMPLETING, sibling wait is the time from the first");
+        pw.println("  pending count decrement of the completer until it completes");
+        pw.printf("  chains = %d, reached root = %d, mean length = %.2f\n", chains, rootChains, getMeanLength());
+        pw.printf("  completers waited for siblings = %d, completed by the other worker = %d (%.2f%%)\n",
+                siblingWaits.getN(), crossWorker, 100.0 * crossWorker / Math.max(1, siblingWaits.getN()));
+
+        pw.println();
+        pw.printf("  %20s %10s %12s %12s %12s\n", "", "count", "p50, us", "p99, us", "max, us");
+        print(pw, "link", links);
+        print(pw, "onCompletion", completions);
+        print(pw, "sibling wait", siblingWaits);
+
+        pw.println();
+        pw.println("  Chain length:");
+        pw.printf("  %10s %12s\n", "length", "chains");
+        for (Map.Entry<Integer, Long> e : lengths.entrySet()) {
+            pw.printf("  %10d %12d\n", e.getKey(), e.getValue());
+        }
+
+        pw.println();
+        pw.println("  Per worker finishing the chains:");
+        pw.printf("  %20s %12s %12s %12s\n", "worker", "chains", "links", "roots");
+        for (Map.Entry<Long, long[]> e : workers.entrySet()) {
+            long[] w = e.getValue();
+            pw.printf("  %20d %12d %12d %12d\n", e.getKey(), w[0], w[1], w[2]);
+        }
+
+        List<Chain> list = new ArrayList<>(longest);
+        Collections.sort(list, Collections.reverseOrder(BY_LENGTH));
+
+        pw.println();
+        pw.println("  Longest chains (-Dchains.limit=# to list more):");
+        pw.printf("  %12s %20s %8s %12s %20s %20s %6s\n", "time, us", "worker", "length", "duration, us", "first", "last", "root");
+        for (Chain c : list) {
+            pw.printf("  %12.2f %20d %8d %12.2f %20d %20d %6s\n",
+                    c.start / 1000.0, c.worker, c.length, c.getDuration() / 1000.0, c.first, c.last, c.root ? "yes" : "no");
+        }
+    }
+
+    private static void print(PrintWriter pw, String name, DescriptiveStatistics s) {
+        if (s.getN() > 0) {
+            pw.printf("  %20s %10d %12.2f %12.2f %12.2f\n", name, s.getN(),
+                    s.getPercentile(50) / 1000, s.getPercentile(99) / 1000, s.getMax() / 1000);
+        } else {
+            pw.printf("  %20s %10d %12s %12s %12s\n", name, 0, "-", "-", "-");
+        }
+    }
+
+    public static class Chain {
+        public final long worker;
+        public final long start;
+        public final long first;
+        public long last;
+        public long end;
+        public int length;
+        public boolean root;
+
+        public Chain(long worker, long start, long first) {
+            this.worker = worker;
+            this.start = start;
+            this.first = first;
+        }
+
+        public long getDuration() {
+            return end - start;
+        }
+    }
+
+}
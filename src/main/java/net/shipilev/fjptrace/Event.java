@@ -22,13 +22,19 @@ public class Event implements Comparable<Event> {
     public long time;
     public final EventType eventType;
     public final long workerId;
-    public final int tag;
+    public final long tag;
+    public final int taskClass;
 
-    public Event(long time, EventType eventType, long workerId, int tag) {
+    public Event(long time, EventType eventType, long workerId, long tag) {
+        this(time, eventType, workerId, tag, TraceMeta.NO_CLASS);
+    }
+
+    public Event(long time, EventType eventType, long workerId, long tag, int taskClass) {
         this.time = time;
         this.eventType = eventType;
         this.workerId = workerId;
         this.tag = tag;
+        this.taskClass = taskClass;
     }
 
     @Override
@@ -85,7 +91,7 @@ public class Event implements Comparable<Event> {
         int result = (int) (time ^ (time >>> 32));
         result = 31 * result + (eventType != null ? eventType.hashCode() : 0);
         result = 31 * result + (int)(workerId ^ (workerId >>> 32));
-        result = 31 * result + tag;
+        result = 31 * result + (int)(tag ^ (tag >>> 32));
         return result;
     }
 
@@ -84,7 +84,8 @@ public enum EventType {
     SUBMIT(Target.TASK),
 
     /**
-     * Tracer is blocked (e.g. waiting for event dump)
+     * Tracer is blocked (e.g. waiting for event dump).
+     * All thread events before this one are in the trace.
      */
     TRACE_BLOCK(Target.THREAD),
 
@@ -106,7 +107,63 @@ public enum EventType {
     /**
      * Task was created
      */
-    CREATED(Target.TASK);
+    CREATED(Target.TASK),
+
+    /**
+     * Worker had registered in the pool, tag is its queue index
+     */
+    REGISTERED(Target.THREAD),
+
+    /**
+     * Worker had stolen the task, tag is the victim queue owner thread id,
+     * or STEAL_SHARED for the shared submission queues
+     */
+    STEAL(Target.THREAD),
+
+    /**
+     * Worker had failed to steal, tag is the number of failures since last trace block
+     */
+    STEAL_FAILED(Target.THREAD),
+
+    /**
+     * Metadata block header, see TraceMeta
+     */
+    META(Target.THREAD),
+
+    /**
+     * Thread events were written out by another thread, without blocking this one.
+     * All thread events before this one are in the trace.
+     */
+    TRACE_FLUSHED(Target.THREAD),
+
+    /**
+     * Worker is about to block, and tries to compensate for it
+     */
+    COMPENSATE(Target.THREAD),
+
+    /**
+     * Worker had tried to compensate, tag is the outcome, see COMPENSATE_*
+     */
+    COMPENSATED(Target.THREAD),
+
+    /**
+     * Completion propagated to the completer, which still has pending count left
+     */
+    PROPAGATED(Target.TASK);
+
+    /**
+     * Compensation outcomes: failed on contention or termination; idle worker re-activated;
+     * enough active workers left, no compensation needed; spare worker created.
+     */
+    public static final int COMPENSATE_FAILED = 0;
+    public static final int COMPENSATE_IDLE = 1;
+    public static final int COMPENSATE_NONE = 2;
+    public static final int COMPENSATE_SPARE = 3;
+
+    /**
+     * Steal victim for the shared submission queues, which have no owner thread.
+     */
+    public static final long STEAL_SHARED = -1;
 
     private final Target target;
 
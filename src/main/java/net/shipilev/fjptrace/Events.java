@@ -26,13 +26,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 public class Events implements Iterable<Event> {
     private final List<Event> events;
     private final SortedSet<Long> workers = new TreeSet<>();
+    private final SortedSet<Long> poolWorkers = new TreeSet<>();
+    private final Map<Integer, String> classNames = new TreeMap<>();
+    private final Map<String, String> properties = new TreeMap<>();
+    private final Map<Long, Long> watermarks = new HashMap<>();
     private long start;
     private long end;
+    private long baseTime;
 
     public Events(int count) {
         events = new ArrayList<>(count);
@@ -62,29 +69,8 @@ public class Events implements Iterable<Event> {
 
         }
 
-        // cut off when some thread has no more events (assume we miss something beyond)
-        Map<Long, Long> lastTime = new HashMap<>();
-        for (Event e : events) {
-            lastTime.put(e.workerId, e.time);
-        }
-
-        long cutoff = Long.MAX_VALUE;
-        for (Long time : lastTime.values()) {
-            cutoff = Math.min(cutoff, time);
-        }
-
-        List<Event> newEvents = new ArrayList<>();
-        for (Event e : events) {
-            if (e.time <= cutoff) {
-                newEvents.add(e);
-            }
-        }
-
         System.out.println(events.size() + " events read");
 
-        events.clear();
-        events.addAll(newEvents);
-
         long basetime = Long.MAX_VALUE;
         for (Event event : events) {
             basetime = Math.min(event.time, basetime);
@@ -93,11 +79,66 @@ public class Events implements Iterable<Event> {
         for (Event event : events) {
             event.time -= basetime;
         }
-
-        System.out.println(events.size() + " events after cutoff");
+        baseTime = basetime;
 
         start = events.get(0).time;
         end = events.get(events.size() - 1).time;
+
+        // pool workers register on start; the traces which miss that, e.g. read
+        // from the offset, only know the threads executing the tasks
+        Set<Long> executing = new HashSet<>();
+        for (Event e : events) {
+            if (e.eventType == EventType.REGISTERED) {
+                poolWorkers.add(e.workerId);
+            } else if (e.eventType == EventType.EXEC) {
+                executing.add(e.workerId);
+            }
+        }
+        if (poolWorkers.isEmpty()) {
+            poolWorkers.addAll(executing);
+        }
+
+        // Every recorder write ends with the watermark, and the events are
+        // complete up to the last one seen for the thread. Limit cuts off
+        // all threads at the same time, so nothing is known beyond the end.
+        // Threads with no watermarks at all are only known up to their last
+        // event.
+        Map<Long, Long> lastTime = new HashMap<>();
+        for (Event e : events) {
+            lastTime.put(e.workerId, e.time);
+        }
+
+        long complete = end;
+        for (Map.Entry<Long, Long> e : lastTime.entrySet()) {
+            Long mark = watermarks.get(e.getKey());
+            long w = (mark != null) ? Math.min(mark - basetime, end) : e.getValue();
+            watermarks.put(e.getKey(), w);
+            complete = Math.min(complete, w);
+        }
+        watermarks.keySet().retainAll(lastTime.keySet());
+
+        System.out.printf("Events are complete up to %d ms for all workers, trace ends at %d ms\n",
+                TimeUnit.NANOSECONDS.toMillis(complete - start), TimeUnit.NANOSECONDS.toMillis(end - start));
+    }
+
+    /**
+     * Records the recorder watermark: all the thread events before the
+     * given (raw) time are in the trace.
+     */
+    public void addWatermark(long threadID, long time) {
+        Long cur = watermarks.get(threadID);
+        if (cur == null || cur < time) {
+            watermarks.put(threadID, time);
+        }
+    }
+
+    /**
+     * @return time the worker events are known to be complete up to;
+     *         the worker state beyond it is unknown
+     */
+    public long getWatermark(long worker) {
+        Long mark = watermarks.get(worker);
+        return (mark != null) ? mark : start;
     }
 
     @Override
@@ -113,10 +154,24 @@ public class Events implements Iterable<Event> {
         return end;
     }
 
+    /**
+     * @return original timestamp all event times are relative to
+     */
+    public long getBaseTime() {
+        return baseTime;
+    }
+
     public Collection<Long> getWorkers() {
         return workers;
     }
 
+    /**
+     * @return pool worker threads, without the external threads submitting or joining the tasks
+     */
+    public Collection<Long> getPoolWorkers() {
+        return poolWorkers;
+    }
+
     public List<Event> getList() {
         return events;
     }
@@ -124,4 +179,36 @@ public class Events implements Iterable<Event> {
     public void addworker(long threadID) {
         workers.add(threadID);
     }
+
+    public void addClassName(int classId, String name) {
+        classNames.put(classId, name);
+    }
+
+    public String getClassName(int classId) {
+        String name = classNames.get(classId);
+        return (name != null) ? name : "<unknown>";
+    }
+
+    public Map<Integer, String> getClassNames() {
+        return classNames;
+    }
+
+    public void setProperty(String key, String value) {
+        properties.put(key, value);
+    }
+
+    /**
+     * @return recorder property, or null if recorder had not set it
+     */
+    public String getProperty(String key) {
+        return properties.get(key);
+    }
+
+    /**
+     * @return calibrated cost of the single event, nanoseconds; zero if the trace is not calibrated
+     */
+    public double getEventCost() {
+        String cost = properties.get(TraceMeta.EVENT_COST);
+        return (cost != null) ? Double.parseDouble(cost) : 0;
+    }
 }
@@ -0,0 +1,470 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace;
+
+import net.shipilev.fjptrace.util.PairedList;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * How the pool workers were shared between the external tasks running
+ * concurrently: the share of the pool each external task got while it was
+ * active, against the even split between the active external tasks; and
+ * Jain's fairness index over the time windows.
+ */
+public class Fairness {
+
+    private final SortedMap<Integer, External> externals = new TreeMap<>();
+    private final Map<Long, Integer> lastIds = new HashMap<>();
+    private final List<Map<Integer, Long>> windows;
+    private final List<long[]> switches = new ArrayList<>();
+    private final PairedList busy = new PairedList();
+    private final long from;
+    private final long to;
+    private final long window;
+    private final double starved;
+    private final int limit;
+
+    private int workers;
+    private long totalSwitches;
+    private double[] jain;
+    private double[] oldest;
+    private int[] active;
+
+    /**
+     * @param from    low bound, inclusive
+     * @param to      high bound, exclusive
+     * @param window  time window for Jain's index
+     * @param starved external task is starved below this part of its fair share
+     * @param limit   number of the external tasks and windows to list
+     */
+    public Fairness(long from, long to, long window, double starved, int limit) {
+        this.from = from;
+        this.to = to;
+        this.window = Math.max(1, window);
+        this.starved = starved;
+        this.limit = limit;
+        int count = (int) ((to - from + this.window - 1) / this.window);
+        this.windows = new ArrayList<>(count);
+        for (int c = 0; c < count; c++) {
+            windows.add(new HashMap<Integer, Long>());
+        }
+    }
+
+    /**
+     * Records the external task submission.
+     */
+    public void submit(int id, long tag, long time) {
+        External e = get(id);
+        e.tag = tag;
+        e.submit = time;
+    }
+
+    /**
+     * Accounts the worker running the external task over [start, end), in time order for every worker.
+     */
+    public void add(long worker, int id, long start, long end) {
+        start = Math.max(start, from);
+        end = Math.min(end, to);
+        if (start >= end) {
+            return;
+        }
+
+        busy.add(start, end);
+
+        Integer last = lastIds.put(worker, id);
+        if (last == null) {
+            workers++;
+        } else if (last != id) {
+            switches.add(new long[]{last, start});
+        }
+
+        External e = get(id);
+        e.busy += end - start;
+        e.first = Math.min(e.first, start);
+        e.last = Math.max(e.last, end);
+
+        // split over the windows
+        long time = start;
+        while (time < end) {
+            int w = (int) ((time - from) / window);
+            long windowEnd = Math.min(end, from + (w + 1) * window);
+            Map<Integer, Long> busy = windows.get(w);
+            Long cur = busy.get(id);
+            busy.put(id, (cur == null ? 0 : cur) + windowEnd - time);
+            time = windowEnd;
+        }
+    }
+
+    private External get(int id) {
+        External e = externals.get(id);
+        if (e == null) {
+            e = new External(id);
+            externals.put(id, e);
+        }
+        return e;
+    }
+
+    /**
+     * Computes the shares, overlaps and indices; called once all the intervals are added.
+     */
+    public void compute() {
+        // never ran within the bounds: nothing to account
+        List<External> list = new ArrayList<>();
+        for (External e : externals.values()) {
+            if (e.busy > 0) {
+                e.start = Math.max(from, Math.min(e.first, (e.submit >= 0) ? e.submit : e.first));
+                e.end = e.last;
+                list.add(e);
+            }
+        }
+        externals.values().retainAll(list);
+
+        int n = list.size();
+        long[] starts = new long[n];
+        long[] ends = new long[n];
+        for (int c = 0; c < n; c++) {
+            starts[c] = list.get(c).start;
+            ends[c] = list.get(c).end;
+        }
+        Arrays.sort(starts);
+        Arrays.sort(ends);
+
+        long[] busyStarts = busy.getAllX();
+        long[] busyEnds = busy.getAllY();
+        Arrays.sort(busyStarts);
+        Arrays.sort(busyEnds);
+
+        // integral of (workers busy with the external tasks) / (active external tasks) over time,
+        // at every start and end: the even split of the workers the pool actually gave to them
+        long[][] streams = {starts, ends, busyStarts, busyEnds};
+        int[] pos = new int[streams.length];
+        Map<Long, Double> integral = new HashMap<>();
+        double sum = 0;
+        int level = 0;
+        int busyLevel = 0;
+        long last = from;
+        while (true) {
+            int s = -1;
+            for (int c = 0; c < streams.length; c++) {
+                if (pos[c] < streams[c].length && (s < 0 || streams[c][pos[c]] < streams[s][pos[s]])) {
+                    s = c;
+                }
+            }
+            if (s < 0) {
+                break;
+            }
+
+            long time = streams[s][pos[s]++];
+            if (level > 0) {
+                sum += (double) busyLevel * (time - last) / level;
+            }
+            last = time;
+
+            switch (s) {
+                case 0:
+                    level++;
+                    integral.put(time, sum);
+                    break;
+                case 1:
+                    level--;
+                    integral.put(time, sum);
+                    break;
+                case 2:
+                    busyLevel++;
+                    break;
+                default:
+                    busyLevel--;
+            }
+        }
+
+        for (External e : list) {
+            e.fair = integral.get(e.end) - integral.get(e.start);
+            e.overlaps = lowerBound(starts, e.end) - upperBound(ends, e.start) - 1;
+        }
+
+        // only switches away from the unfinished external task interleave them
+        for (long[] s : switches) {
+            External e = externals.get((int) s[0]);
+            if (e != null && s[1] < e.end) {
+                e.switches++;
+                totalSwitches++;
+            }
+        }
+
+        // windows: rate of the worker time each active external task got, relative to its time active in the window
+        jain = new double[windows.size()];
+        oldest = new double[windows.size()];
+        active = new int[windows.size()];
+        for (int w = 0; w < windows.size(); w++) {
+            long wStart = from + w * window;
+            long wEnd = Math.min(to, wStart + window);
+
+            double sumX = 0;
+            double sumX2 = 0;
+            double oldestX = 0;
+            int oldestId = Integer.MAX_VALUE;
+            int k = 0;
+            for (External e : list) {
+                long overlap = Math.min(e.end, wEnd) - Math.max(e.start, wStart);
+                if (overlap <= 0) {
+                    continue;
+                }
+                Long busy = windows.get(w).get(e.id);
+                double x = (busy == null ? 0 : busy) / (double) overlap;
+                sumX += x;
+                sumX2 += x * x;
+                k++;
+                if (e.id < oldestId) {
+                    oldestId = e.id;
+                    oldestX = x;
+                }
+            }
+
+            active[w] = k;
+            if (k > 1 && sumX2 > 0) {
+                jain[w] = sumX * sumX / (k * sumX2);
+                oldest[w] = oldestX / (sumX / k);
+            } else {
+                jain[w] = Double.NaN;
+                oldest[w] = Double.NaN;
+            }
+        }
+    }
+
+    private static int lowerBound(long[] a, long key) {
+        int lo = 0;
+        int hi = a.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int upperBound(long[] a, long key) {
+        return lowerBound(a, key + 1);
+    }
+
+    public Collection<External> getExternals() {
+        return externals.values();
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public long getSwitches() {
+        return totalSwitches;
+    }
+
+    /**
+     * @return mean Jain's index over the windows with several active external tasks, NaN if there are none
+     */
+    public double getMeanIndex() {
+        return mean(jain);
+    }
+
+    /**
+     * @return mean rate of the oldest active external task, relative to the mean rate, NaN if there are no concurrent windows
+     */
+    public double getMeanOldest() {
+        return mean(oldest);
+    }
+
+    public int getStarved() {
+        int count = 0;
+        for (External e : externals.values()) {
+            if (e.isStarved()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        int count = 0;
+        for (double v : values) {
+            if (!Double.isNaN(v)) {
+                sum += v;
+                count++;
+            }
+        }
+        return (count > 0) ? sum / count : Double.NaN;
+    }
+
+    public void printSummary(PrintWriter pw) {
+        pw.println("Fairness between the external tasks:");
+        pw.println("  external task is active from its submission to the end of its last subtask;");
+        pw.println("  share is its part of the pool worker time while active, fair share is its part if the workers");
+        pw.println("  busy with the external tasks were split evenly between the active ones; only the tasks that");
+        pw.println("  overlapped others can be starved; switches are the times a worker left it for another external");
+        pw.println("  task before it completed;");
+        pw.println("  Jain's index is (sum x)^2 / (n * sum x^2) over the rates x the n active external tasks got the");
+        pw.println("  workers at within the window: 1 is the even split, 1/n is a single task taking all the workers");
+        pw.println("  (-Dfairness.window=# us, -Dfairness.starved=#%, -Dfairness.limit=# to tune)");
+        pw.println();
+
+        int concurrent = 0;
+        int unfair = 0;
+        double min = Double.NaN;
+        for (double j : jain) {
+            if (!Double.isNaN(j)) {
+                concurrent++;
+                if (j < 0.5) {
+                    unfair++;
+                }
+                min = Double.isNaN(min) ? j : Math.min(min, j);
+            }
+        }
+
+        pw.printf("  workers = %d, external tasks = %d, switches = %d\n", workers, externals.size(), totalSwitches);
+        pw.printf("  windows = %d, %.3f ms each, with concurrent external tasks = %d\n", jain.length, window / 1e6, concurrent);
+        pw.printf("  Jain's index: mean = %.3f, min = %.3f, windows below 0.5 = %d\n", getMeanIndex(), min, unfair);
+        pw.printf("  oldest active external task got %.2f of the mean rate\n", getMeanOldest());
+        pw.printf("  starved external tasks (below %.0f%% of the fair share) = %d\n", 100 * starved, getStarved());
+        pw.println();
+
+        List<External> list = new ArrayList<>(externals.values());
+        Collections.sort(list, new Comparator<External>() {
+            @Override
+            public int compare(External o1, External o2) {
+                return Double.compare(o1.getRatio(), o2.getRatio());
+            }
+        });
+
+        pw.println("  External tasks, least of the fair share first:");
+        pw.printf("  %10s %20s %12s %12s %12s %10s %10s %10s %10s %10s\n",
+                "id", "tag", "submit, us", "active, us", "busy, us", "share, %", "fair, %", "of fair", "overlaps", "switches");
+        for (External e : list.subList(0, Math.min(limit, list.size()))) {
+            pw.printf("  %10d %20d %12.2f %12.2f %12.2f %10.2f %10.2f %10.2f %10d %10d%s\n",
+                    e.id, e.tag, e.submit >= 0 ? e.submit / 1e3 : Double.NaN, (e.end - e.start) / 1e3, e.busy / 1e3,
+                    100.0 * e.getShare(), 100.0 * e.fair / Math.max(1, workers * (e.end - e.start)),
+                    e.getRatio(), e.overlaps, e.switches, e.isStarved() ? " STARVED" : "");
+        }
+        pw.println();
+
+        List<Integer> worst = new ArrayList<>();
+        for (int w = 0; w < jain.length; w++) {
+            if (!Double.isNaN(jain[w])) {
+                worst.add(w);
+            }
+        }
+        Collections.sort(worst, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(jain[o1], jain[o2]);
+            }
+        });
+
+        pw.println("  Windows, least fair first:");
+        pw.printf("  %12s %10s %10s %10s\n", "time, us", "active", "index", "oldest");
+        for (int w : worst.subList(0, Math.min(limit, worst.size()))) {
+            pw.printf("  %12.2f %10d %10.3f %10.2f\n", (from + w * window) / 1e3, active[w], jain[w], oldest[w]);
+        }
+    }
+
+    /**
+     * Prints the time series: for every window, the number of active external tasks, Jain's index,
+     * and the rate of the oldest one relative to the mean; the last two are empty without concurrent tasks.
+     */
+    public void printCSV(PrintWriter pw) {
+        pw.println("time_us,active,jain,oldest");
+        for (int w = 0; w < jain.length; w++) {
+            pw.printf("%.3f,%d,", (from + w * window) / 1e3, active[w]);
+            if (!Double.isNaN(jain[w])) {
+                pw.printf("%.4f,%.4f", jain[w], oldest[w]);
+            } else {
+                pw.print(",");
+            }
+            pw.println();
+        }
+    }
+
+    public class External {
+        private final int id;
+        private long tag = -1;
+        private long submit = -1;
+        private long first = Long.MAX_VALUE;
+        private long last = Long.MIN_VALUE;
+        private long start;
+        private long end;
+        private long busy;
+        private double fair;
+        private int overlaps;
+        private int switches;
+
+        private External(int id) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public long getBusy() {
+            return busy;
+        }
+
+        /**
+         * @return part of the pool worker time the external task got while active
+         */
+        public double getShare() {
+            return (double) busy / Math.max(1, (long) workers * (end - start));
+        }
+
+        /**
+         * @return worker time got, relative to the even split of the workers busy with
+         *         the external tasks between the active ones
+         */
+        public double getRatio() {
+            return (fair > 0) ? busy / fair : 1;
+        }
+
+        /**
+         * Lone external task may not keep all the workers busy, but that is the lack of parallelism;
+         * starved tasks are the ones the workers left for the other external tasks.
+         */
+        public boolean isStarved() {
+            return overlaps > 0 && getRatio() < starved;
+        }
+
+        public int getOverlaps() {
+            return overlaps;
+        }
+
+        public int getSwitches() {
+            return switches;
+        }
+    }
+
+}
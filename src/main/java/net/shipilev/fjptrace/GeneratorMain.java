@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace;
+
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line front-end for {@link TraceGenerator}.
+ */
+public class GeneratorMain {
+
+    public static void main(String[] args) throws IOException {
+        OptionParser parser = new OptionParser();
+        parser.formatHelpWith(new OptFormatter());
+
+        OptionSpec<String> target = parser.accepts("t", "Target trace file")
+                .withRequiredArg().ofType(String.class).describedAs("file").defaultsTo("synthetic.trace");
+
+        OptionSpec<Long> events = parser.accepts("events", "Events to generate")
+                .withRequiredArg().ofType(long.class).describedAs("N").defaultsTo(1000000L);
+
+        OptionSpec<Long> seed = parser.accepts("seed", "Random seed")
+                .withRequiredArg().ofType(long.class).describedAs("N").defaultsTo(42L);
+
+        OptionSpec<Integer> workers = parser.accepts("workers", "Worker threads")
+                .withRequiredArg().ofType(int.class).describedAs("N").defaultsTo(8);
+
+        OptionSpec<Integer> fanOut = parser.accepts("fanOut", "Subtasks forked by every inner task")
+                .withRequiredArg().ofType(int.class).describedAs("N").defaultsTo(2);
+
+        OptionSpec<Integer> depth = parser.accepts("depth", "Task tree depth")
+                .withRequiredArg().ofType(int.class).describedAs("N").defaultsTo(10);
+
+        OptionSpec<Long> taskTime = parser.accepts("taskTime", "Mean time in the task's own code")
+                .withRequiredArg().ofType(long.class).describedAs("ns").defaultsTo(1000L);
+
+        OptionSpec<String> distribution = parser.accepts("distribution", "Task time distribution: fixed, uniform, exponential, pareto")
+                .withRequiredArg().ofType(String.class).describedAs("name").defaultsTo("exponential");
+
+        OptionSpec<Double> stealProbability = parser.accepts("stealProbability", "Probability the forked task is stolen")
+                .withRequiredArg().ofType(double.class).describedAs("p").defaultsTo(0.1);
+
+        OptionSpec<Long> stealTime = parser.accepts("stealTime", "Time to steal the task")
+                .withRequiredArg().ofType(long.class).describedAs("ns").defaultsTo(500L);
+
+        OptionSpec<Long> parkThreshold = parser.accepts("parkThreshold", "Idle time before the worker parks")
+                .withRequiredArg().ofType(long.class).describedAs("ns").defaultsTo(10000L);
+
+        OptionSpec<Long> unparkLatency = parser.accepts("unparkLatency", "Mean time for the worker to wake up")
+                .withRequiredArg().ofType(long.class).describedAs("ns").defaultsTo(5000L);
+
+        OptionSpec<Integer> blockEvents = parser.accepts("blockEvents", "Events in per-worker trace block")
+                .withRequiredArg().ofType(int.class).describedAs("N").defaultsTo(4096);
+
+        OptionSpec<Long> bufferTime = parser.accepts("bufferTime", "Block flush timeout")
+                .withRequiredArg().ofType(long.class).describedAs("us").defaultsTo(1000L);
+
+        OptionSpec<Long> flushTime = parser.accepts("flushTime", "Mean time to flush the block")
+                .withRequiredArg().ofType(long.class).describedAs("ns").defaultsTo(20000L);
+
+        OptionSpec<Integer> reorder = parser.accepts("reorder", "Blocks held back to be written out of order")
+                .withRequiredArg().ofType(int.class).describedAs("N").defaultsTo(0);
+
+        parser.accepts("h", "Print this help");
+
+        OptionSet set;
+        try {
+            set = parser.parse(args);
+        } catch (OptionException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            System.err.println();
+            parser.printHelpOn(System.err);
+            return;
+        }
+
+        if (set.has("h")) {
+            parser.printHelpOn(System.out);
+            return;
+        }
+
+        TraceGenerator.Distribution dist;
+        try {
+            dist = TraceGenerator.Distribution.valueOf(set.valueOf(distribution).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: Unknown distribution: " + set.valueOf(distribution));
+            return;
+        }
+
+        TraceGenerator generator = new TraceGenerator()
+                .seed(set.valueOf(seed))
+                .workers(set.valueOf(workers))
+                .fanOut(set.valueOf(fanOut))
+                .depth(set.valueOf(depth))
+                .taskTime(set.valueOf(taskTime))
+                .taskTimeDistribution(dist)
+                .stealProbability(set.valueOf(stealProbability))
+                .stealTime(set.valueOf(stealTime))
+                .parkThreshold(set.valueOf(parkThreshold))
+                .unparkLatency(set.valueOf(unparkLatency))
+                .blockEvents(set.valueOf(blockEvents))
+                .bufferTime(TimeUnit.MICROSECONDS.toNanos(set.valueOf(bufferTime)))
+                .flushTime(set.valueOf(flushTime))
+                .reorder(set.valueOf(reorder));
+
+        long start = System.nanoTime();
+        long count;
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(set.valueOf(target)), 1024 * 1024)) {
+            count = generator.generate(os, set.valueOf(events));
+        }
+        long time = System.nanoTime() - start;
+
+        System.out.printf("%d events written to %s in %d ms (%.2f Mevents/s)\n",
+                count, set.valueOf(target), TimeUnit.NANOSECONDS.toMillis(time), count * 1000.0 / time);
+    }
+
+}
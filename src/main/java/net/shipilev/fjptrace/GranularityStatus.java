@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace;
+
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Task granularity per class and depth: the work in the task subtree against
+ * the overhead the pool spends on the task, i.e. its steal latency and the
+ * time its joiner is blocked on it.
+ */
+public class GranularityStatus implements SummarySection {
+
+    private final SortedMap<String, SortedMap<Integer, Level>> classes = new TreeMap<>();
+    private final double overheadRatio;
+    private final double minSlack;
+    private final int workers;
+    private long externals;
+
+    /**
+     * @param overheadRatio tasks with the overhead above this share of the subtree work are too fine
+     * @param minSlack      leaves per worker per external task below this are too coarse
+     * @param workers       number of workers to balance the leaves over
+     */
+    public GranularityStatus(double overheadRatio, double minSlack, int workers) {
+        this.overheadRatio = overheadRatio;
+        this.minSlack = minSlack;
+        this.workers = Math.max(1, workers);
+    }
+
+    public void registerExternal() {
+        externals++;
+    }
+
+    /**
+     * @param work self time of the task and all its subtasks
+     */
+    public void register(String className, int depth, long self, long work, long overhead, boolean leaf) {
+        SortedMap<Integer, Level> levels = classes.get(className);
+        if (levels == null) {
+            levels = new TreeMap<>();
+            classes.put(className, levels);
+        }
+        Level l = levels.get(depth);
+        if (l == null) {
+            l = new Level();
+            levels.put(depth, l);
+        }
+        l.count++;
+        l.self += self;
+        l.work += work;
+        l.overhead += overhead;
+        if (leaf) {
+            l.leaves++;
+        }
+    }
+
+    public Collection<String> getClasses() {
+        return classes.keySet();
+    }
+
+    private boolean isFine(Level l) {
+        return l.overhead > overheadRatio * l.work;
+    }
+
+    /**
+     * @return leaves of the class per worker per external task
+     */
+    private double slack(SortedMap<Integer, Level> levels) {
+        long leaves = 0;
+        for (Level l : levels.values()) {
+            leaves += l.leaves;
+        }
+        return (double) leaves / Math.max(1, externals) / workers;
+    }
+
+    /**
+     * @return the deepest depth of the class, which tasks are not overhead-dominated; -1 if none
+     */
+    public int getThresholdDepth(String className) {
+        int threshold = -1;
+        SortedMap<Integer, Level> levels = classes.get(className);
+        if (levels != null) {
+            for (Map.Entry<Integer, Level> e : levels.entrySet()) {
+                if (!isFine(e.getValue())) {
+                    threshold = e.getKey();
+                }
+            }
+        }
+        return threshold;
+    }
+
+    public String getVerdict(String className) {
+        SortedMap<Integer, Level> levels = classes.get(className);
+        if (levels == null) {
+            return null;
+        }
+
+        int deepest = levels.lastKey();
+        int threshold = getThresholdDepth(className);
+        double slack = slack(levels);
+
+        if (threshold < 0) {
+            return "too fine at all depths, consider not forking at all";
+        }
+        Level t = levels.get(threshold);
+        if (threshold < deepest) {
+            return String.format("too fine below depth %d, compute sequentially there: tasks at depth %d have %.2f us of work, %.1f%% overhead",
+                    threshold, threshold, t.getMeanWork() / 1000, 100.0 * t.overhead / Math.max(1, t.work));
+        }
+        if (slack < minSlack) {
+            return String.format("too coarse, %.1f leaves per worker per external task, split deeper than depth %d (leaves have %.2f us of work)",
+                    slack, deepest, t.getMeanWork() / 1000);
+        }
+        return String.format("ok, split down to depth %d, leaves have %.2f us of work, %.1f%% overhead",
+                deepest, t.getMeanWork() / 1000, 100.0 * t.overhead / Math.max(1, t.work));
+    }
+
+    @Override
+    public void printSummary(PrintWriter pw) {
+        pw.println();
+        pw.println("Granularity:");
+        pw.println("  overhead is the steal latency of the task plus the time its joiner was blocked on it;");
+        pw.println("  work is the self time of the task and all its subtasks, i.e. the time to compute it sequentially;");
+        pw.printf("  tasks are too fine when the overhead is above %.0f%% of their work, and too coarse\n", 100 * overheadRatio);
+        pw.printf("  when there are less than %.1f leaves per worker per external task (%d workers, %d external tasks)\n", minSlack, workers, externals);
+        pw.println("  (-Dgranularity.overheadPct=#, -Dgranularity.slack=# to tune)");
+
+        for (Map.Entry<String, SortedMap<Integer, Level>> c : classes.entrySet()) {
+            pw.println();
+            pw.println("  " + c.getKey() + ":");
+            pw.printf("  %10s %12s %12s %12s %12s %12s %10s %8s\n", "depth", "tasks", "leaves", "self, us", "work, us", "overhead, us", "overhead, %", "");
+            for (Map.Entry<Integer, Level> e : c.getValue().entrySet()) {
+                Level l = e.getValue();
+                pw.printf("  %10d %12d %12d %12.2f %12.2f %12.2f %10.1f %8s\n",
+                        e.getKey(), l.count, l.leaves,
+                        l.getMeanSelf() / 1000, l.getMeanWork() / 1000, l.getMeanOverhead() / 1000,
+                        100.0 * l.overhead / Math.max(1, l.work), isFine(l) ? "FINE" : "");
+            }
+            pw.println("  suggestion: " + getVerdict(c.getKey()));
+        }
+    }
+
+    private static class Level {
+        private long count;
+        private long leaves;
+        private long self;
+        private long work;
+        private long overhead;
+
+        private double getMeanSelf() {
+            return (double) self / count;
+        }
+
+        private double getMeanWork() {
+            return (double) work / count;
+        }
+
+        private double getMeanOverhead() {
+            return (double) overhead / count;
+        }
+    }
+
+}
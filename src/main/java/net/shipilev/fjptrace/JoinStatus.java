@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Where the time between JOIN and JOINED goes: executing the joined task
+ * inline, helping with the other tasks, compensating for the blocked
+ * worker, parking in WAIT, and everything else (scanning, spinning, and the
+ * pool infrastructure).
+ */
+public class JoinStatus implements SummarySection {
+
+    private final SortedMap<Integer, Breakdown> byDepth = new TreeMap<>();
+    private final Map<String, Breakdown> byClass = new HashMap<>();
+    private final Breakdown total = new Breakdown();
+    private final List<Join> joins = new ArrayList<>();
+    private final int limit;
+
+    public JoinStatus(int limit) {
+        this.limit = limit;
+    }
+
+    public void register(Join join) {
+        total.add(join);
+
+        Breakdown d = byDepth.get(join.depth);
+        if (d == null) {
+            d = new Breakdown();
+            byDepth.put(join.depth, d);
+        }
+        d.add(join);
+
+        Breakdown c = byClass.get(join.joinerClass);
+        if (c == null) {
+            c = new Breakdown();
+            byClass.put(join.joinerClass, c);
+        }
+        c.add(join);
+
+        joins.add(join);
+    }
+
+    public Breakdown getTotal() {
+        return total;
+    }
+
+    public List<Join> getJoins() {
+        return joins;
+    }
+
+    /**
+     * @return joins, the longest blocking first
+     */
+    public List<Join> getWorst() {
+        Collections.sort(joins, new Comparator<Join>() {
+            @Override
+            public int compare(Join o1, Join o2) {
+                return Long.compare(o2.getBlocked(), o1.getBlocked());
+            }
+        });
+        return joins.subList(0, Math.min(limit, joins.size()));
+    }
+
+    @Override
+    public void printSummary(PrintWriter pw) {
+        pw.println();
+        pw.println("Joins:");
+        pw.println("  inline is executing the joined task itself, helping is executing the other tasks,");
+        pw.println("  compensating is activating or creating the spare worker, parked is waiting in WAIT,");
+        pw.println("  other is scanning, spinning, and the pool infrastructure; blocked = total - inline - helping");
+        pw.println("  depth and class are of the task calling join(), external joins are at depth -1");
+
+        pw.println();
+        pw.println("  Per depth:");
+        printHeader(pw, "depth");
+        for (Map.Entry<Integer, Breakdown> e : byDepth.entrySet()) {
+            print(pw, String.valueOf(e.getKey()), e.getValue());
+        }
+        print(pw, "total", total);
+
+        List<Map.Entry<String, Breakdown>> classes = new ArrayList<>(byClass.entrySet());
+        Collections.sort(classes, new Comparator<Map.Entry<String, Breakdown>>() {
+            @Override
+            public int compare(Map.Entry<String, Breakdown> o1, Map.Entry<String, Breakdown> o2) {
+                return Long.compare(o2.getValue().getBlocked(), o1.getValue().getBlocked());
+            }
+        });
+
+        pw.println();
+        pw.println("  Per class, most blocked first:");
+        printHeader(pw, "class");
+        for (Map.Entry<String, Breakdown> e : classes) {
+            print(pw, e.getKey(), e.getValue());
+        }
+
+        pw.println();
+        pw.println("  Worst joins, most blocked first (-Djoins.limit=# to list more):");
+        pw.printf("  %12s %20s %20s %20s %12s %12s %12s %12s %12s %s\n",
+                "time, us", "worker", "joiner", "joined", "total, us", "blocked, us", "helping, us", "parked, us", "spares", "joiner class");
+        for (Join j : getWorst()) {
+            pw.printf("  %12.2f %20d %20d %20d %12.2f %12.2f %12.2f %12.2f %12d %s\n",
+                    j.time / 1000.0, j.worker, j.joiner, j.joined, j.total / 1000.0, j.getBlocked() / 1000.0,
+                    j.helping / 1000.0, j.parked / 1000.0, j.spares, j.joinerClass);
+        }
+    }
+
+    private static void printHeader(PrintWriter pw, String key) {
+        pw.printf("  %30s %10s %12s %10s %10s %10s %10s %10s %12s %8s\n",
+                key, "joins", "total, us", "inline, %", "helping, %", "compens, %", "parked, %", "other, %", "blocked, us", "spares");
+    }
+
+    private static void print(PrintWriter pw, String key, Breakdown b) {
+        double t = Math.max(1, b.total);
+        pw.printf("  %30s %10d %12.2f %10.2f %10.2f %10.2f %10.2f %10.2f %12.2f %8d\n",
+                key, b.count, b.total / 1000.0,
+                100.0 * b.inline / t, 100.0 * b.helping / t, 100.0 * b.compensating / t,
+                100.0 * b.parked / t, 100.0 * b.getOther() / t,
+                b.getBlocked() / 1000.0, b.spares);
+    }
+
+    /**
+     * Single JOIN to JOINED interval, nanoseconds.
+     */
+    public static class Join {
+        public final long time;
+        public final long worker;
+        public final long joiner;
+        public final long joined;
+        public final int depth;
+        public final String joinerClass;
+        public long total;
+        public long inline;
+        public long helping;
+        public long compensating;
+        public long parked;
+        public int spares;
+
+        public Join(long time, long worker, long joiner, long joined, int depth, String joinerClass) {
+            this.time = time;
+            this.worker = worker;
+            this.joiner = joiner;
+            this.joined = joined;
+            this.depth = depth;
+            this.joinerClass = joinerClass;
+        }
+
+        public long getOther() {
+            return Math.max(0, total - inline - helping - compensating - parked);
+        }
+
+        /**
+         * @return time the joiner was not doing any useful work
+         */
+        public long getBlocked() {
+            return Math.max(0, total - inline - helping);
+        }
+    }
+
+    public static class Breakdown {
+        private long count;
+        private long total;
+        private long inline;
+        private long helping;
+        private long compensating;
+        private long parked;
+        private long spares;
+
+        private void add(Join j) {
+            count++;
+            total += j.total;
+            inline += j.inline;
+            helping += j.helping;
+            compensating += j.compensating;
+            parked += j.parked;
+            spares += j.spares;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getHelping() {
+            return helping;
+        }
+
+        public long getParked() {
+            return parked;
+        }
+
+        public long getOther() {
+            return Math.max(0, total - inline - helping - compensating - parked);
+        }
+
+        public long getBlocked() {
+            return Math.max(0, total - inline - helping);
+        }
+    }
+
+}
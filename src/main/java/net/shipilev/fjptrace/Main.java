@@ -16,18 +16,39 @@
 
 package net.shipilev.fjptrace;
 
+import net.shipilev.fjptrace.tasks.AnomalyTask;
 import net.shipilev.fjptrace.tasks.CheckEventsTask;
+import net.shipilev.fjptrace.tasks.CompleterStatusTask;
+import net.shipilev.fjptrace.tasks.FairnessTask;
+import net.shipilev.fjptrace.tasks.GranularityTask;
+import net.shipilev.fjptrace.tasks.JoinStatusTask;
+import net.shipilev.fjptrace.tasks.MigrationStatusTask;
+import net.shipilev.fjptrace.tasks.PrintCriticalPathTask;
 import net.shipilev.fjptrace.tasks.PrintEventsTask;
 import net.shipilev.fjptrace.tasks.PrintSummaryTask;
 import net.shipilev.fjptrace.tasks.PrintTaskTreesTask;
 import net.shipilev.fjptrace.tasks.PrintWorkerStateTask;
+import net.shipilev.fjptrace.tasks.RenderAnomaliesTask;
 import net.shipilev.fjptrace.tasks.RenderExternalTaskColoringTask;
+import net.shipilev.fjptrace.tasks.RenderPoolSamplesTask;
+import net.shipilev.fjptrace.tasks.RenderStealMatrixTask;
+import net.shipilev.fjptrace.tasks.RenderStealRateTask;
+import net.shipilev.fjptrace.tasks.RenderSubmissionLatencyTask;
 import net.shipilev.fjptrace.tasks.RenderTaskExecTimeTask;
+import net.shipilev.fjptrace.tasks.RenderWakeupLatencyTask;
 import net.shipilev.fjptrace.tasks.RenderWorkerQueueTask;
+import net.shipilev.fjptrace.tasks.ReadSamplesTask;
 import net.shipilev.fjptrace.tasks.ReadTask;
 import net.shipilev.fjptrace.tasks.RenderWorkerStateTask;
+import net.shipilev.fjptrace.tasks.SimulateTask;
+import net.shipilev.fjptrace.tasks.StealStatusTask;
+import net.shipilev.fjptrace.tasks.StragglersTask;
+import net.shipilev.fjptrace.tasks.SubmissionStatusTask;
+import net.shipilev.fjptrace.tasks.TaskGraphTask;
 import net.shipilev.fjptrace.tasks.TaskStatusTask;
 import net.shipilev.fjptrace.tasks.TraceBlockEstimatesTask;
+import net.shipilev.fjptrace.tasks.UtilizationTask;
+import net.shipilev.fjptrace.tasks.WakeupStatusTask;
 import net.shipilev.fjptrace.tasks.WorkerQueueStatusTask;
 import net.shipilev.fjptrace.tasks.WorkerStatusTask;
 
@@ -68,8 +89,24 @@ public class Main {
 
         @Override
         protected void compute() {
-            Events events = new ReadTask(opts).invoke();
+            Events events = null;
+            if (opts.getSource() != null) {
+                events = new ReadTask(opts).invoke();
+                processEvents(events);
+            }
+            if (opts.getSamplesSource() != null) {
+                processSamples(events);
+            }
+        }
 
+        private void processSamples(Events events) {
+            ReadSamplesTask samples = (events != null) ?
+                    new ReadSamplesTask(opts, events.getBaseTime()) :
+                    new ReadSamplesTask(opts);
+            new RenderPoolSamplesTask(opts, samples.invoke()).invoke();
+        }
+
+        private void processEvents(Events events) {
             /*
                We are doing the tasks per stride, because we try to minimize heap impact.
                This also explains silly nulls assigned for the tasks afterwards.
@@ -84,26 +121,77 @@ public class Main {
 
             printEventsTask.join();
 
+            // kept for the anomaly windows, rendered last
+            WakeupStatus wakeupStatus = null;
+            WorkerStatus workerStatus = null;
+            Utilization utilization = null;
+            QueueStatus queueStatus = null;
+            boolean anomalies = opts.getAnomalies() > 0;
+
             {
                 TaskStatusTask tStatus = new TaskStatusTask(events);
+                MigrationStatusTask mStatus = new MigrationStatusTask(events);
+                WakeupStatusTask wkStatus = new WakeupStatusTask(events);
                 tStatus.fork();
+                mStatus.fork();
+                wkStatus.fork();
+                SubmissionStatusTask sbStatus = new SubmissionStatusTask(events);
+                sbStatus.fork();
+                CompleterStatusTask ccStatus = new CompleterStatusTask(events);
+                ccStatus.fork();
+                JoinStatusTask jnStatus = new JoinStatusTask(events, tStatus.join());
+                jnStatus.fork();
+                GranularityTask grStatus = new GranularityTask(events, tStatus.join(), jnStatus.join());
+                grStatus.fork();
                 ForkJoinTask.invokeAll(
                         new RenderExternalTaskColoringTask(opts, events, tStatus.join()),
                         new RenderTaskExecTimeTask(opts, events, tStatus.join()),
-                        new PrintSummaryTask(opts, events, tStatus.join()),
-                        new PrintTaskTreesTask(opts, events, tStatus.join())
+                        new PrintSummaryTask(opts, events, tStatus.join(), mStatus.join(), wkStatus.join(), jnStatus.join(), sbStatus.join(), ccStatus.join(), grStatus.join()),
+                        new PrintTaskTreesTask(opts, events),
+                        new StragglersTask(opts, events, tStatus.join()),
+                        new FairnessTask(opts, events, tStatus.join()),
+                        new RenderStealMatrixTask(opts, events, mStatus.join().getSteals(),
+                                opts.getTargetPrefix() + "-migrationMatrix.png", "Stolen forked tasks (rows: executing worker, columns: forking worker)"),
+                        new RenderWakeupLatencyTask(opts, events, wkStatus.join()),
+                        new RenderSubmissionLatencyTask(opts, events, sbStatus.join())
                         );
+                if (anomalies) {
+                    wakeupStatus = wkStatus.join();
+                }
                 tStatus = null;
+                mStatus = null;
+                wkStatus = null;
+                jnStatus = null;
+                sbStatus = null;
+                ccStatus = null;
+                grStatus = null;
+            }
+
+            {
+                TaskGraphTask graph = new TaskGraphTask(events);
+                graph.fork();
+                ForkJoinTask.invokeAll(
+                        new PrintCriticalPathTask(opts, events, graph.join()),
+                        new SimulateTask(opts, events, graph.join())
+                        );
+                graph = null;
             }
 
             {
                 WorkerStatusTask wStatus = new WorkerStatusTask(opts, events);
                 wStatus.fork();
+                UtilizationTask uStatus = new UtilizationTask(opts, events, wStatus.join());
                 ForkJoinTask.invokeAll(
                         new RenderWorkerStateTask(opts, events, wStatus.join()),
-                        new PrintWorkerStateTask(opts, events, wStatus.join())
+                        new PrintWorkerStateTask(opts, events, wStatus.join()),
+                        uStatus
                         );
+                if (anomalies) {
+                    workerStatus = wStatus.join();
+                    utilization = uStatus.join();
+                }
                 wStatus = null;
+                uStatus = null;
             }
 
             {
@@ -112,9 +200,35 @@ public class Main {
                 ForkJoinTask.invokeAll(
                         new RenderWorkerQueueTask(opts, events, wqStatus.join())
                         );
+                if (anomalies) {
+                    queueStatus = wqStatus.join();
+                }
                 wqStatus = null;
             }
 
+            if (anomalies) {
+                AnomalyTask aStatus = new AnomalyTask(opts, events, utilization, queueStatus, wakeupStatus);
+                aStatus.fork();
+                ForkJoinTask.invokeAll(
+                        new RenderAnomaliesTask(opts, events, aStatus.join(), workerStatus, queueStatus)
+                        );
+                aStatus = null;
+                wakeupStatus = null;
+                workerStatus = null;
+                utilization = null;
+                queueStatus = null;
+            }
+
+            {
+                StealStatusTask sStatus = new StealStatusTask(events);
+                sStatus.fork();
+                ForkJoinTask.invokeAll(
+                        new RenderStealMatrixTask(opts, events, sStatus.join()),
+                        new RenderStealRateTask(opts, events, sStatus.join())
+                        );
+                sStatus = null;
+            }
+
             traceEstimateTask.join();
             checkEvents.join();
             printEventsTask.join();
@@ -132,8 +246,29 @@ public class Main {
 
         @Override
         protected void compute() {
-            Events events = new ReadTask(opts).invoke();
+            Events events = null;
+            if (opts.getSource() != null) {
+                events = new ReadTask(opts).invoke();
+                processEvents(events);
+            }
+            if (opts.getSamplesSource() != null) {
+                processSamples(events);
+            }
+        }
+
+        private void processSamples(Events events) {
+            try {
+                Samples samples = (events != null) ?
+                        new ReadSamplesTask(opts, events.getBaseTime()).invoke() :
+                        new ReadSamplesTask(opts).invoke();
+                new RenderPoolSamplesTask(opts, samples).invoke();
+            } catch (Exception e) {
+                // ignore
+                e.printStackTrace();
+            }
+        }
 
+        private void processEvents(Events events) {
             /*
                We are doing the tasks per stride, because we try to minimize heap impact.
                This also explains silly nulls assigned for the tasks afterwards.
@@ -143,33 +278,91 @@ public class Main {
             new PrintEventsTask(opts, events).quietlyInvoke();
             new TraceBlockEstimatesTask(events).quietlyInvoke();
 
+            // kept for the anomaly windows, rendered last
+            WakeupStatus wkStatus = null;
+            WorkerStatus wStatus = null;
+            Utilization util = null;
+            QueueStatus wqStatus = null;
+            boolean anomalies = opts.getAnomalies() > 0;
+
             try {
                 TaskStatus tStatus = new TaskStatusTask(events).invoke();
+                MigrationStatus mStatus = new MigrationStatusTask(events).invoke();
+                wkStatus = new WakeupStatusTask(events).invoke();
+                JoinStatus jnStatus = new JoinStatusTask(events, tStatus).invoke();
+                SubmissionStatus sbStatus = new SubmissionStatusTask(events).invoke();
+                CompleterStatus ccStatus = new CompleterStatusTask(events).invoke();
+                GranularityStatus grStatus = new GranularityTask(events, tStatus, jnStatus).invoke();
                 new RenderExternalTaskColoringTask(opts, events, tStatus).invoke();
                 new RenderTaskExecTimeTask(opts, events, tStatus).invoke();
-                new PrintSummaryTask(opts, events, tStatus).invoke();
-                new PrintTaskTreesTask(opts, events, tStatus).invoke();
+                new RenderSubmissionLatencyTask(opts, events, sbStatus).invoke();
+                new PrintSummaryTask(opts, events, tStatus, mStatus, wkStatus, jnStatus, sbStatus, ccStatus, grStatus).invoke();
+                new RenderStealMatrixTask(opts, events, mStatus.getSteals(),
+                        opts.getTargetPrefix() + "-migrationMatrix.png", "Stolen forked tasks (rows: executing worker, columns: forking worker)").invoke();
+                new RenderWakeupLatencyTask(opts, events, wkStatus).invoke();
+                new PrintTaskTreesTask(opts, events).invoke();
+                new StragglersTask(opts, events, tStatus).invoke();
+                new FairnessTask(opts, events, tStatus).invoke();
+            } catch (Exception e) {
+                // ignore
+                e.printStackTrace();
+            }
+            if (!anomalies) {
+                wkStatus = null;
+            }
+
+            try {
+                TaskGraph graph = new TaskGraphTask(events).invoke();
+                new PrintCriticalPathTask(opts, events, graph).invoke();
+                new SimulateTask(opts, events, graph).invoke();
             } catch (Exception e) {
                 // ignore
                 e.printStackTrace();
             }
 
             try {
-                WorkerStatus wStatus = new WorkerStatusTask(opts, events).invoke();
+                wStatus = new WorkerStatusTask(opts, events).invoke();
                 new RenderWorkerStateTask(opts, events, wStatus).invoke();
                 new PrintWorkerStateTask(opts, events, wStatus).invoke();
+                util = new UtilizationTask(opts, events, wStatus).invoke();
             } catch (Exception e) {
                 // ignore
                 e.printStackTrace();
             }
+            if (!anomalies) {
+                wStatus = null;
+                util = null;
+            }
 
             try {
-                QueueStatus wqStatus = new WorkerQueueStatusTask(opts, events).invoke();
+                wqStatus = new WorkerQueueStatusTask(opts, events).invoke();
                 new RenderWorkerQueueTask(opts, events, wqStatus).invoke();
             } catch (Exception e) {
                 // ignore
                 e.printStackTrace();
             }
+            if (!anomalies) {
+                wqStatus = null;
+            }
+
+            if (anomalies) {
+                try {
+                    Anomalies windows = new AnomalyTask(opts, events, util, wqStatus, wkStatus).invoke();
+                    new RenderAnomaliesTask(opts, events, windows, wStatus, wqStatus).invoke();
+                } catch (Exception e) {
+                    // ignore
+                    e.printStackTrace();
+                }
+            }
+
+            try {
+                StealStatus sStatus = new StealStatusTask(events).invoke();
+                new RenderStealMatrixTask(opts, events, sStatus).invoke();
+                new RenderStealRateTask(opts, events, sStatus).invoke();
+            } catch (Exception e) {
+                // ignore
+                e.printStackTrace();
+            }
 
         }
     }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Where the forked tasks were executed: popped by the forking worker, or
+ * stolen by another one; with the fork to exec latencies.
+ */
+public class MigrationStatus implements SummarySection {
+
+    private static final int BUCKETS = 64;
+
+    private final StealStatus steals = new StealStatus();
+    private final SortedMap<Integer, long[]> byDepth = new TreeMap<>();
+    private final long[] localLatency = new long[BUCKETS];
+    private final long[] stolenLatency = new long[BUCKETS];
+    private long local;
+    private long stolen;
+    private long external;
+    private long unmatched;
+
+    public void registerLocal(int depth, long latency) {
+        depth(depth)[0]++;
+        localLatency[bucket(latency)]++;
+        local++;
+    }
+
+    public void registerStolen(long time, long thief, long victim, int depth, long latency) {
+        steals.register(time, thief, victim);
+        depth(depth)[1]++;
+        stolenLatency[bucket(latency)]++;
+        stolen++;
+    }
+
+    public void registerExternal() {
+        external++;
+    }
+
+    public void registerUnmatched() {
+        unmatched++;
+    }
+
+    private long[] depth(int depth) {
+        long[] counts = byDepth.get(depth);
+        if (counts == null) {
+            counts = new long[2];
+            byDepth.put(depth, counts);
+        }
+        return counts;
+    }
+
+    /**
+     * @return power of two bucket: [2^(b-1), 2^b) nanoseconds
+     */
+    private static int bucket(long latency) {
+        return (latency <= 0) ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(latency));
+    }
+
+    /**
+     * @return thief x victim counts for the stolen tasks
+     */
+    public StealStatus getSteals() {
+        return steals;
+    }
+
+    public long getLocal() {
+        return local;
+    }
+
+    public long getStolen() {
+        return stolen;
+    }
+
+    @Override
+    public void printSummary(PrintWriter pw) {
+        pw.println();
+        pw.println("Forked task migration:");
+        pw.println("  local tasks are popped by the worker which forked them, stolen ones are executed by another worker");
+        pw.printf("  local = %d, stolen = %d (%.2f%%)\n", local, stolen, 100.0 * stolen / Math.max(1, local + stolen));
+        pw.printf("  external tasks = %d, forked before the trace start = %d\n", external, unmatched);
+
+        pw.println();
+        pw.println("  Per depth:");
+        pw.printf("  %10s %12s %12s %10s\n", "depth", "local", "stolen", "stolen, %");
+        for (Map.Entry<Integer, long[]> e : byDepth.entrySet()) {
+            long[] c = e.getValue();
+            pw.printf("  %10d %12d %12d %10.2f\n", e.getKey(), c[0], c[1], 100.0 * c[1] / Math.max(1, c[0] + c[1]));
+        }
+
+        int lo = BUCKETS;
+        int hi = -1;
+        for (int b = 0; b < BUCKETS; b++) {
+            if (localLatency[b] + stolenLatency[b] > 0) {
+                lo = Math.min(lo, b);
+                hi = Math.max(hi, b);
+            }
+        }
+
+        pw.println();
+        pw.println("  Fork to exec latency:");
+        pw.printf("  %25s %12s %12s\n", "latency, us", "local", "stolen");
+        for (int b = lo; b <= hi; b++) {
+            double from = (b == 0) ? 0 : (1L << (b - 1)) / 1000.0;
+            double to = (1L << b) / 1000.0;
+            pw.printf("  [%10.3f, %10.3f) %12d %12d\n", from, to, localLatency[b], stolenLatency[b]);
+        }
+    }
+
+}
@@ -21,11 +21,15 @@ import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class Options {
     private String source;
+    private String samplesSource;
     private int limit;
     private int offset;
     private final String[] args;
@@ -35,17 +39,46 @@ public class Options {
     private long from;
     private long to;
     private boolean shouldFix;
+    private boolean showRawTimes;
+    private List<Integer> simWorkers = Collections.emptyList();
+    private Simulator.Policy simPolicy;
+    private long simStealCost;
+    private long utilBucket;
+    private int anomalies;
 
     public Options(String[] args) {
         this.args = args;
     }
 
+    private Options(Options o) {
+        this.args = o.args;
+        this.source = o.source;
+        this.samplesSource = o.samplesSource;
+        this.limit = o.limit;
+        this.offset = o.offset;
+        this.height = o.height;
+        this.width = o.width;
+        this.targetPrefix = o.targetPrefix;
+        this.from = o.from;
+        this.to = o.to;
+        this.shouldFix = o.shouldFix;
+        this.showRawTimes = o.showRawTimes;
+        this.simWorkers = o.simWorkers;
+        this.simPolicy = o.simPolicy;
+        this.simStealCost = o.simStealCost;
+        this.utilBucket = o.utilBucket;
+        this.anomalies = o.anomalies;
+    }
+
     public boolean parse() throws IOException {
         OptionParser parser = new OptionParser();
         parser.formatHelpWith(new OptFormatter());
 
         OptionSpec<String> source = parser.accepts("s", "Source trace file")
-                .withRequiredArg().ofType(String.class).describedAs("file").required();
+                .withRequiredArg().ofType(String.class).describedAs("file");
+
+        OptionSpec<String> samples = parser.accepts("samples", "Source pool samples file, defaults to <trace file>.samples if present")
+                .withRequiredArg().ofType(String.class).describedAs("file");
 
         OptionSpec<String> target = parser.accepts("t", "Target file prefix")
                 .withRequiredArg().ofType(String.class).describedAs("filename");
@@ -71,6 +104,23 @@ public class Options {
         OptionSpec<Boolean> fixup = parser.accepts("fix", "Try to fix broken file")
                 .withRequiredArg().ofType(boolean.class).defaultsTo(false);
 
+        parser.accepts("rawTimes", "Show raw task times next to the ones corrected for the recorder overhead");
+
+        OptionSpec<Integer> simWorkers = parser.accepts("simWorkers", "Replay the task graph on N virtual workers, and predict the run time")
+                .withRequiredArg().ofType(int.class).withValuesSeparatedBy(',').describedAs("N,N,...");
+
+        OptionSpec<String> simPolicy = parser.accepts("simPolicy", "Simulated stealing policy: random, round_robin, longest")
+                .withRequiredArg().ofType(String.class).describedAs("policy").defaultsTo("random");
+
+        OptionSpec<Integer> simStealCost = parser.accepts("simStealCost", "Simulated cost of the single steal")
+                .withRequiredArg().ofType(int.class).describedAs("ns").defaultsTo(500);
+
+        OptionSpec<Integer> utilBucket = parser.accepts("utilBucket", "Time bucket for the worker utilization time series")
+                .withRequiredArg().ofType(int.class).describedAs("us").defaultsTo(1000);
+
+        OptionSpec<Integer> anomalies = parser.accepts("anomalies", "Render N most anomalous time windows zoomed in, 0 to disable (keeps the stage results in memory until the end)")
+                .withRequiredArg().ofType(int.class).describedAs("N").defaultsTo(0);
+
         parser.accepts("h", "Print this help");
 
         OptionSet set;
@@ -88,17 +138,42 @@ public class Options {
             return false;
         }
 
+        if (!set.has(source) && !set.has(samples)) {
+            System.err.println("ERROR: Either trace file, or samples file should be specified");
+            System.err.println();
+            parser.printHelpOn(System.err);
+            return false;
+        }
+
         this.source = set.valueOf(source);
+        if (set.has(samples)) {
+            this.samplesSource = set.valueOf(samples);
+        } else if (new File(this.source + ".samples").exists()) {
+            this.samplesSource = this.source + ".samples";
+        }
         this.limit = set.valueOf(limit);
         this.offset = set.valueOf(offset);
         this.height = set.valueOf(height);
         this.width = set.valueOf(width);
         this.shouldFix = set.valueOf(fixup);
+        this.showRawTimes = set.has("rawTimes");
+        this.simWorkers = set.valuesOf(simWorkers);
+        this.simStealCost = set.valueOf(simStealCost);
+        this.utilBucket = TimeUnit.MICROSECONDS.toNanos(set.valueOf(utilBucket));
+        this.anomalies = set.valueOf(anomalies);
+        try {
+            this.simPolicy = Simulator.Policy.valueOf(set.valueOf(simPolicy).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: Unknown simulation policy: " + set.valueOf(simPolicy));
+            System.err.println();
+            parser.printHelpOn(System.err);
+            return false;
+        }
         this.from = TimeUnit.MICROSECONDS.toNanos(set.valueOf(from));
         this.to = TimeUnit.MICROSECONDS.toNanos(set.valueOf(to));
 
         if (!set.has(target)) {
-            this.targetPrefix = set.valueOf(source);
+            this.targetPrefix = (this.source != null) ? this.source : this.samplesSource;
         } else {
             this.targetPrefix = set.valueOf(target);
         }
@@ -110,6 +185,10 @@ public class Options {
         return source;
     }
 
+    public String getSamplesSource() {
+        return samplesSource;
+    }
+
     public String getTargetPrefix() {
         return targetPrefix;
     }
@@ -141,4 +220,48 @@ public class Options {
     public boolean isShouldFix() {
         return shouldFix;
     }
+
+    public boolean isShowRawTimes() {
+        return showRawTimes;
+    }
+
+    /**
+     * @return virtual worker counts to simulate; empty if simulation is not requested
+     */
+    public List<Integer> getSimWorkers() {
+        return simWorkers;
+    }
+
+    public Simulator.Policy getSimPolicy() {
+        return simPolicy;
+    }
+
+    public long getSimStealCost() {
+        return simStealCost;
+    }
+
+    /**
+     * @return time bucket for the worker utilization time series, nanoseconds
+     */
+    public long getUtilizationBucket() {
+        return utilBucket;
+    }
+
+    /**
+     * @return number of the anomalous time windows to render zoomed in
+     */
+    public int getAnomalies() {
+        return anomalies;
+    }
+
+    /**
+     * @return copy of these options, limited to the given time range and writing with the given target prefix
+     */
+    public Options window(long from, long to, String targetPrefix) {
+        Options o = new Options(this);
+        o.from = from;
+        o.to = to;
+        o.targetPrefix = targetPrefix;
+        return o;
+    }
 }
@@ -66,6 +66,13 @@ public class QueueStatus {
         }
     }
 
+    /**
+     * @return timeline of the worker queue depth, or null if the worker is not known
+     */
+    public Timeline<Long> getTimeline(long worker) {
+        return workerTaskCounts.get(worker);
+    }
+
     public void markInvalid(long time, long workerId) {
         workerTaskCounts.get(workerId).removeBefore(time);
     }
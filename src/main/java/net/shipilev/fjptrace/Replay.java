@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Re-executes the task graph on the real pool.
+ * <p>
+ * Every task is the {@link RecursiveAction} doing the recorded sequence of
+ * own work, forks and joins: the own work is busy-spinning for the measured
+ * time, the forks and joins are the real ones. External tasks are submitted
+ * at the recorded times, or all at once. The task code is gone, and so are
+ * its memory and cache effects: the replay measures the scheduling alone.
+ */
+public class Replay {
+
+    private final List<Plan> roots = new ArrayList<>();
+    private final Map<Long, Plan> plans = new HashMap<>();
+
+    private double timeScale = 1.0;
+    private boolean recordedArrivals = true;
+
+    public Replay(TaskGraph graph) {
+        List<TaskGraph.Node> nodes = graph.getRoots();
+        Collections.sort(nodes, new Comparator<TaskGraph.Node>() {
+            @Override
+            public int compare(TaskGraph.Node o1, TaskGraph.Node o2) {
+                return Long.compare(o1.getStart(), o2.getStart());
+            }
+        });
+
+        // unroll the trees now, not to pay for it in the replay
+        List<TaskGraph.Node> stack = new ArrayList<>(nodes);
+        while (!stack.isEmpty()) {
+            TaskGraph.Node n = stack.remove(stack.size() - 1);
+            plans.put(n.getTag(), new Plan(n));
+            stack.addAll(n.getChildren());
+        }
+
+        for (TaskGraph.Node n : nodes) {
+            roots.add(plans.get(n.getTag()));
+        }
+    }
+
+    /**
+     * Multiplies all the recorded times, e.g. to shrink the long traces.
+     */
+    public Replay timeScale(double timeScale) {
+        if (timeScale <= 0) {
+            throw new IllegalArgumentException("Time scale should be positive: " + timeScale);
+        }
+        this.timeScale = timeScale;
+        return this;
+    }
+
+    /**
+     * Submit external tasks at the recorded times (true), or all at once (false).
+     */
+    public Replay recordedArrivals(boolean recordedArrivals) {
+        this.recordedArrivals = recordedArrivals;
+        return this;
+    }
+
+    public int getExternalTasks() {
+        return roots.size();
+    }
+
+    public int getTasks() {
+        return plans.size();
+    }
+
+    /**
+     * Replays the graph once.
+     *
+     * @return time to complete all external tasks, in nanoseconds
+     */
+    public long run(ForkJoinPool pool) {
+        List<ForkJoinTask<?>> submitted = new ArrayList<>(roots.size());
+
+        long first = roots.isEmpty() ? 0 : roots.get(0).start;
+        long start = System.nanoTime();
+        for (Plan root : roots) {
+            if (recordedArrivals) {
+                spinUntil(start + (long) ((root.start - first) * timeScale));
+            }
+            ReplayTask t = new ReplayTask(root);
+            pool.execute(t);
+            submitted.add(t);
+        }
+
+        for (ForkJoinTask<?> t : submitted) {
+            t.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void spinUntil(long deadline) {
+        while (System.nanoTime() < deadline) {
+            // spin
+        }
+    }
+
+    private class ReplayTask extends RecursiveAction {
+        private final Plan plan;
+
+        ReplayTask(Plan plan) {
+            this.plan = plan;
+        }
+
+        @Override
+        protected void compute() {
+            Map<Long, ReplayTask> forked = null;
+            for (int i = 0; i < plan.kinds.length; i++) {
+                long value = plan.values[i];
+                if (plan.kinds[i] == TaskGraph.OP_WORK) {
+                    spinUntil(System.nanoTime() + (long) (value * timeScale));
+                } else if (plan.kinds[i] == TaskGraph.OP_FORK) {
+                    ReplayTask t = new ReplayTask(plans.get(value));
+                    if (forked == null) {
+                        forked = new HashMap<>();
+                    }
+                    forked.put(value, t);
+                    t.fork();
+                } else if (plan.kinds[i] == TaskGraph.OP_JOIN) {
+                    ReplayTask t = (forked != null) ? forked.remove(value) : null;
+                    if (t != null) {
+                        t.join();
+                    }
+                }
+            }
+
+            // the children never joined explicitly are assumed to be joined at the end
+            if (forked != null) {
+                for (ReplayTask t : forked.values()) {
+                    t.join();
+                }
+            }
+        }
+    }
+
+    private static class Plan {
+        private final long start;
+        private final long[] kinds;
+        private final long[] values;
+
+        Plan(TaskGraph.Node node) {
+            this.start = node.getStart();
+            this.kinds = node.getOps().getAllX();
+            this.values = node.getOps().getAllY();
+        }
+    }
+
+}
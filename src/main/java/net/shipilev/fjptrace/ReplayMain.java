@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace;
+
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import net.shipilev.fjptrace.tasks.ReadTask;
+import net.shipilev.fjptrace.tasks.TaskGraphTask;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line front-end for {@link Replay}.
+ */
+public class ReplayMain {
+
+    public static void main(String[] args) throws IOException {
+        OptionParser parser = new OptionParser();
+        parser.formatHelpWith(new OptFormatter());
+
+        OptionSpec<String> source = parser.accepts("s", "Source trace file")
+                .withRequiredArg().ofType(String.class).describedAs("file");
+
+        OptionSpec<Integer> limit = parser.accepts("limit", "Limit read to N events")
+                .withRequiredArg().ofType(int.class).describedAs("N").defaultsTo(Integer.MAX_VALUE);
+
+        OptionSpec<Integer> parallelism = parser.accepts("parallelism", "Pool parallelism, defaults to the number of workers in the trace")
+                .withRequiredArg().ofType(int.class).describedAs("N");
+
+        OptionSpec<Integer> warmup = parser.accepts("warmup", "Warmup iterations")
+                .withRequiredArg().ofType(int.class).describedAs("N").defaultsTo(1);
+
+        OptionSpec<Integer> iterations = parser.accepts("iterations", "Measured iterations")
+                .withRequiredArg().ofType(int.class).describedAs("N").defaultsTo(5);
+
+        OptionSpec<Double> timeScale = parser.accepts("timeScale", "Multiply all recorded times by this")
+                .withRequiredArg().ofType(double.class).describedAs("factor").defaultsTo(1.0);
+
+        OptionSpec<String> arrivals = parser.accepts("arrivals", "Submit external tasks at the recorded times (recorded), or all at once (burst)")
+                .withRequiredArg().ofType(String.class).describedAs("mode").defaultsTo("recorded");
+
+        parser.accepts("h", "Print this help");
+
+        OptionSet set;
+        try {
+            set = parser.parse(args);
+        } catch (OptionException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            System.err.println();
+            parser.printHelpOn(System.err);
+            return;
+        }
+
+        if (set.has("h")) {
+            parser.printHelpOn(System.out);
+            return;
+        }
+
+        if (!set.has(source)) {
+            System.err.println("ERROR: Trace file should be specified");
+            System.err.println();
+            parser.printHelpOn(System.err);
+            return;
+        }
+
+        boolean recorded;
+        switch (set.valueOf(arrivals)) {
+            case "recorded":
+                recorded = true;
+                break;
+            case "burst":
+                recorded = false;
+                break;
+            default:
+                System.err.println("ERROR: Unknown arrivals mode: " + set.valueOf(arrivals));
+                return;
+        }
+
+        Options opts = new Options(new String[] { "-s", set.valueOf(source), "--limit", String.valueOf(set.valueOf(limit)) });
+        if (!opts.parse()) {
+            return;
+        }
+
+        Events events = new ReadTask(opts).invoke();
+        TaskGraph graph = new TaskGraphTask(events).invoke();
+
+        long first = Long.MAX_VALUE;
+        for (TaskGraph.Node root : graph.getRoots()) {
+            first = Math.min(first, root.getStart());
+        }
+
+        long last = Long.MIN_VALUE;
+        Set<Long> workers = new HashSet<>();
+        for (Event e : events) {
+            switch (e.eventType) {
+                case EXEC:
+                    workers.add(e.workerId);
+                    break;
+                case EXECUTED:
+                    last = Math.max(last, e.time);
+                    break;
+            }
+        }
+        events = null;
+
+        Replay replay = new Replay(graph)
+                .timeScale(set.valueOf(timeScale))
+                .recordedArrivals(recorded);
+        graph = null;
+
+        int par = set.has(parallelism) ? set.valueOf(parallelism) : Math.max(1, workers.size());
+
+        System.out.printf("Replaying %d external tasks, %d tasks on %d workers\n", replay.getExternalTasks(), replay.getTasks(), par);
+        System.out.printf("Recorded: %.2f ms on %d workers\n", (last > first) ? (last - first) / 1_000_000.0 : 0, workers.size());
+
+        ForkJoinPool pool = new ForkJoinPool(par);
+        try {
+            for (int i = 0; i < set.valueOf(warmup); i++) {
+                System.out.printf("Warmup %d: %.2f ms\n", i + 1, replay.run(pool) / 1_000_000.0);
+            }
+
+            long sum = 0;
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            int count = set.valueOf(iterations);
+            for (int i = 0; i < count; i++) {
+                long time = replay.run(pool);
+                sum += time;
+                min = Math.min(min, time);
+                max = Math.max(max, time);
+                System.out.printf("Iteration %d: %.2f ms\n", i + 1, time / 1_000_000.0);
+            }
+
+            if (count > 0) {
+                System.out.printf("Replayed: %.2f ms average, %.2f ms min, %.2f ms max\n",
+                        sum / 1_000_000.0 / count, min / 1_000_000.0, max / 1_000_000.0);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
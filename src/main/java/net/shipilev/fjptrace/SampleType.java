@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace;
+
+/**
+ * Pool samples. Pool-level samples carry the pool id in the upper 16 bits
+ * of the index, queue samples also carry the queue index in the lower 16 bits.
+ */
+public enum SampleType {
+
+    /**
+     * Target parallelism of the pool
+     */
+    PARALLELISM,
+
+    /**
+     * Number of active workers
+     */
+    ACTIVE,
+
+    /**
+     * Total number of workers
+     */
+    TOTAL,
+
+    /**
+     * Number of inactivated workers waiting for the signal
+     */
+    WAITING,
+
+    /**
+     * Number of tasks in the queue
+     */
+    QUEUE_SIZE;
+
+    public static int poolId(int index) {
+        return index >>> 16;
+    }
+
+    public static int queueIndex(int index) {
+        return index & 0xFFFF;
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace;
+
+import net.shipilev.fjptrace.util.PairedList;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Pool samples, as recorded by pool sampler.
+ */
+public class Samples {
+
+    private final Map<Integer, Map<SampleType, PairedList>> pools = new TreeMap<>();
+    private final Map<Integer, SortedMap<Integer, PairedList>> queues = new TreeMap<>();
+    private long start = Long.MAX_VALUE;
+    private long end = Long.MIN_VALUE;
+
+    public void add(long time, SampleType type, int index, long value) {
+        int pool = SampleType.poolId(index);
+
+        if (type == SampleType.QUEUE_SIZE) {
+            SortedMap<Integer, PairedList> qs = queues.get(pool);
+            if (qs == null) {
+                qs = new TreeMap<>();
+                queues.put(pool, qs);
+            }
+            get(qs, SampleType.queueIndex(index)).add(time, value);
+        } else {
+            Map<SampleType, PairedList> ps = pools.get(pool);
+            if (ps == null) {
+                ps = new EnumMap<>(SampleType.class);
+                pools.put(pool, ps);
+            }
+            get(ps, type).add(time, value);
+        }
+
+        start = Math.min(start, time);
+        end = Math.max(end, time);
+    }
+
+    private static <K> PairedList get(Map<K, PairedList> map, K key) {
+        PairedList list = map.get(key);
+        if (list == null) {
+            list = new PairedList();
+            map.put(key, list);
+        }
+        return list;
+    }
+
+    public Collection<Integer> getPools() {
+        return pools.keySet();
+    }
+
+    public PairedList get(int pool, SampleType type) {
+        Map<SampleType, PairedList> ps = pools.get(pool);
+        if (ps == null || !ps.containsKey(type)) {
+            return new PairedList();
+        }
+        return ps.get(type);
+    }
+
+    /**
+     * @return queue index -> (time, queue size) samples
+     */
+    public SortedMap<Integer, PairedList> getQueues(int pool) {
+        SortedMap<Integer, PairedList> qs = queues.get(pool);
+        return (qs == null) ? new TreeMap<Integer, PairedList>() : qs;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+}
@@ -62,6 +62,38 @@ public class Selectors {
         throw new IllegalStateException();
     }
 
+    public static WorkerState selectState(WorkerStatusBL blStatus, WorkerStatusPK pkStatus, WorkerStatusJN jnStatus) {
+        switch (blStatus) {
+            case IDLE:
+                switch (pkStatus) {
+                    case ACTIVE:
+                        return WorkerState.INFRA;
+                    case PARKED:
+                        return WorkerState.PARKED;
+                }
+            case RUNNING:
+                switch (jnStatus) {
+                    case FREE:
+                        switch (pkStatus) {
+                            case ACTIVE:
+                                return WorkerState.EXEC;
+                            case PARKED:
+                                return WorkerState.WAIT;
+                        }
+                    case JOINING:
+                        switch (pkStatus) {
+                            case ACTIVE:
+                                return WorkerState.JOIN;
+                            case PARKED:
+                                return WorkerState.WAIT;
+                        }
+                }
+            case UNKNOWN:
+                return WorkerState.UNKNOWN;
+        }
+        throw new IllegalStateException();
+    }
+
     // should be exactly 20 chars
     public static String selectText(WorkerStatusBL blStatus, WorkerStatusPK pkStatus, WorkerStatusJN jnStatus) {
         switch (blStatus) {
@@ -122,7 +154,7 @@ public class Selectors {
                         }
                 }
             case UNKNOWN:
-                return "No data (buffers had not yet flushed?)";
+                return "No data (beyond the last trace flush)";
         }
         throw new IllegalStateException();
     }
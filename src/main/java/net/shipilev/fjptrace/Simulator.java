@@ -0,0 +1,451 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Discrete-event replay of the task graph on the given number of virtual
+ * workers.
+ * <p>
+ * Every task runs its measured own work, forks and joins in the recorded
+ * order. Forked tasks go to the bottom of the worker deque, the owner takes
+ * them back from the bottom, and the thieves steal from the top. Joining
+ * the task still in the own deque executes it inline, joining the stolen
+ * task helps the thief by stealing from its deque, and blocks when there
+ * is nothing to steal. External tasks arrive at the times they were
+ * submitted in the trace, and the idle workers park until the new task is
+ * pushed anywhere.
+ */
+public class Simulator {
+
+    public enum Policy {
+        /**
+         * Probe all the queues, starting from the random one
+         */
+        RANDOM,
+
+        /**
+         * Probe all the queues, starting from the next worker
+         */
+        ROUND_ROBIN,
+
+        /**
+         * Steal from the longest queue
+         */
+        LONGEST,
+
+        ;
+    }
+
+    private final TaskGraph graph;
+    private final int count;
+    private final Policy policy;
+    private final long stealCost;
+    private final Random random;
+
+    private final List<VWorker> workers = new ArrayList<>();
+    private final List<Deque<TaskGraph.Node>> queues = new ArrayList<>();
+    private final Deque<TaskGraph.Node> submissions = new ArrayDeque<>();
+    private final Map<TaskGraph.Node, State> states = new HashMap<>();
+    private final PriorityQueue<VWorker> ready;
+    private final Deque<VWorker> parked = new ArrayDeque<>();
+    private final WorkerStatus workerStatus = new WorkerStatus();
+
+    private long start;
+    private long end;
+    private long busy;
+    private long steals;
+    private long tasks;
+
+    public Simulator(TaskGraph graph, int workers, Policy policy, long stealCost, long seed) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Should have at least one worker: " + workers);
+        }
+        this.graph = graph;
+        this.count = workers;
+        this.policy = policy;
+        this.stealCost = stealCost;
+        this.random = new Random(seed);
+        this.ready = new PriorityQueue<>(workers, new Comparator<VWorker>() {
+            @Override
+            public int compare(VWorker o1, VWorker o2) {
+                int c = Long.compare(o1.time, o2.time);
+                return (c != 0) ? c : Integer.compare(o1.id, o2.id);
+            }
+        });
+    }
+
+    public void run() {
+        List<TaskGraph.Node> roots = new ArrayList<>(graph.getRoots());
+        Collections.sort(roots, new Comparator<TaskGraph.Node>() {
+            @Override
+            public int compare(TaskGraph.Node o1, TaskGraph.Node o2) {
+                return Long.compare(o1.getStart(), o2.getStart());
+            }
+        });
+
+        start = roots.isEmpty() ? 0 : Math.max(0, roots.get(0).getStart());
+        end = start;
+
+        for (int i = 0; i < count; i++) {
+            VWorker w = new VWorker(i);
+            w.time = start;
+            workers.add(w);
+            queues.add(w.deque);
+            park(w);
+        }
+        // submissions are the last queue to probe
+        queues.add(submissions);
+
+        int nextRoot = 0;
+        while (true) {
+            VWorker w = ready.peek();
+            long arrival = (nextRoot < roots.size()) ? Math.max(start, roots.get(nextRoot).getStart()) : Long.MAX_VALUE;
+
+            if (w == null && arrival == Long.MAX_VALUE) {
+                break;
+            }
+
+            if (w == null || arrival <= w.time) {
+                submissions.addLast(roots.get(nextRoot++));
+                signal(arrival);
+            } else {
+                ready.poll();
+                step(w);
+            }
+        }
+
+        for (VWorker w : workers) {
+            flush(w);
+            workerStatus.seal(end, w.id);
+        }
+    }
+
+    /**
+     * Runs the worker until it has to advance in time, park or block.
+     */
+    private void step(VWorker w) {
+        while (true) {
+            Frame f = w.stack.peek();
+
+            if (f == null) {
+                TaskGraph.Node t = w.deque.pollLast();
+                if (t != null) {
+                    execute(w, t);
+                    continue;
+                }
+
+                t = steal(w, -1);
+                if (t != null) {
+                    execute(w, t);
+                    w.time += stealCost;
+                    publish(w);
+                    ready.add(w);
+                } else {
+                    park(w);
+                }
+                return;
+            }
+
+            if (f.op == f.kinds.length) {
+                complete(w, f);
+                continue;
+            }
+
+            long kind = f.kinds[f.op];
+            long value = f.values[f.op];
+
+            if (kind == TaskGraph.OP_WORK) {
+                f.op++;
+                busy += value;
+                publish(w);
+                w.time += value;
+                ready.add(w);
+                return;
+            }
+
+            TaskGraph.Node child = graph.node(value);
+            State s = state(child);
+
+            if (kind == TaskGraph.OP_FORK) {
+                f.op++;
+                s.queue = w.deque;
+                w.deque.addLast(child);
+                signal(w.time);
+                continue;
+            }
+
+            // OP_JOIN
+            if (s.done || (s.queue == null && s.executor == null)) {
+                f.op++;
+                if (f.joining) {
+                    f.joining = false;
+                    if (--w.joins == 0) {
+                        w.jn = WorkerStatusJN.FREE;
+                    }
+                }
+                continue;
+            }
+
+            if (s.queue != null) {
+                // not stolen yet, execute inline, and get back to this join when done
+                s.queue.removeLastOccurrence(child);
+                execute(w, child);
+                continue;
+            }
+
+            if (!f.joining) {
+                f.joining = true;
+                if (w.joins++ == 0) {
+                    w.jn = WorkerStatusJN.JOINING;
+                }
+            }
+
+            TaskGraph.Node t = (s.executor != null) ? steal(w, s.executor.id) : null;
+            if (t != null) {
+                execute(w, t);
+                w.time += stealCost;
+                publish(w);
+                ready.add(w);
+            } else {
+                s.waiters.add(w);
+                w.pk = WorkerStatusPK.PARKED;
+                publish(w);
+            }
+            return;
+        }
+    }
+
+    private void execute(VWorker w, TaskGraph.Node task) {
+        State s = state(task);
+        s.queue = null;
+        s.executor = w;
+        w.bl = WorkerStatusBL.RUNNING;
+        w.stack.push(new Frame(task));
+    }
+
+    private void complete(VWorker w, Frame f) {
+        w.stack.pop();
+        tasks++;
+        end = Math.max(end, w.time);
+
+        State s = state(f.task);
+        s.done = true;
+        for (VWorker waiter : s.waiters) {
+            waiter.time = Math.max(waiter.time, w.time);
+            waiter.pk = WorkerStatusPK.ACTIVE;
+            ready.add(waiter);
+        }
+        s.waiters.clear();
+
+        if (w.stack.isEmpty()) {
+            w.bl = WorkerStatusBL.IDLE;
+        }
+    }
+
+    /**
+     * Takes the task from the top of the victim queue.
+     *
+     * @param victim worker to steal from, or -1 to choose by policy
+     * @return stolen task, or null if there is nothing to steal
+     */
+    private TaskGraph.Node steal(VWorker thief, int victim) {
+        Deque<TaskGraph.Node> q = null;
+        if (victim >= 0) {
+            q = queues.get(victim);
+        } else {
+            int n = queues.size();
+            switch (policy) {
+                case RANDOM:
+                case ROUND_ROBIN: {
+                    int origin = (policy == Policy.RANDOM) ? random.nextInt(n) : thief.id + 1;
+                    for (int i = 0; i < n; i++) {
+                        Deque<TaskGraph.Node> c = queues.get((origin + i) % n);
+                        if (!c.isEmpty()) {
+                            q = c;
+                            break;
+                        }
+                    }
+                    break;
+                }
+                case LONGEST:
+                    for (Deque<TaskGraph.Node> c : queues) {
+                        if (!c.isEmpty() && (q == null || c.size() > q.size())) {
+                            q = c;
+                        }
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown policy: " + policy);
+            }
+        }
+
+        TaskGraph.Node t = (q != null) ? q.pollFirst() : null;
+        if (t != null) {
+            steals++;
+        }
+        return t;
+    }
+
+    private void park(VWorker w) {
+        parked.add(w);
+        w.pk = WorkerStatusPK.PARKED;
+        publish(w);
+    }
+
+    /**
+     * Wakes up the parked worker, if any, to pick up the newly pushed task.
+     */
+    private void signal(long time) {
+        VWorker w = parked.poll();
+        if (w != null) {
+            w.time = Math.max(w.time, time);
+            w.pk = WorkerStatusPK.ACTIVE;
+            ready.add(w);
+        }
+    }
+
+    /**
+     * Records the worker status at the current worker time. The worker
+     * can go through several states at the same instant, and only the last
+     * one is recorded: the statuses recorded at the same time are ambiguous.
+     */
+    private void publish(VWorker w) {
+        if (w.pending != null && w.pendingTime != w.time) {
+            flush(w);
+        }
+        w.pending = new WorkerStatusHolder(w.bl, w.jn, w.pk);
+        w.pendingTime = w.time;
+    }
+
+    private void flush(VWorker w) {
+        WorkerStatusHolder s = w.pending;
+        WorkerStatusHolder p = w.published;
+        if (s != null && (p == null || s.blStatus != p.blStatus || s.jnStatus != p.jnStatus || s.pkStatus != p.pkStatus)) {
+            workerStatus.add(w.pendingTime, w.id, s);
+            w.published = s;
+        }
+        w.pending = null;
+    }
+
+    private State state(TaskGraph.Node task) {
+        State s = states.get(task);
+        if (s == null) {
+            s = new State();
+            states.put(task, s);
+        }
+        return s;
+    }
+
+    /**
+     * @return time the first external task arrived
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return time the last task completed
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    public long getMakespan() {
+        return end - start;
+    }
+
+    /**
+     * @return fraction of the worker time spent executing the tasks
+     */
+    public double getUtilization() {
+        long total = count * getMakespan();
+        return (total > 0) ? 1.0 * busy / total : 0;
+    }
+
+    public long getSteals() {
+        return steals;
+    }
+
+    public long getTasks() {
+        return tasks;
+    }
+
+    public Collection<Long> getWorkers() {
+        List<Long> ids = new ArrayList<>();
+        for (VWorker w : workers) {
+            ids.add((long) w.id);
+        }
+        return ids;
+    }
+
+    public WorkerStatus getWorkerStatus() {
+        return workerStatus;
+    }
+
+    private static class VWorker {
+        private final int id;
+        private final Deque<TaskGraph.Node> deque = new ArrayDeque<>();
+        private final Deque<Frame> stack = new ArrayDeque<>();
+        private long time;
+        private int joins;
+
+        private WorkerStatusBL bl = WorkerStatusBL.IDLE;
+        private WorkerStatusJN jn = WorkerStatusJN.FREE;
+        private WorkerStatusPK pk = WorkerStatusPK.PARKED;
+        private WorkerStatusHolder pending;
+        private long pendingTime;
+        private WorkerStatusHolder published;
+
+        VWorker(int id) {
+            this.id = id;
+        }
+    }
+
+    private static class Frame {
+        private final TaskGraph.Node task;
+        private final long[] kinds;
+        private final long[] values;
+        private int op;
+        private boolean joining;
+
+        Frame(TaskGraph.Node task) {
+            this.task = task;
+            this.kinds = task.getOps().getAllX();
+            this.values = task.getOps().getAllY();
+        }
+    }
+
+    private static class State {
+        private Deque<TaskGraph.Node> queue;
+        private VWorker executor;
+        private boolean done;
+        private final List<VWorker> waiters = new ArrayList<>(1);
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace;
+
+import net.shipilev.fjptrace.util.Multiset;
+import net.shipilev.fjptrace.util.PairedList;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Thief x victim steal counts, plus the times steals had happened.
+ */
+public class StealStatus {
+
+    private final Map<Long, Multiset<Long>> matrix = new TreeMap<>();
+    private final SortedSet<Long> victims = new TreeSet<>();
+    private final PairedList steals = new PairedList();
+    private final PairedList failures = new PairedList();
+    private long totalSteals;
+    private long totalFailures;
+
+    public void register(long time, long thief, long victim) {
+        Multiset<Long> row = matrix.get(thief);
+        if (row == null) {
+            row = new Multiset<>();
+            matrix.put(thief, row);
+        }
+        row.add(victim);
+        victims.add(victim);
+        steals.add(time, thief);
+        totalSteals++;
+    }
+
+    public void registerFailures(long time, long count) {
+        failures.add(time, count);
+        totalFailures += count;
+    }
+
+    public long getCount(long thief, long victim) {
+        Multiset<Long> row = matrix.get(thief);
+        return (row == null) ? 0 : row.count(victim);
+    }
+
+    public long getMaxCount() {
+        long max = 0;
+        for (Multiset<Long> row : matrix.values()) {
+            for (Long victim : row.keys()) {
+                max = Math.max(max, row.count(victim));
+            }
+        }
+        return max;
+    }
+
+    public Collection<Long> getThieves() {
+        return matrix.keySet();
+    }
+
+    public Collection<Long> getVictims() {
+        return victims;
+    }
+
+    /**
+     * @return pairs of (time, thief) for every steal
+     */
+    public PairedList getSteals() {
+        return steals;
+    }
+
+    /**
+     * @return pairs of (time, count) for every failure batch
+     */
+    public PairedList getFailures() {
+        return failures;
+    }
+
+    public long getTotalSteals() {
+        return totalSteals;
+    }
+
+    public long getTotalFailures() {
+        return totalFailures;
+    }
+}
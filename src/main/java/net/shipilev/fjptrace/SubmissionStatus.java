@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace;
+
+import net.shipilev.fjptrace.util.PairedList;
+import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
+
+import java.io.PrintWriter;
+
+/**
+ * Latencies of the externally submitted tasks: from SUBMIT to the first
+ * EXEC of the submitted task (queueing), and from SUBMIT to the last
+ * EXECUTED in its subtree (completion).
+ */
+public class SubmissionStatus implements SummarySection {
+
+    private final PairedList queueing = new PairedList();
+    private final PairedList completion = new PairedList();
+    private final DescriptiveStatistics queueingStats = new DescriptiveStatistics();
+    private final DescriptiveStatistics completionStats = new DescriptiveStatistics();
+    private long submitted;
+
+    public void registerSubmit() {
+        submitted++;
+    }
+
+    public void registerQueueing(long submitTime, long latency) {
+        queueing.add(submitTime, latency);
+        queueingStats.addValue(latency);
+    }
+
+    public void registerCompletion(long submitTime, long latency) {
+        completion.add(submitTime, latency);
+        completionStats.addValue(latency);
+    }
+
+    /**
+     * @return pairs of (submit time, queueing latency)
+     */
+    public PairedList getQueueing() {
+        return queueing;
+    }
+
+    /**
+     * @return pairs of (submit time, completion latency)
+     */
+    public PairedList getCompletion() {
+        return completion;
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    public double getQueueingPercentile(double p) {
+        return (queueingStats.getN() > 0) ? queueingStats.getPercentile(p) : 0;
+    }
+
+    public double getCompletionPercentile(double p) {
+        return (completionStats.getN() > 0) ? completionStats.getPercentile(p) : 0;
+    }
+
+    @Override
+    public void printSummary(PrintWriter pw) {
+        pw.println();
+        pw.println("External submissions:");
+        pw.println("  queueing is from SUBMIT to the first EXEC of the submitted task,");
+        pw.println("  completion is from SUBMIT to the last EXECUTED of the task or any of its subtasks");
+        pw.printf("  submitted = %d, executed = %d, completed = %d\n", submitted, queueingStats.getN(), completionStats.getN());
+        pw.println();
+        pw.printf("  %12s %10s %12s %12s %12s %12s %12s\n", "", "count", "p50, us", "p99, us", "p99.9, us", "max, us", "mean, us");
+        print(pw, "queueing", queueingStats);
+        print(pw, "completion", completionStats);
+    }
+
+    private static void print(PrintWriter pw, String name, DescriptiveStatistics s) {
+        if (s.getN() > 0) {
+            pw.printf("  %12s %10d %12.2f %12.2f %12.2f %12.2f %12.2f\n", name, s.getN(),
+                    s.getPercentile(50) / 1000, s.getPercentile(99) / 1000, s.getPercentile(99.9) / 1000,
+                    s.getMax() / 1000, s.getMean() / 1000);
+        } else {
+            pw.printf("  %12s %10d %12s %12s %12s %12s %12s\n", name, 0, "-", "-", "-", "-", "-");
+        }
+    }
+
+}
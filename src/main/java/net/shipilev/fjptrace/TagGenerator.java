@@ -1,26 +1,27 @@
 package net.shipilev.fjptrace;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Fast "unique" tag generator.
+ * Fast unique tag generator.
  *
- * This generator provides the thread-safe non-blocking continous stream of unique integers.
- * Due to domain constraints, this generator will wrap around every 2^31 values.
- * This would impede the uniqueness property, but the period of duplicate values is exacly 2^31.
+ * This generator hands out the disjoint ranges of tags, and the owner of the range
+ * is expected to walk it on its own. Instrumented ForkJoinPool keeps the current range
+ * in plain fields of workers and submitters, which avoids any per-tag allocation or
+ * ThreadLocal lookup.
  *
+ * Tags are 64-bit, and so the generator does not wrap around in any practical trace.
  * This generator never answers negative values.
  */
 public final class TagGenerator {
 
-    private static final int INITIAL_VALUE = 1;
+    private static final long INITIAL_VALUE = 1;
 
-    public static final int DISABLED = -1000;
-    public static final int NULL_TASK_ID = -1;
-    public static final int NOT_FJP_THREAD = -2;
+    public static final long DISABLED = -1000;
+    public static final long NULL_TASK_ID = -1;
+    public static final long NOT_FJP_THREAD = -2;
 
-    private final ThreadLocal<Region> regions;
-    private final AtomicInteger counter;
+    private final AtomicLong counter;
     private final int size;
 
     public TagGenerator() {
@@ -28,44 +29,24 @@ public final class TagGenerator {
     }
 
     public TagGenerator(int chunkSize) {
-        if (chunkSize == 0) {
-            throw new IllegalArgumentException("Chunk size should not be 0");
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size should be positive");
         }
-        counter = new AtomicInteger(INITIAL_VALUE);
-        regions = new ThreadLocal<>();
+        counter = new AtomicLong(INITIAL_VALUE);
         size = chunkSize;
     }
 
-    public int next() {
-        Region region = regions.get();
-        if (region == null || region.isEmpty()) {
-            int start = counter.getAndAdd(size);
-            if (start <= 0) {
-                counter.set(INITIAL_VALUE);
-                start = counter.getAndAdd(size);
-            }
-            region = new Region(start, start + size);
-            regions.set(region);
-        }
-        return region.next();
+    /**
+     * Reserves the next range of tags.
+     *
+     * @return first tag in the range; range spans {@link #getChunkSize()} tags
+     */
+    public long reserve() {
+        return counter.getAndAdd(size);
     }
 
-    private static final class Region {
-        private final int to;
-        int cur;
-
-        public Region(int from, int to) {
-            this.cur = from;
-            this.to = to;
-        }
-
-        public int next() {
-            return cur++;
-        }
-
-        public boolean isEmpty() {
-            return cur >= to;
-        }
+    public int getChunkSize() {
+        return size;
     }
 
 }
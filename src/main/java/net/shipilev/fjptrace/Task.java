@@ -8,21 +8,28 @@ import java.util.List;
 public class Task {
     private final List<Task> children;
     private final List<Event> events;
-    private final int taskTag;
+    private final long taskTag;
 
     private volatile int depth;
     private long time;
     private long selfTime;
     private long totalTime;
+    private long rawSelfTime;
+    private long rawTotalTime;
     private long worker;
+    private int taskClass;
 
-    public Task(int taskTag) {
+    public Task(long taskTag) {
         this.events = new ArrayList<>();
         this.taskTag = taskTag;
         this.depth = -1;
         children = new ArrayList<>();
     }
 
+    public long getTag() {
+        return taskTag;
+    }
+
     public void addChild(Task child) {
         children.add(child);
     }
@@ -39,28 +46,56 @@ public class Task {
         this.depth = depth;
     }
 
-    public void addSelf(long time, long duration) {
+    /**
+     * @param events    number of events recorded during the self time
+     * @param eventCost cost of the single event, subtracted from the duration
+     */
+    public void addSelf(long time, long duration, long events, double eventCost) {
         this.time = time;
-        this.selfTime = duration;
+        this.rawSelfTime = duration;
+        this.selfTime = corrected(duration, events, eventCost);
     }
 
-    public void addTotal(long time, long duration) {
+    /**
+     * @param events    number of events recorded during the total time
+     * @param eventCost cost of the single event, subtracted from the duration
+     */
+    public void addTotal(long time, long duration, long events, double eventCost) {
         this.time = time;
-        this.totalTime = duration;
+        this.rawTotalTime = duration;
+        this.totalTime = corrected(duration, events, eventCost);
     }
 
+    private static long corrected(long duration, long events, double eventCost) {
+        return Math.max(0, duration - Math.round(events * eventCost));
+    }
+
+    /**
+     * @return total time, less the recorder overhead
+     */
     public long getTotalTime() {
         return totalTime;
     }
 
+    public long getRawTotalTime() {
+        return rawTotalTime;
+    }
+
     public long getTime() {
         return time;
     }
 
+    /**
+     * @return self time, less the recorder overhead
+     */
     public long getSelfTime() {
         return selfTime;
     }
 
+    public long getRawSelfTime() {
+        return rawSelfTime;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -81,7 +116,7 @@ public class Task {
 
     @Override
     public int hashCode() {
-        return taskTag;
+        return (int) (taskTag ^ (taskTag >>> 32));
     }
 
     public void setWorker(long worker) {
@@ -92,6 +127,14 @@ public class Task {
         return worker;
     }
 
+    public void setTaskClass(int taskClass) {
+        this.taskClass = taskClass;
+    }
+
+    public int getTaskClass() {
+        return taskClass;
+    }
+
     public void recordEvent(Event e) {
         events.add(e);
     }
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace;
+
+import net.shipilev.fjptrace.util.PairedList;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fork/join dependency DAG, reduced to what the work/span analysis needs.
+ * <p>
+ * Every task is the sequence of its own work, forks and joins, as seen by
+ * the thread executing it. The forked child can run in parallel since the
+ * fork, and the parent can not get past the join until the child completes.
+ * The children never joined explicitly (e.g. completers) are assumed to be
+ * joined at the end of the parent.
+ */
+public class TaskGraph {
+
+    static final long OP_WORK = 0;
+    static final long OP_FORK = 1;
+    static final long OP_JOIN = 2;
+
+    private final Map<Long, Node> nodes = new HashMap<>();
+    private final List<Node> submitted = new ArrayList<>();
+
+    public static class Node {
+        private final long tag;
+        private final PairedList ops = new PairedList();
+        private final List<Node> children = new ArrayList<>();
+        private Node parent;
+        private boolean submitted;
+        private boolean executed;
+        private long start = -1;
+        private long worker;
+        private int taskClass;
+        private long self;
+        private long work;
+        private long span;
+        private List<Node> pathChildren = Collections.emptyList();
+
+        Node(long tag) {
+            this.tag = tag;
+        }
+
+        public long getTag() {
+            return tag;
+        }
+
+        /**
+         * @return time the task was first seen submitted or executed
+         */
+        public long getStart() {
+            return start;
+        }
+
+        public long getWorker() {
+            return worker;
+        }
+
+        public int getTaskClass() {
+            return taskClass;
+        }
+
+        /**
+         * @return own work of this task, without children
+         */
+        public long getSelf() {
+            return self;
+        }
+
+        /**
+         * @return own work of this task and all its descendants
+         */
+        public long getWork() {
+            return work;
+        }
+
+        /**
+         * @return critical path length through this task and all its descendants
+         */
+        public long getSpan() {
+            return span;
+        }
+
+        public double getParallelism() {
+            return (span > 0) ? 1.0 * work / span : 1.0;
+        }
+
+        public Node getParent() {
+            return parent;
+        }
+
+        public List<Node> getChildren() {
+            return children;
+        }
+
+        /**
+         * @return own work, forks and joins, in execution order: kind in K1, duration or child tag in K2
+         */
+        PairedList getOps() {
+            return ops;
+        }
+    }
+
+    public Node node(long tag) {
+        Node n = nodes.get(tag);
+        if (n == null) {
+            n = new Node(tag);
+            nodes.put(tag, n);
+        }
+        return n;
+    }
+
+    public void submit(Node task, long time) {
+        if (!task.submitted) {
+            task.submitted = true;
+            submitted.add(task);
+        }
+        if (task.start < 0) {
+            task.start = time;
+        }
+    }
+
+    public void exec(Node task, long worker, int taskClass, long time) {
+        if (task.start < 0) {
+            task.start = time;
+        }
+        task.executed = true;
+        task.worker = worker;
+        task.taskClass = taskClass;
+    }
+
+    public void work(Node task, long duration) {
+        if (duration > 0) {
+            task.ops.add(OP_WORK, duration);
+        }
+    }
+
+    public void fork(Node parent, Node child) {
+        if (child.parent == null && !child.submitted && child != parent) {
+            child.parent = parent;
+            parent.children.add(child);
+            parent.ops.add(OP_FORK, child.tag);
+        }
+    }
+
+    public void join(Node parent, Node child) {
+        if (child.parent == parent) {
+            parent.ops.add(OP_JOIN, child.tag);
+        }
+    }
+
+    /**
+     * @return tasks with no known parent: submitted tasks, and the tasks
+     *         forked before the trace start
+     */
+    public List<Node> getRoots() {
+        List<Node> roots = new ArrayList<>(submitted);
+        for (Node n : nodes.values()) {
+            if (n.parent == null && !n.submitted && n.executed) {
+                roots.add(n);
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Computes work and span for every task. Children are computed before
+     * their parents, without recursion: the trees can be very deep.
+     */
+    public void compute() {
+        Map<Node, Boolean> expanded = new HashMap<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        for (Node root : getRoots()) {
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Node n = stack.peek();
+                if (expanded.put(n, Boolean.TRUE) == null) {
+                    for (Node c : n.children) {
+                        stack.push(c);
+                    }
+                } else {
+                    stack.pop();
+                    evaluate(n);
+                }
+            }
+        }
+    }
+
+    private void evaluate(Node n) {
+        long[] kinds = n.ops.getAllX();
+        long[] values = n.ops.getAllY();
+
+        // the critical path so far, as the linked list of binding children, latest first
+        long cur = 0;
+        Link path = null;
+        long self = 0;
+        long work = 0;
+        Map<Long, Long> forkAt = new HashMap<>();
+        Map<Long, Link> forkPath = new HashMap<>();
+
+        for (int i = 0; i < kinds.length; i++) {
+            if (kinds[i] == OP_WORK) {
+                cur += values[i];
+                self += values[i];
+            } else if (kinds[i] == OP_FORK) {
+                forkAt.put(values[i], cur);
+                forkPath.put(values[i], path);
+            } else if (kinds[i] == OP_JOIN) {
+                Long at = forkAt.remove(values[i]);
+                if (at != null) {
+                    Node c = nodes.get(values[i]);
+                    if (at + c.span > cur) {
+                        cur = at + c.span;
+                        path = new Link(c, forkPath.get(values[i]));
+                    }
+                }
+            }
+        }
+
+        // join whatever is left at the end
+        for (Map.Entry<Long, Long> e : forkAt.entrySet()) {
+            Node c = nodes.get(e.getKey());
+            if (e.getValue() + c.span > cur) {
+                cur = e.getValue() + c.span;
+                path = new Link(c, forkPath.get(e.getKey()));
+            }
+        }
+
+        for (Node c : n.children) {
+            work += c.work;
+        }
+
+        n.self = self;
+        n.work = self + work;
+        n.span = cur;
+
+        List<Node> pc = new ArrayList<>();
+        for (Link l = path; l != null; l = l.next) {
+            pc.add(l.node);
+        }
+        Collections.reverse(pc);
+        n.pathChildren = pc;
+    }
+
+    /**
+     * @return tasks on the critical path through the given task, in execution order
+     */
+    public List<Node> getCriticalPath(Node task) {
+        List<Node> result = new ArrayList<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(task);
+        while (!stack.isEmpty()) {
+            Node n = stack.pop();
+            result.add(n);
+            for (int i = n.pathChildren.size() - 1; i >= 0; i--) {
+                stack.push(n.pathChildren.get(i));
+            }
+        }
+        return result;
+    }
+
+    private static class Link {
+        private final Node node;
+        private final Link next;
+
+        Link(Node node, Link next) {
+            this.node = node;
+            this.next = next;
+        }
+    }
+
+}
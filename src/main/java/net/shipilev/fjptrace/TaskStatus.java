@@ -32,31 +32,28 @@ import java.util.TreeSet;
 public class TaskStatus {
 
     public Map<Integer, PairedList> getSelf() {
-        SortedSet<Task> sortedSet = new TreeSet<>(new Comparator<Task>() {
-            @Override
-            public int compare(Task o1, Task o2) {
-                return Long.compare(o1.getTime(), o2.getTime());
-            }
-        });
-
-        sortedSet.addAll(tasks.values());
-
-        Map<Integer, PairedList> depthLists = new TreeMap<>();
+        return collect(false, true);
+    }
 
-        for (Task t : sortedSet) {
-            PairedList pairs = depthLists.get(t.getDepth());
-            if (pairs == null) {
-                pairs = new PairedList();
-                depthLists.put(t.getDepth(), pairs);
-            }
+    public Map<Integer, PairedList> getTotal() {
+        return collect(false, false);
+    }
 
-            pairs.add(t.getTime(), t.getSelfTime());
-        }
+    /**
+     * @return task class id -> (time, self time)
+     */
+    public Map<Integer, PairedList> getSelfByClass() {
+        return collect(true, true);
+    }
 
-        return depthLists;
+    /**
+     * @return task class id -> (time, total time)
+     */
+    public Map<Integer, PairedList> getTotalByClass() {
+        return collect(true, false);
     }
 
-    public Map<Integer, PairedList> getTotal() {
+    private Map<Integer, PairedList> collect(boolean byClass, boolean self) {
         SortedSet<Task> sortedSet = new TreeSet<>(new Comparator<Task>() {
             @Override
             public int compare(Task o1, Task o2) {
@@ -66,27 +63,29 @@ public class TaskStatus {
 
         sortedSet.addAll(tasks.values());
 
-        Map<Integer, PairedList> depthLists = new TreeMap<>();
+        Map<Integer, PairedList> lists = new TreeMap<>();
 
         for (Task t : sortedSet) {
-            PairedList pairs = depthLists.get(t.getDepth());
+            int key = byClass ? t.getTaskClass() : t.getDepth();
+            PairedList pairs = lists.get(key);
             if (pairs == null) {
                 pairs = new PairedList();
-                depthLists.put(t.getDepth(), pairs);
+                lists.put(key, pairs);
             }
 
-            pairs.add(t.getTime(), t.getTotalTime());
+            pairs.add(t.getTime(), self ? t.getSelfTime() : t.getTotalTime());
         }
 
-        return depthLists;
+        return lists;
     }
 
     private final Map<Long, Timeline<Integer>> tl;
     private final SortedSet<Long> times;
     private final SortedSet<Integer> ids;
 
-    private final Map<Integer, Task> tasks;
+    private final Map<Long, Task> tasks;
     private final Set<Task> parents;
+    private final Map<Integer, Task> externals;
     private final Set<Task> orphans;
 
     public static final int NO_ID = -1;
@@ -95,6 +94,7 @@ public class TaskStatus {
         this.times = new TreeSet<>();
         this.ids = new TreeSet<>();
         this.parents = new HashSet<>();
+        this.externals = new HashMap<>();
         this.orphans = new HashSet<>();
         this.tasks = new HashMap<>();
         this.tl = new HashMap<>();
@@ -114,9 +114,27 @@ public class TaskStatus {
         }
     }
 
-    public void parent(Task parentTask) {
+    /**
+     * @param id external task id, as registered in the worker timelines
+     */
+    public void parent(Task parentTask, int id) {
         parentTask.setDepth(0);
         parents.add(parentTask);
+        externals.put(id, parentTask);
+    }
+
+    /**
+     * @return external task with the given id, or null if not known
+     */
+    public Task getExternal(int id) {
+        return externals.get(id);
+    }
+
+    /**
+     * @return timeline of external task ids executed by the worker, or null if the worker is not known
+     */
+    public Timeline<Integer> getTimeline(long worker) {
+        return tl.get(worker);
     }
 
     public void link(Task parentTask, Task childTask) {
@@ -149,7 +167,7 @@ public class TaskStatus {
         return parents;
     }
 
-    public Task newTask(int taskTag) {
+    public Task newTask(long taskTag) {
         Task task = get(taskTag);
         if (task == null) {
             task = new Task(taskTag);
@@ -158,7 +176,7 @@ public class TaskStatus {
         return task;
     }
 
-    public Task get(int taskTag) {
+    public Task get(long taskTag) {
         return tasks.get(taskTag);
     }
 
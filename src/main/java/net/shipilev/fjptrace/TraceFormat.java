@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace;
+
+/**
+ * Trace record layout. Every record is the fixed-size chunk, written in native byte order.
+ */
+public class TraceFormat {
+
+    public static final int CHUNK_SIZE = 22;
+
+    /**
+     * Event time, long
+     */
+    public static final int TIME_OFFSET = 0;
+
+    /**
+     * Event type and task class, short; see {@link TraceMeta#encodeType(EventType, int)}
+     */
+    public static final int TYPE_OFFSET = 8;
+
+    /**
+     * Event tag, long
+     */
+    public static final int TAG_OFFSET = 10;
+
+    /**
+     * Thread id, int
+     */
+    public static final int THREAD_OFFSET = 18;
+
+}
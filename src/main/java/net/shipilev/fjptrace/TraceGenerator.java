@@ -0,0 +1,421 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic traces in the format {@link net.shipilev.fjptrace.tasks.ReadTask} reads.
+ * <p>
+ * The external submitter feeds fork/join trees to the workers in turn. Forked
+ * subtasks are either executed by the forking worker on join, or stolen by the
+ * idle workers, which park when there is no work for a while. The events are
+ * kept in per-worker blocks, and the blocks are flushed the same way the
+ * instrumented pool does it: on overflow or timeout, with TRACE_BLOCK and
+ * TRACE_UNBLOCK around the write; the rest is written at the end, with
+ * TRACE_FLUSHED, as the shutdown hook does it. The flushed blocks can be held back and
+ * written out of order. Only the blocks are held in memory, so the trace size
+ * is not limited by the heap.
+ * <p>
+ * The output is fully determined by the settings and the seed.
+ */
+public class TraceGenerator {
+
+    /**
+     * Thread id for the external submitter; workers follow.
+     */
+    public static final int SUBMITTER_ID = 1;
+
+    private static final long BASE_TIME = 1000000000L;
+
+    /**
+     * Time distributions, parametrized by the mean.
+     */
+    public enum Distribution {
+        FIXED {
+            @Override
+            long next(Random r, long mean) {
+                return mean;
+            }
+        },
+        UNIFORM {
+            @Override
+            long next(Random r, long mean) {
+                return (long) (r.nextDouble() * 2 * mean);
+            }
+        },
+        EXPONENTIAL {
+            @Override
+            long next(Random r, long mean) {
+                return (long) (-Math.log(1 - r.nextDouble()) * mean);
+            }
+        },
+        /**
+         * Heavy tail, alpha = 1.5; capped at 1000x mean.
+         */
+        PARETO {
+            @Override
+            long next(Random r, long mean) {
+                double v = mean / 3.0 / Math.pow(1 - r.nextDouble(), 1 / 1.5);
+                return (long) Math.min(v, mean * 1000.0);
+            }
+        },
+        ;
+
+        abstract long next(Random r, long mean);
+    }
+
+    private long seed = 42;
+    private int workers = 8;
+    private int fanOut = 2;
+    private int depth = 10;
+    private long taskTime = 1000;
+    private Distribution taskTimeDistribution = Distribution.EXPONENTIAL;
+    private double stealProbability = 0.1;
+    private long stealTime = 500;
+    private long parkThreshold = 10000;
+    private long unparkLatency = 5000;
+    private int blockEvents = 4096;
+    private long bufferTime = 1000000;
+    private long flushTime = 20000;
+    private int reorder = 0;
+
+    private Random random;
+    private Random reorderRandom;
+    private Worker[] pool;
+    private Worker submitter;
+    private List<byte[]> heldBlocks;
+    private OutputStream out;
+    private long written;
+    private long nextTag;
+
+    public TraceGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public TraceGenerator workers(int workers) {
+        this.workers = workers;
+        return this;
+    }
+
+    /**
+     * @param fanOut subtasks forked by every inner task
+     */
+    public TraceGenerator fanOut(int fanOut) {
+        this.fanOut = fanOut;
+        return this;
+    }
+
+    /**
+     * @param depth tree depth, root is at zero
+     */
+    public TraceGenerator depth(int depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    /**
+     * @param taskTime mean time the task spends in its own code, nanoseconds
+     */
+    public TraceGenerator taskTime(long taskTime) {
+        this.taskTime = taskTime;
+        return this;
+    }
+
+    public TraceGenerator taskTimeDistribution(Distribution distribution) {
+        this.taskTimeDistribution = distribution;
+        return this;
+    }
+
+    /**
+     * @param stealProbability probability the forked subtask is stolen, given there is an idle worker
+     */
+    public TraceGenerator stealProbability(double stealProbability) {
+        this.stealProbability = stealProbability;
+        return this;
+    }
+
+    /**
+     * @param stealTime time to take the task from the victim queue, nanoseconds
+     */
+    public TraceGenerator stealTime(long stealTime) {
+        this.stealTime = stealTime;
+        return this;
+    }
+
+    /**
+     * @param parkThreshold idle time after which the worker parks, nanoseconds
+     */
+    public TraceGenerator parkThreshold(long parkThreshold) {
+        this.parkThreshold = parkThreshold;
+        return this;
+    }
+
+    /**
+     * @param unparkLatency mean time from unpark to the worker running again, nanoseconds
+     */
+    public TraceGenerator unparkLatency(long unparkLatency) {
+        this.unparkLatency = unparkLatency;
+        return this;
+    }
+
+    /**
+     * @param blockEvents events in the per-worker block
+     */
+    public TraceGenerator blockEvents(int blockEvents) {
+        this.blockEvents = blockEvents;
+        return this;
+    }
+
+    /**
+     * @param bufferTime the block is flushed after [bufferTime, 2*bufferTime), nanoseconds
+     */
+    public TraceGenerator bufferTime(long bufferTime) {
+        this.bufferTime = bufferTime;
+        return this;
+    }
+
+    /**
+     * @param flushTime mean time to write the block out, nanoseconds
+     */
+    public TraceGenerator flushTime(long flushTime) {
+        this.flushTime = flushTime;
+        return this;
+    }
+
+    /**
+     * @param reorder number of flushed blocks held back and written in random order
+     */
+    public TraceGenerator reorder(int reorder) {
+        this.reorder = reorder;
+        return this;
+    }
+
+    /**
+     * Generates the trace.
+     *
+     * @param out    stream to write to
+     * @param events number of events to generate; trees are never split, so the actual
+     *               count can be over by a single tree, and the flushes at shutdown
+     * @return number of events written
+     */
+    public long generate(OutputStream out, long events) throws IOException {
+        this.out = out;
+        this.random = new Random(seed);
+        // separate stream, so that reordering does not change the events
+        this.reorderRandom = new Random(~seed);
+        this.heldBlocks = new ArrayList<>();
+        this.written = 0;
+        this.nextTag = 1;
+
+        submitter = new Worker(SUBMITTER_ID, 0);
+        pool = new Worker[workers];
+        for (int w = 0; w < workers; w++) {
+            pool[w] = new Worker(SUBMITTER_ID + 1 + w, 2 * w + 1);
+            pool[w].emit(EventType.REGISTERED, pool[w].queueIndex);
+        }
+
+        // budget is checked before every tree, the workers take them in turn
+        for (int next = 0; written < events; next = (next + 1) % workers) {
+            Worker w = pool[next];
+            long root = nextTag++;
+            submitter.time = Math.max(submitter.time + 1, w.time);
+            submitter.emit(EventType.SUBMIT, root);
+            submitter.time++;
+
+            w.busy = true;
+            arrive(w, submitter, submitter.time);
+            w.emit(EventType.STEAL, EventType.STEAL_SHARED);
+            w.time += stealTime;
+            execute(w, root, 0);
+            w.busy = false;
+        }
+
+        // everyone is flushed at shutdown
+        long end = submitter.time;
+        for (Worker w : pool) {
+            end = Math.max(end, w.time);
+        }
+        submitter.close(end);
+        for (Worker w : pool) {
+            w.close(end);
+        }
+        Collections.shuffle(heldBlocks, reorderRandom);
+        for (byte[] block : heldBlocks) {
+            out.write(block);
+        }
+        heldBlocks.clear();
+
+        return written;
+    }
+
+    private void execute(Worker w, long tag, int level) throws IOException {
+        w.emit(EventType.EXEC, tag);
+        w.time += taskTimeDistribution.next(random, taskTime / 2);
+
+        if (level < depth) {
+            long first = nextTag;
+            nextTag += fanOut;
+
+            long[] stolenDone = new long[fanOut];
+            Arrays.fill(stolenDone, -1);
+
+            for (int c = 0; c < fanOut; c++) {
+                w.emit(EventType.FORK, first + c);
+                w.time++;
+
+                if (random.nextDouble() < stealProbability) {
+                    Worker thief = pickIdle();
+                    if (thief != null) {
+                        thief.busy = true;
+                        arrive(thief, w, w.time);
+                        thief.emit(EventType.STEAL, w.thread);
+                        thief.time += stealTime;
+                        execute(thief, first + c, level + 1);
+                        thief.busy = false;
+                        stolenDone[c] = thief.time;
+                    }
+                }
+            }
+
+            for (int c = fanOut - 1; c >= 0; c--) {
+                w.emit(EventType.JOIN, first + c);
+                if (stolenDone[c] < 0) {
+                    execute(w, first + c, level + 1);
+                } else if (stolenDone[c] > w.time) {
+                    w.emit(EventType.WAIT, first + c);
+                    // the flush on WAIT could have taken longer
+                    w.time = Math.max(w.time, stolenDone[c] + 1);
+                    w.emit(EventType.WAITED, first + c);
+                }
+                w.emit(EventType.JOINED, first + c);
+                w.time++;
+            }
+        }
+
+        w.time += taskTimeDistribution.next(random, taskTime / 2);
+        w.emit(EventType.EXECUTED, tag);
+    }
+
+    /**
+     * Gets the worker to run the task published by signaller at the given time;
+     * parks and unparks it if it was idle for long enough.
+     */
+    private void arrive(Worker w, Worker signaller, long time) throws IOException {
+        if (w.time + parkThreshold < time) {
+            w.time += parkThreshold;
+            w.emit(EventType.PARK, w.thread);
+
+            signaller.emit(EventType.UNPARK, w.thread);
+            signaller.time++;
+
+            w.time = Math.max(w.time, time) + Distribution.EXPONENTIAL.next(random, unparkLatency);
+            w.emit(EventType.UNPARKED, w.thread);
+        } else {
+            w.time = Math.max(w.time, time);
+        }
+    }
+
+    private Worker pickIdle() {
+        int start = random.nextInt(workers);
+        for (int i = 0; i < workers; i++) {
+            Worker w = pool[(start + i) % workers];
+            if (!w.busy) {
+                return w;
+            }
+        }
+        return null;
+    }
+
+    private void write(byte[] data, int len) throws IOException {
+        if (reorder == 0) {
+            out.write(data, 0, len);
+            return;
+        }
+
+        heldBlocks.add(Arrays.copyOf(data, len));
+        if (heldBlocks.size() > reorder) {
+            byte[] block = heldBlocks.remove(reorderRandom.nextInt(heldBlocks.size()));
+            out.write(block);
+        }
+    }
+
+    private class Worker {
+        private final int thread;
+        private final int queueIndex;
+        private final ByteBuffer buf;
+        private long time;
+        private long nextWrite;
+        private boolean busy;
+
+        Worker(int thread, int queueIndex) {
+            this.thread = thread;
+            this.queueIndex = queueIndex;
+            this.time = BASE_TIME;
+            this.nextWrite = BASE_TIME + bufferTime + (long) (random.nextDouble() * bufferTime);
+            this.buf = ByteBuffer.allocate(blockEvents * TraceFormat.CHUNK_SIZE).order(ByteOrder.nativeOrder());
+        }
+
+        void emit(EventType type, long tag) throws IOException {
+            // reserve the slot for TRACE_BLOCK
+            if (nextWrite < time || buf.remaining() < TraceFormat.CHUNK_SIZE * 2) {
+                flush();
+            }
+            put(type, tag);
+        }
+
+        void flush() throws IOException {
+            if (buf.position() > 0) {
+                put(EventType.TRACE_BLOCK, thread);
+                write(buf.array(), buf.position());
+                buf.clear();
+
+                time += Distribution.EXPONENTIAL.next(random, flushTime);
+                put(EventType.TRACE_UNBLOCK, thread);
+            }
+            nextWrite = time + bufferTime + (long) (random.nextDouble() * bufferTime);
+        }
+
+        void close(long end) throws IOException {
+            time = end;
+            put(EventType.TRACE_FLUSHED, thread);
+            write(buf.array(), buf.position());
+            buf.clear();
+        }
+
+        private void put(EventType type, long tag) {
+            int pos = buf.position();
+            buf.putLong(pos + TraceFormat.TIME_OFFSET, time);
+            buf.putShort(pos + TraceFormat.TYPE_OFFSET, TraceMeta.encodeType(type, TraceMeta.NO_CLASS));
+            buf.putLong(pos + TraceFormat.TAG_OFFSET, tag);
+            buf.putInt(pos + TraceFormat.THREAD_OFFSET, thread);
+            buf.position(pos + TraceFormat.CHUNK_SIZE);
+            written++;
+        }
+    }
+
+}
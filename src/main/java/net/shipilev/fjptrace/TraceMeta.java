@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * Metadata block in the trace.
+ * <p>
+ * Block starts with the header chunk, which is laid out as:
+ * id (8 bytes), {@link EventType#META} (2 bytes), kind (4 bytes), payload length (8 bytes).
+ * The UTF-8 payload follows in as many chunks as needed, padded with zeros.
+ * Blocks are written atomically, and so should be read in the file order.
+ * <p>
+ * This class also handles the event type packing: the lower bits carry the
+ * event type, and the upper bits carry the task class id, where available.
+ */
+public class TraceMeta {
+
+    public static final int CHUNK_SIZE = TraceFormat.CHUNK_SIZE;
+
+    public static final int TYPE_BITS = 6;
+    public static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+
+    /**
+     * Classes beyond this limit are recorded as {@link #NO_CLASS}
+     */
+    public static final int MAX_CLASSES = 1 << (16 - TYPE_BITS);
+    public static final int NO_CLASS = 0;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static {
+        if (EventType.values().length > TYPE_MASK + 1) {
+            throw new IllegalStateException("Event types do not fit " + TYPE_BITS + " bits");
+        }
+    }
+
+    public enum Kind {
+        /**
+         * Task class dictionary entry, id is the class id, payload is the class name
+         */
+        CLASS,
+
+        /**
+         * Recorder property, id is unused, payload is "key=value"
+         */
+        PROPERTY,
+    }
+
+    /**
+     * Property: calibrated cost of the single event registration, nanoseconds
+     */
+    public static final String EVENT_COST = "eventCost";
+
+    /**
+     * Property: victim selection policy of the worker scans
+     */
+    public static final String SCAN_POLICY = "scanPolicy";
+
+    /**
+     * Property: empty scans the inactive worker makes before parking
+     */
+    public static final String IDLE_SCANS = "idleScans";
+
+    private final Kind kind;
+    private final long id;
+    private final String payload;
+
+    public TraceMeta(Kind kind, long id, String payload) {
+        this.kind = kind;
+        this.id = id;
+        this.payload = payload;
+    }
+
+    public static TraceMeta property(String key, String value) {
+        return new TraceMeta(Kind.PROPERTY, 0, key + "=" + value);
+    }
+
+    public String getPropertyKey() {
+        int idx = payload.indexOf('=');
+        return (idx >= 0) ? payload.substring(0, idx) : payload;
+    }
+
+    public String getPropertyValue() {
+        int idx = payload.indexOf('=');
+        return (idx >= 0) ? payload.substring(idx + 1) : "";
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public byte[] encode() {
+        byte[] data = payload.getBytes(UTF8);
+        int chunks = 1 + (data.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        ByteBuffer bb = ByteBuffer.allocate(chunks * CHUNK_SIZE).order(ByteOrder.nativeOrder());
+        bb.putLong(0, id);
+        bb.putShort(TraceFormat.TYPE_OFFSET, (short) EventType.META.ordinal());
+        bb.putInt(10, kind.ordinal());
+        bb.putLong(14, data.length);
+        bb.position(CHUNK_SIZE);
+        bb.put(data);
+        return bb.array();
+    }
+
+    /**
+     * @param header chunk just read from the trace
+     * @return true, if chunk is the header of metadata block
+     */
+    public static boolean isMeta(byte[] header) {
+        int type = ByteBuffer.wrap(header).order(ByteOrder.nativeOrder()).getShort(TraceFormat.TYPE_OFFSET);
+        return (type & TYPE_MASK) == EventType.META.ordinal();
+    }
+
+    /**
+     * Reads the rest of metadata block.
+     *
+     * @param header header chunk, already read
+     * @param is stream positioned right after the header
+     */
+    public static TraceMeta read(byte[] header, InputStream is) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(header).order(ByteOrder.nativeOrder());
+        long id = bb.getLong(0);
+        int kind = bb.getInt(10);
+        int length = (int) bb.getLong(14);
+
+        int chunks = (length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        byte[] data = new byte[chunks * CHUNK_SIZE];
+        int read = 0;
+        while (read < data.length) {
+            int r = is.read(data, read, data.length - read);
+            if (r < 0) {
+                throw new IOException("Truncated metadata block");
+            }
+            read += r;
+        }
+
+        return new TraceMeta(Kind.values()[kind], id, new String(data, 0, length, UTF8));
+    }
+
+    public static short encodeType(EventType type, int classId) {
+        return (short) (type.ordinal() | (classId << TYPE_BITS));
+    }
+
+    public static EventType decodeType(int type) {
+        return EventType.values()[type & TYPE_MASK];
+    }
+
+    public static int decodeClass(int type) {
+        return (type & 0xFFFF) >>> TYPE_BITS;
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Time each worker spent in every {@link WorkerState}, integrated over the
+ * worker state intervals exactly; both in total and per time bucket.
+ */
+public class Utilization {
+
+    private static final WorkerState[] STATES = WorkerState.values();
+
+    private final SortedMap<Long, long[]> workers = new TreeMap<>();
+    private final SortedMap<Long, long[]> externals = new TreeMap<>();
+    private final long[] total = new long[STATES.length];
+    private final long[][] buckets;
+    private final long from;
+    private final long to;
+    private final long bucket;
+
+    /**
+     * @param from   low bound, inclusive
+     * @param to     high bound, exclusive
+     * @param bucket time bucket for the time series
+     */
+    public Utilization(long from, long to, long bucket) {
+        this.from = from;
+        this.to = to;
+        this.bucket = Math.max(1, bucket);
+        this.buckets = new long[(int) ((to - from + this.bucket - 1) / this.bucket)][STATES.length];
+    }
+
+    /**
+     * Accounts the pool worker being in the given state over [start, end), in time order for every worker.
+     */
+    public void add(long worker, long start, long end, WorkerState state) {
+        start = Math.max(start, from);
+        end = Math.min(end, to);
+        if (start >= end) {
+            return;
+        }
+
+        int s = state.ordinal();
+        get(workers, worker)[s] += end - start;
+        total[s] += end - start;
+
+        // split over the buckets
+        long time = start;
+        while (time < end) {
+            int b = (int) ((time - from) / bucket);
+            long bucketEnd = Math.min(end, from + (b + 1) * bucket);
+            buckets[b][s] += bucketEnd - time;
+            time = bucketEnd;
+        }
+    }
+
+    /**
+     * Accounts the external thread, e.g. submitting or joining the tasks, being in the given state
+     * over [start, end). External threads are not in the pool totals and the time series.
+     */
+    public void addExternal(long thread, long start, long end, WorkerState state) {
+        start = Math.max(start, from);
+        end = Math.min(end, to);
+        if (start >= end) {
+            return;
+        }
+        get(externals, thread)[state.ordinal()] += end - start;
+    }
+
+    private static long[] get(Map<Long, long[]> map, long thread) {
+        long[] w = map.get(thread);
+        if (w == null) {
+            w = new long[STATES.length];
+            map.put(thread, w);
+        }
+        return w;
+    }
+
+    public long getTime(long worker, WorkerState state) {
+        long[] w = workers.get(worker);
+        return (w != null) ? w[state.ordinal()] : 0;
+    }
+
+    public long getTime(WorkerState state) {
+        return total[state.ordinal()];
+    }
+
+    public int getBucketCount() {
+        return buckets.length;
+    }
+
+    /**
+     * @return share of the worker time in the bucket spent in the state, 0..1
+     */
+    public double getShare(int bucket, WorkerState state) {
+        long start = from + bucket * this.bucket;
+        long length = Math.min(to, start + this.bucket) - start;
+        return (double) buckets[bucket][state.ordinal()] / Math.max(1, length) / Math.max(1, workers.size());
+    }
+
+    /**
+     * @return share of the known worker time spent in the state, percent
+     */
+    public double getShare(WorkerState state) {
+        return share(total, state);
+    }
+
+    private static double share(long[] times, WorkerState state) {
+        long known = 0;
+        for (WorkerState s : STATES) {
+            if (s != WorkerState.UNKNOWN) {
+                known += times[s.ordinal()];
+            }
+        }
+        return (state == WorkerState.UNKNOWN) ? 0 : 100.0 * times[state.ordinal()] / Math.max(1, known);
+    }
+
+    public void printSummary(PrintWriter pw) {
+        pw.println("Worker utilization:");
+        pw.println("  time in every worker state, integrated over the state intervals exactly;");
+        pw.println("  shares are of the known time, unknown time is beyond the last trace flush");
+        pw.println();
+
+        printHeader(pw, "worker");
+        for (Map.Entry<Long, long[]> e : workers.entrySet()) {
+            print(pw, String.valueOf(e.getKey()), e.getValue());
+        }
+        print(pw, "total", total);
+
+        if (!externals.isEmpty()) {
+            pw.println();
+            pw.println("  External threads, submitting or joining the tasks (not in the total):");
+            printHeader(pw, "thread");
+            for (Map.Entry<Long, long[]> e : externals.entrySet()) {
+                print(pw, String.valueOf(e.getKey()), e.getValue());
+            }
+        }
+    }
+
+    private static void printHeader(PrintWriter pw, String name) {
+        pw.printf("  %20s", name);
+        for (WorkerState s : STATES) {
+            pw.printf(" %12s", s.label() + ", ms");
+        }
+        for (WorkerState s : STATES) {
+            if (s != WorkerState.UNKNOWN) {
+                pw.printf(" %10s", s.label() + ", %");
+            }
+        }
+        pw.println();
+    }
+
+    private static void print(PrintWriter pw, String name, long[] times) {
+        pw.printf("  %20s", name);
+        for (WorkerState s : STATES) {
+            pw.printf(" %12.3f", times[s.ordinal()] / 1e6);
+        }
+        for (WorkerState s : STATES) {
+            if (s != WorkerState.UNKNOWN) {
+                pw.printf(" %10.2f", share(times, s));
+            }
+        }
+        pw.println();
+    }
+
+    /**
+     * Prints the time series: for every bucket, the share of the worker time in every state.
+     */
+    public void printCSV(PrintWriter pw) {
+        pw.print("time_us,workers");
+        for (WorkerState s : STATES) {
+            pw.print(",");
+            pw.print(s.label());
+        }
+        pw.println();
+
+        for (int b = 0; b < buckets.length; b++) {
+            pw.printf("%.3f,%d", (from + b * bucket) / 1e3, workers.size());
+            for (WorkerState s : STATES) {
+                pw.printf(",%.4f", getShare(b, s));
+            }
+            pw.println();
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace;
+
+import net.shipilev.fjptrace.util.PairedList;
+import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Wake-up latencies: the time from UNPARK on the signalling thread to
+ * UNPARKED on the woken one.
+ */
+public class WakeupStatus implements SummarySection {
+
+    private final SortedMap<Long, WorkerWakeups> workers = new TreeMap<>();
+    private final WorkerWakeups total = new WorkerWakeups();
+    private final PairedList latencies = new PairedList();
+
+    private WorkerWakeups worker(long worker) {
+        WorkerWakeups w = workers.get(worker);
+        if (w == null) {
+            w = new WorkerWakeups();
+            workers.put(worker, w);
+        }
+        return w;
+    }
+
+    public void registerWakeup(long time, long worker, long latency) {
+        worker(worker).latencies.addValue(latency);
+        total.latencies.addValue(latency);
+        latencies.add(time, latency);
+    }
+
+    /**
+     * Woken up without the signal: timed out, spurious wake-up, or the thread start.
+     */
+    public void registerUnsolicited(long worker) {
+        worker(worker).unsolicited++;
+        total.unsolicited++;
+    }
+
+    /**
+     * Woken up, and parked again without executing anything.
+     */
+    public void registerWasted(long worker) {
+        worker(worker).wasted++;
+        total.wasted++;
+    }
+
+    /**
+     * @return pairs of (time, latency) for every wake-up
+     */
+    public PairedList getLatencies() {
+        return latencies;
+    }
+
+    public long getWakeups() {
+        return total.latencies.getN();
+    }
+
+    public long getWasted() {
+        return total.wasted;
+    }
+
+    public double getPercentile(double p) {
+        return (total.latencies.getN() > 0) ? total.latencies.getPercentile(p) : 0;
+    }
+
+    @Override
+    public void printSummary(PrintWriter pw) {
+        pw.println();
+        pw.println("Wake-ups:");
+        pw.println("  latency is from UNPARK on the signalling thread to UNPARKED on the woken one,");
+        pw.println("  wasted wake-ups are the ones parking again without executing anything,");
+        pw.println("  unsolicited ones are timeouts, spurious wake-ups, and thread starts");
+        pw.println();
+        pw.printf("  %20s %10s %10s %12s %12s %12s %12s %12s\n", "worker", "wake-ups", "wasted", "unsolicited", "p50, us", "p90, us", "p99, us", "max, us");
+        for (Map.Entry<Long, WorkerWakeups> e : workers.entrySet()) {
+            print(pw, String.valueOf(e.getKey()), e.getValue());
+        }
+        print(pw, "total", total);
+    }
+
+    private static void print(PrintWriter pw, String name, WorkerWakeups w) {
+        DescriptiveStatistics s = w.latencies;
+        if (s.getN() > 0) {
+            pw.printf("  %20s %10d %10d %12d %12.2f %12.2f %12.2f %12.2f\n", name, s.getN(), w.wasted, w.unsolicited,
+                    s.getPercentile(50) / 1000, s.getPercentile(90) / 1000, s.getPercentile(99) / 1000, s.getMax() / 1000);
+        } else {
+            pw.printf("  %20s %10d %10d %12d %12s %12s %12s %12s\n", name, 0, w.wasted, w.unsolicited, "-", "-", "-", "-");
+        }
+    }
+
+    private static class WorkerWakeups {
+        private final DescriptiveStatistics latencies = new DescriptiveStatistics();
+        private long wasted;
+        private long unsolicited;
+    }
+
+}
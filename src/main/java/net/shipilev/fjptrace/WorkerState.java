@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace;
+
+/**
+ * Worker state, as shown on the worker state graph
+ */
+public enum WorkerState {
+    /**
+     * Executing the task
+     */
+    EXEC("exec"),
+
+    /**
+     * Joining the task, executing another task
+     */
+    JOIN("join"),
+
+    /**
+     * Not executing any task, but not parked: scanning, stealing, and the rest of the pool infrastructure
+     */
+    INFRA("infra"),
+
+    /**
+     * Parked, and no work
+     */
+    PARKED("parked"),
+
+    /**
+     * Executing the task, but parked on waiting
+     */
+    WAIT("wait"),
+
+    /**
+     * The state is unknown
+     */
+    UNKNOWN("unknown"),
+
+    ;
+
+    private final String label;
+
+    WorkerState(String label) {
+        this.label = label;
+    }
+
+    public String label() {
+        return label;
+    }
+
+}
@@ -28,14 +28,14 @@ import java.util.TreeSet;
 public class WorkerStatus {
 
     private final Map<Long, WorkerStatusHolder> currentStatus = new HashMap<>();
+    private final Map<Long, Long> lastTime = new HashMap<>();
     private final Map<Long,Timeline<WorkerStatusHolder>> timeline = new HashMap<>();
 
     private final Set<Long> workers = new HashSet<>();
     private final SortedSet<Long> times = new TreeSet<>();
 
     public void add(long time, long worker, WorkerStatusBL status) {
-        ensureWorker(worker);
-        times.add(time);
+        touch(time, worker);
 
         WorkerStatusHolder globalStatus = currentStatus.get(worker);
         globalStatus = globalStatus.merge(status);
@@ -44,8 +44,7 @@ public class WorkerStatus {
     }
 
     public void add(long time, long worker, WorkerStatusPK status) {
-        ensureWorker(worker);
-        times.add(time);
+        touch(time, worker);
 
         WorkerStatusHolder globalStatus = currentStatus.get(worker);
         globalStatus = globalStatus.merge(status);
@@ -54,8 +53,7 @@ public class WorkerStatus {
     }
 
     public void add(long time, long worker, WorkerStatusJN status) {
-        ensureWorker(worker);
-        times.add(time);
+        touch(time, worker);
 
         WorkerStatusHolder globalStatus = currentStatus.get(worker);
         globalStatus = globalStatus.merge(status);
@@ -63,6 +61,31 @@ public class WorkerStatus {
         timeline.get(worker).add(time, globalStatus);
     }
 
+    public void add(long time, long worker, WorkerStatusHolder status) {
+        touch(time, worker);
+
+        currentStatus.put(worker, status);
+        timeline.get(worker).add(time, status);
+    }
+
+    /**
+     * Extends the current worker status up to the given time, the status
+     * beyond it is unknown. The time is clamped to the last worker event,
+     * so the final tick never goes before the statuses it extends.
+     */
+    public void seal(long time, long worker) {
+        ensureWorker(worker);
+        long sealTime = Math.max(time, lastTime.get(worker));
+        touch(sealTime, worker);
+        timeline.get(worker).add(sealTime, currentStatus.get(worker));
+    }
+
+    private void touch(long time, long worker) {
+        ensureWorker(worker);
+        times.add(time);
+        lastTime.put(worker, Math.max(time, lastTime.get(worker)));
+    }
+
     public void markInvalid(long time, long worker) {
         timeline.get(worker).removeBefore(time);
     }
@@ -73,6 +96,7 @@ public class WorkerStatus {
             tl.add(-1, WorkerStatusHolder.DEFAULT);
             timeline.put(worker, tl);
             currentStatus.put(worker, WorkerStatusHolder.DEFAULT);
+            lastTime.put(worker, -1L);
         }
     }
 
@@ -80,6 +104,13 @@ public class WorkerStatus {
         return times;
     }
 
+    /**
+     * @return worker status timeline, or null if the worker is not known
+     */
+    public Timeline<WorkerStatusHolder> getTimeline(long worker) {
+        return timeline.get(worker);
+    }
+
     public WorkerStatusHolder getStatus(long worker, long time) {
         Timeline<WorkerStatusHolder> tl = timeline.get(worker);
         if (tl == null) {
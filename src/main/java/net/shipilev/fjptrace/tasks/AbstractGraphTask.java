@@ -44,7 +44,9 @@ public abstract class AbstractGraphTask extends LoggedRecursiveAction {
 
     private final String outFile;
 
-    private final Events events;
+    private final Collection<Long> workers;
+    private final long start;
+    private final long end;
     protected final int HEIGHT;
     protected final int WIDTH;
     protected final int H_HEIGHT;
@@ -57,9 +59,19 @@ public abstract class AbstractGraphTask extends LoggedRecursiveAction {
     protected final long toTime;
 
     public AbstractGraphTask(Options opts, Events events, String name, String outFile) {
+        this(opts, events.getWorkers(), events.getStart(), events.getEnd(), name, outFile);
+    }
+
+    /**
+     * Renders the given workers over the given time range, which need not
+     * come from the trace, e.g. for the simulated runs.
+     */
+    public AbstractGraphTask(Options opts, Collection<Long> workers, long start, long end, String name, String outFile) {
         super(name);
         this.outFile = outFile;
-        this.events = events;
+        this.workers = workers;
+        this.start = start;
+        this.end = end;
         this.HEIGHT = opts.getHeight();
         this.WIDTH = opts.getWidth();
         this.fromTime = opts.getFromTime();
@@ -78,8 +90,8 @@ public abstract class AbstractGraphTask extends LoggedRecursiveAction {
 
     @Override
     public void doWork() throws Exception {
-        final int W_STEP = W_WIDTH / events.getWorkers().size();
-        final int D_STEP = D_WIDTH / events.getWorkers().size();
+        final int W_STEP = W_WIDTH / workers.size();
+        final int D_STEP = D_WIDTH / workers.size();
 
         /*
           Compute pivot points
@@ -99,8 +111,8 @@ public abstract class AbstractGraphTask extends LoggedRecursiveAction {
         g.fillRect(0, 0, WIDTH, HEIGHT);
 
 
-        long from = Math.max(fromTime, events.getStart());
-        long to = Math.min(toTime, events.getEnd());
+        long from = Math.max(fromTime, start);
+        long to = Math.min(toTime, end);
 
         Map<Long, Multiset<Color>> workerColors = new TreeMap<>();
 
@@ -127,7 +139,7 @@ public abstract class AbstractGraphTask extends LoggedRecursiveAction {
 
             long lastTick = loTick;
             for (long tick : slice) {
-                for (long w : events.getWorkers()) {
+                for (long w : workers) {
                     Color color = getColor(tick, w);
 
                     Multiset<Color> ms = workerColors.get(w);
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Anomalies;
+import net.shipilev.fjptrace.Event;
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.Options;
+import net.shipilev.fjptrace.QueueStatus;
+import net.shipilev.fjptrace.Utilization;
+import net.shipilev.fjptrace.WakeupStatus;
+import net.shipilev.fjptrace.WorkerState;
+import net.shipilev.fjptrace.util.PairedList;
+import net.shipilev.fjptrace.util.Timeline;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class AnomalyTask extends LoggedRecursiveTask<Anomalies> {
+
+    private static final double SIGMA = Integer.getInteger("anomalies.sigma", 4);
+
+    /**
+     * Deviations smaller than these are the noise, however steady the series is
+     */
+    private static final double IDLE_FLOOR = 0.05;
+    private static final double QUEUE_FLOOR = 1;
+    private static final double WAKEUP_FLOOR = TimeUnit.MICROSECONDS.toNanos(10);
+
+    private final Events events;
+    private final Utilization utilization;
+    private final QueueStatus queueStatus;
+    private final WakeupStatus wakeupStatus;
+    private final String prefix;
+    private final long fromTime;
+    private final long toTime;
+    private final long bucket;
+    private final int limit;
+
+    public AnomalyTask(Options opts, Events events, Utilization utilization, QueueStatus queueStatus, WakeupStatus wakeupStatus) {
+        super("Detecting anomalies");
+        this.events = events;
+        this.utilization = utilization;
+        this.queueStatus = queueStatus;
+        this.wakeupStatus = wakeupStatus;
+        this.prefix = opts.getTargetPrefix();
+        this.fromTime = opts.getFromTime();
+        this.toTime = opts.getToTime();
+        this.bucket = opts.getUtilizationBucket();
+        this.limit = opts.getAnomalies();
+    }
+
+    @Override
+    public Anomalies doWork() throws Exception {
+        // same bounds as utilization, so the buckets match
+        long from = Math.max(fromTime, events.getStart());
+        long to = Math.min(toTime, events.getEnd());
+
+        Anomalies anomalies = new Anomalies(from, to, bucket, SIGMA, limit);
+        int count = anomalies.getBucketCount();
+
+        if (utilization != null && utilization.getBucketCount() == count) {
+            anomalies.add(Anomalies.Kind.IDLE_DIP, idle(count), IDLE_FLOOR);
+        }
+        if (queueStatus != null) {
+            anomalies.add(Anomalies.Kind.QUEUE_BACKLOG, queues(anomalies, from, to), QUEUE_FLOOR);
+        }
+        if (wakeupStatus != null) {
+            anomalies.add(Anomalies.Kind.WAKEUP_SPIKE, wakeups(anomalies, from, to), WAKEUP_FLOOR);
+        }
+        // storm is at least a tenth of the single worker time blocked
+        anomalies.add(Anomalies.Kind.TRACE_BLOCK_STORM, traceBlocks(anomalies, from, to), bucket / 10.0);
+
+        anomalies.detect();
+
+        PrintWriter pw = new PrintWriter(prefix + "-anomalies.txt");
+        anomalies.printSummary(pw);
+        pw.close();
+
+        getPw().printf("Anomalies: %d anomalous windows found\n", anomalies.getFound());
+
+        return anomalies;
+    }
+
+    /**
+     * Joiners mostly execute other tasks while waiting, so they are busy too.
+     * Pool is expected to be idle before the first task, and after the last one.
+     *
+     * @return share of the worker time executing or joining the tasks, per bucket
+     */
+    private double[] idle(int count) {
+        double[] values = new double[count];
+
+        int first = count;
+        int last = -1;
+        for (int b = 0; b < count; b++) {
+            values[b] = utilization.getShare(b, WorkerState.EXEC) + utilization.getShare(b, WorkerState.JOIN);
+            if (values[b] > 0) {
+                first = Math.min(first, b);
+                last = b;
+            }
+        }
+
+        for (int b = 0; b < count; b++) {
+            if (b < first || b > last) {
+                values[b] = Double.NaN;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return time-averaged number of the tasks in all the queues, per bucket
+     */
+    private double[] queues(Anomalies anomalies, long from, long to) {
+        double[] values = new double[anomalies.getBucketCount()];
+        for (long w : events.getWorkers()) {
+            Timeline<Long> tl = queueStatus.getTimeline(w);
+            if (tl == null) {
+                continue;
+            }
+            for (Timeline.Interval<Long> i : tl.intervals(from, to)) {
+                Long depth = i.getStatus();
+                if (depth == null || depth <= 0) {
+                    continue;
+                }
+                long time = i.getFrom();
+                while (time < i.getTo()) {
+                    int b = (int) ((time - from) / bucket);
+                    long end = Math.min(i.getTo(), anomalies.getBucketStart(b + 1));
+                    values[b] += depth * (end - time);
+                    time = end;
+                }
+            }
+        }
+
+        for (int b = 0; b < values.length; b++) {
+            long start = anomalies.getBucketStart(b);
+            values[b] /= Math.max(1, Math.min(to, start + bucket) - start);
+        }
+        return values;
+    }
+
+    /**
+     * Buckets without the wake-ups are not typical, nor anomalous.
+     *
+     * @return maximum wake-up latency, per bucket
+     */
+    private double[] wakeups(Anomalies anomalies, long from, long to) {
+        double[] values = new double[anomalies.getBucketCount()];
+        Arrays.fill(values, Double.NaN);
+
+        for (PairedList.Pair p : wakeupStatus.getLatencies()) {
+            long time = p.getK1();
+            if (time < from || time >= to) {
+                continue;
+            }
+            int b = (int) ((time - from) / bucket);
+            double latency = p.getK2();
+            values[b] = Double.isNaN(values[b]) ? latency : Math.max(values[b], latency);
+        }
+        return values;
+    }
+
+    /**
+     * @return worker time blocked on the trace buffer flushes, per bucket
+     */
+    private double[] traceBlocks(Anomalies anomalies, long from, long to) {
+        double[] values = new double[anomalies.getBucketCount()];
+
+        Map<Long, Long> blocks = new HashMap<>();
+        for (Event e : events) {
+            switch (e.eventType) {
+                case TRACE_BLOCK:
+                    blocks.put(e.workerId, e.time);
+                    break;
+                case TRACE_UNBLOCK: {
+                    Long since = blocks.remove(e.workerId);
+                    if (since == null) {
+                        break;
+                    }
+                    long time = Math.max(from, since);
+                    long end = Math.min(to, e.time);
+                    while (time < end) {
+                        int b = (int) ((time - from) / bucket);
+                        long bucketEnd = Math.min(end, anomalies.getBucketStart(b + 1));
+                        values[b] += bucketEnd - time;
+                        time = bucketEnd;
+                    }
+                    break;
+                }
+            }
+        }
+        return values;
+    }
+
+}
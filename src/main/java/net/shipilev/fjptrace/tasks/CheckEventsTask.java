@@ -33,10 +33,10 @@ public class CheckEventsTask extends LoggedRecursiveAction {
 
     @Override
     public void doWork() throws Exception {
-        Map<Integer, Event> submittedTasks = new HashMap<>();
-        Map<Integer, Event> invokedTasks = new HashMap<>();
-        Map<Integer, Event> forkedTasks = new HashMap<>();
-        Map<Integer, Event> executingTasks = new HashMap<>();
+        Map<Long, Event> submittedTasks = new HashMap<>();
+        Map<Long, Event> invokedTasks = new HashMap<>();
+        Map<Long, Event> forkedTasks = new HashMap<>();
+        Map<Long, Event> executingTasks = new HashMap<>();
 
         for (Event e : events) {
 
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.CompleterStatus;
+import net.shipilev.fjptrace.Event;
+import net.shipilev.fjptrace.Events;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+public class CompleterStatusTask extends LoggedRecursiveTask<CompleterStatus> {
+
+    private static final Integer LIMIT = Integer.getInteger("chains.limit", 20);
+
+    private final Events events;
+
+    public CompleterStatusTask(Events events) {
+        super("Computing completer chains");
+        this.events = events;
+    }
+
+    @Override
+    public CompleterStatus doWork() throws Exception {
+        CompleterStatus status = new CompleterStatus(LIMIT);
+
+        // chains in progress; onCompletion can start the nested ones
+        Map<Long, Deque<Link>> stacks = new HashMap<>();
+
+        // first pending count decrement of the completer, not yet completed
+        Map<Long, Event> arrivals = new HashMap<>();
+
+        for (Event e : events) {
+            Deque<Link> stack = stacks.get(e.workerId);
+            if (stack == null) {
+                stack = new ArrayDeque<>();
+                stacks.put(e.workerId, stack);
+            }
+
+            Link top = stack.peek();
+
+            switch (e.eventType) {
+                case COMPLETING: {
+                    if (top != null && top.completed >= 0) {
+                        // tryComplete loop goes on to the completer
+                        status.registerLink(e.time - top.completed);
+                        top.chain.length++;
+                        top.chain.last = e.tag;
+                        top.started = e.time;
+                        top.completed = -1;
+                    } else {
+                        CompleterStatus.Chain chain = new CompleterStatus.Chain(e.workerId, e.time, e.tag);
+                        chain.length = 1;
+                        chain.last = e.tag;
+                        Link link = new Link(chain);
+                        link.started = e.time;
+                        stack.push(link);
+                    }
+
+                    Event first = arrivals.remove(e.tag);
+                    if (first != null) {
+                        status.registerSiblingWait(e.time - first.time, first.workerId != e.workerId);
+                    }
+                    break;
+                }
+
+                case COMPLETED:
+                    if (top != null && top.completed < 0) {
+                        status.registerCompletion(e.time - top.started);
+                        top.completed = e.time;
+                    }
+                    break;
+
+                case PROPAGATED:
+                    if (!arrivals.containsKey(e.tag)) {
+                        arrivals.put(e.tag, e);
+                    }
+                    if (top != null && top.completed >= 0) {
+                        // stopped at the completer with pending count left
+                        stack.pop();
+                        top.chain.end = e.time;
+                        status.registerChain(top.chain);
+                    }
+                    break;
+
+                case TRACE_BLOCK:
+                case TRACE_UNBLOCK:
+                case TRACE_FLUSHED:
+                    // recorder writes can happen anywhere
+                    break;
+
+                default:
+                    // anything else ends the chain: it had reached the root
+                    while (top != null && top.completed >= 0) {
+                        stack.pop();
+                        top.chain.end = top.completed;
+                        top.chain.root = true;
+                        status.registerChain(top.chain);
+                        top = stack.peek();
+                    }
+            }
+        }
+
+        for (Deque<Link> stack : stacks.values()) {
+            for (Link link : stack) {
+                if (link.completed >= 0) {
+                    link.chain.end = link.completed;
+                    link.chain.root = true;
+                    status.registerChain(link.chain);
+                }
+            }
+        }
+
+        getPw().printf("Completer chains: %d chains, %d reached root, %.2f mean length\n",
+                status.getChains(), status.getRootChains(), status.getMeanLength());
+
+        return status;
+    }
+
+    private static class Link {
+        private final CompleterStatus.Chain chain;
+        private long started;
+        private long completed = -1;
+
+        private Link(CompleterStatus.Chain chain) {
+            this.chain = chain;
+        }
+    }
+
+}
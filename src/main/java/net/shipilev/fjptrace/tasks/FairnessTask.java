@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Event;
+import net.shipilev.fjptrace.EventType;
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.Fairness;
+import net.shipilev.fjptrace.Options;
+import net.shipilev.fjptrace.Task;
+import net.shipilev.fjptrace.TaskStatus;
+import net.shipilev.fjptrace.util.Timeline;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+public class FairnessTask extends LoggedRecursiveTask<Fairness> {
+
+    private static final long WINDOW = Integer.getInteger("fairness.window", 1000) * 1000L;
+    private static final double STARVED = Integer.getInteger("fairness.starved", 50) / 100.0;
+    private static final Integer LIMIT = Integer.getInteger("fairness.limit", 20);
+
+    private final Events events;
+    private final TaskStatus taskStatus;
+    private final String prefix;
+    private final long fromTime;
+    private final long toTime;
+
+    public FairnessTask(Options opts, Events events, TaskStatus taskStatus) {
+        super("Computing fairness");
+        this.events = events;
+        this.taskStatus = taskStatus;
+        this.prefix = opts.getTargetPrefix();
+        this.fromTime = opts.getFromTime();
+        this.toTime = opts.getToTime();
+    }
+
+    @Override
+    public Fairness doWork() throws Exception {
+        long from = Math.max(fromTime, events.getStart());
+        long to = Math.min(toTime, events.getEnd());
+
+        Fairness fairness = new Fairness(from, to, WINDOW, STARVED, LIMIT);
+
+        Map<Long, Long> submits = new HashMap<>();
+        for (Event e : events) {
+            if (e.eventType == EventType.SUBMIT) {
+                submits.put(e.tag, e.time);
+            }
+        }
+
+        for (int id : taskStatus.getIds()) {
+            Task t = taskStatus.getExternal(id);
+            if (t != null) {
+                Long time = submits.get(t.getTag());
+                if (time != null) {
+                    fairness.submit(id, t.getTag(), time);
+                }
+            }
+        }
+
+        // the worker is busy with the external task while executing or joining its subtasks
+        for (long w : events.getWorkers()) {
+            Timeline<Integer> tl = taskStatus.getTimeline(w);
+            if (tl == null) {
+                continue;
+            }
+            for (Timeline.Interval<Integer> i : tl.intervals(from, to)) {
+                Integer id = i.getStatus();
+                if (id != null && id != TaskStatus.NO_ID) {
+                    fairness.add(w, id, i.getFrom(), i.getTo());
+                }
+            }
+        }
+
+        fairness.compute();
+
+        PrintWriter pw = new PrintWriter(prefix + "-fairness.txt");
+        fairness.printSummary(pw);
+        pw.close();
+
+        PrintWriter csv = new PrintWriter(prefix + "-fairness.csv");
+        fairness.printCSV(csv);
+        csv.close();
+
+        getPw().printf("Fairness: Jain's index mean = %.3f, %d of %d external tasks starved, %d switches\n",
+                fairness.getMeanIndex(), fairness.getStarved(), fairness.getExternals().size(), fairness.getSwitches());
+
+        return fairness;
+    }
+}
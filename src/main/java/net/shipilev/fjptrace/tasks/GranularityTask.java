@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Event;
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.GranularityStatus;
+import net.shipilev.fjptrace.JoinStatus;
+import net.shipilev.fjptrace.Task;
+import net.shipilev.fjptrace.TaskStatus;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+public class GranularityTask extends LoggedRecursiveTask<GranularityStatus> {
+
+    private static final double OVERHEAD_RATIO = Integer.getInteger("granularity.overheadPct", 10) / 100.0;
+    private static final double MIN_SLACK = Integer.getInteger("granularity.slack", 4);
+
+    private final Events events;
+    private final TaskStatus taskStatus;
+    private final JoinStatus joinStatus;
+
+    public GranularityTask(Events events, TaskStatus taskStatus, JoinStatus joinStatus) {
+        super("Computing task granularity");
+        this.events = events;
+        this.taskStatus = taskStatus;
+        this.joinStatus = joinStatus;
+    }
+
+    @Override
+    public GranularityStatus doWork() throws Exception {
+        GranularityStatus status = new GranularityStatus(OVERHEAD_RATIO, MIN_SLACK, events.getPoolWorkers().size());
+
+        Map<Long, Long> overheads = new HashMap<>();
+
+        // joiner blocked on the task; external joins wait for the entire computation, and are not the overhead
+        for (JoinStatus.Join j : joinStatus.getJoins()) {
+            if (j.depth >= 0) {
+                add(overheads, j.joined, j.getBlocked());
+            }
+        }
+
+        // steal latency
+        Map<Long, Event> forks = new HashMap<>();
+        for (Event e : events) {
+            switch (e.eventType) {
+                case FORK:
+                    forks.put(e.tag, e);
+                    break;
+                case EXEC: {
+                    Event fork = forks.remove(e.tag);
+                    if (fork != null && fork.workerId != e.workerId) {
+                        add(overheads, e.tag, e.time - fork.time);
+                    }
+                    break;
+                }
+            }
+        }
+
+        // subtree work: self time of the task and all its subtasks, whether it waits for them or not
+        Map<Task, Long> work = new HashMap<>();
+        Deque<Task> stack = new ArrayDeque<>();
+        for (Task root : taskStatus.getParents()) {
+            status.registerExternal();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Task t = stack.peek();
+                if (!work.containsKey(t)) {
+                    work.put(t, -1L);
+                    for (Task c : t.getChildren()) {
+                        stack.push(c);
+                    }
+                    continue;
+                }
+                stack.pop();
+
+                long w = t.getSelfTime();
+                for (Task c : t.getChildren()) {
+                    w += work.get(c);
+                }
+                work.put(t, w);
+
+                Long overhead = overheads.get(t.getTag());
+                status.register(events.getClassName(t.getTaskClass()), t.getDepth(),
+                        t.getSelfTime(), w, (overhead != null) ? overhead : 0,
+                        t.getChildren().isEmpty());
+            }
+            work.clear();
+        }
+
+        for (String c : status.getClasses()) {
+            getPw().println("Granularity: " + c + ": " + status.getVerdict(c));
+        }
+
+        return status;
+    }
+
+    private static void add(Map<Long, Long> map, long key, long value) {
+        Long v = map.get(key);
+        map.put(key, (v == null) ? value : v + value);
+    }
+
+}
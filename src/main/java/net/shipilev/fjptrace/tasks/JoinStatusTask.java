@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Event;
+import net.shipilev.fjptrace.EventType;
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.JoinStatus;
+import net.shipilev.fjptrace.Task;
+import net.shipilev.fjptrace.TaskStatus;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+public class JoinStatusTask extends LoggedRecursiveTask<JoinStatus> {
+
+    private static final Integer LIMIT = Integer.getInteger("joins.limit", 20);
+
+    private final Events events;
+    private final TaskStatus taskStatus;
+
+    public JoinStatusTask(Events events, TaskStatus taskStatus) {
+        super("Computing join breakdown");
+        this.events = events;
+        this.taskStatus = taskStatus;
+    }
+
+    @Override
+    public JoinStatus doWork() throws Exception {
+        JoinStatus status = new JoinStatus(LIMIT);
+
+        Map<Long, WorkerJoins> workers = new HashMap<>();
+
+        for (Event e : events) {
+            WorkerJoins w = workers.get(e.workerId);
+            if (w == null) {
+                w = new WorkerJoins();
+                workers.put(e.workerId, w);
+            }
+
+            // only the events of the join itself count, not the ones of the tasks executed while helping
+            Frame f = w.frames.peek();
+            boolean own = (f != null) && (f.level == w.execs.size());
+
+            switch (e.eventType) {
+                case JOIN: {
+                    Long joiner = w.execs.peek();
+                    Task task = (joiner != null) ? taskStatus.get(joiner) : null;
+                    int depth = (task != null) ? task.getDepth() : -1;
+                    String name = (task != null) ? events.getClassName(task.getTaskClass()) : "<external>";
+                    JoinStatus.Join join = new JoinStatus.Join(e.time, e.workerId, (joiner != null) ? joiner : 0, e.tag, depth, name);
+                    w.frames.push(new Frame(join, w.execs.size()));
+                    break;
+                }
+
+                case JOINED:
+                    if (own) {
+                        w.frames.pop();
+                        f.join.total = e.time - f.join.time;
+                        status.register(f.join);
+                    }
+                    break;
+
+                case EXEC:
+                    if (own) {
+                        f.mark = e.time;
+                    }
+                    w.execs.push(e.tag);
+                    break;
+
+                case EXECUTED:
+                    if (!w.execs.isEmpty()) {
+                        long tag = w.execs.pop();
+                        f = w.frames.peek();
+                        if (f != null && f.level == w.execs.size() && f.mark >= 0) {
+                            if (tag == f.join.joined) {
+                                f.join.inline += e.time - f.mark;
+                            } else {
+                                f.join.helping += e.time - f.mark;
+                            }
+                            f.mark = -1;
+                        }
+                    }
+                    break;
+
+                case WAIT:
+                case COMPENSATE:
+                    if (own) {
+                        f.mark = e.time;
+                    }
+                    break;
+
+                case WAITED:
+                    if (own && f.mark >= 0) {
+                        f.join.parked += e.time - f.mark;
+                        f.mark = -1;
+                    }
+                    break;
+
+                case COMPENSATED:
+                    if (own && f.mark >= 0) {
+                        f.join.compensating += e.time - f.mark;
+                        f.mark = -1;
+                        if (e.tag == EventType.COMPENSATE_SPARE) {
+                            f.join.spares++;
+                        }
+                    }
+                    break;
+            }
+        }
+
+        JoinStatus.Breakdown total = status.getTotal();
+        getPw().printf("Joins: %d joins, %.2f ms total, %.2f ms blocked, %.2f ms parked\n",
+                total.getCount(), total.getTotal() / 1e6, total.getBlocked() / 1e6, total.getParked() / 1e6);
+
+        return status;
+    }
+
+    private static class WorkerJoins {
+        private final Deque<Long> execs = new ArrayDeque<>();
+        private final Deque<Frame> frames = new ArrayDeque<>();
+    }
+
+    private static class Frame {
+        private final JoinStatus.Join join;
+        private final int level;
+        private long mark;
+
+        private Frame(JoinStatus.Join join, int level) {
+            this.join = join;
+            this.level = level;
+            this.mark = -1;
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Event;
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.MigrationStatus;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class MigrationStatusTask extends LoggedRecursiveTask<MigrationStatus> {
+
+    private final Events events;
+
+    public MigrationStatusTask(Events events) {
+        super("Computing task migration");
+        this.events = events;
+    }
+
+    @Override
+    public MigrationStatus doWork() throws Exception {
+        MigrationStatus status = new MigrationStatus();
+
+        // forked and not yet executed tasks
+        Map<Long, Event> forks = new HashMap<>();
+        Set<Long> submitted = new HashSet<>();
+
+        // depths of the tasks, and the depths of tasks being executed by each thread
+        Map<Long, Integer> depths = new HashMap<>();
+        Map<Long, Deque<Integer>> stacks = new HashMap<>();
+
+        for (Event e : events) {
+            Deque<Integer> stack = stacks.get(e.workerId);
+            if (stack == null) {
+                stack = new ArrayDeque<>();
+                stacks.put(e.workerId, stack);
+            }
+
+            switch (e.eventType) {
+                case SUBMIT:
+                    submitted.add(e.tag);
+                    depths.put(e.tag, 0);
+                    break;
+
+                case FORK:
+                    forks.put(e.tag, e);
+                    depths.put(e.tag, stack.isEmpty() ? 0 : stack.peek() + 1);
+                    break;
+
+                case INVOKE:
+                    // executed in place, never gets into the queue
+                    depths.put(e.tag, stack.isEmpty() ? 0 : stack.peek() + 1);
+                    break;
+
+                case EXEC: {
+                    Integer d = depths.remove(e.tag);
+                    int depth = (d == null) ? 0 : d;
+                    stack.push(depth);
+
+                    Event fork = forks.remove(e.tag);
+                    if (fork != null) {
+                        if (fork.workerId == e.workerId) {
+                            status.registerLocal(depth, e.time - fork.time);
+                        } else {
+                            status.registerStolen(e.time, e.workerId, fork.workerId, depth, e.time - fork.time);
+                        }
+                    } else if (submitted.remove(e.tag)) {
+                        status.registerExternal();
+                    } else if (d == null) {
+                        status.registerUnmatched();
+                    }
+                    break;
+                }
+
+                case EXECUTED:
+                    if (!stack.isEmpty()) {
+                        stack.pop();
+                    }
+                    break;
+            }
+        }
+
+        getPw().printf("Migration: %d local, %d stolen (%.2f%%)\n",
+                status.getLocal(), status.getStolen(),
+                100.0 * status.getStolen() / Math.max(1, status.getLocal() + status.getStolen()));
+
+        return status;
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.Options;
+import net.shipilev.fjptrace.TaskGraph;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class PrintCriticalPathTask extends LoggedRecursiveAction {
+
+    private static final Integer PATHS_LIMIT = Integer.getInteger("criticalPath.limit", 10);
+
+    private final Events events;
+    private final TaskGraph graph;
+    private final String fileName;
+
+    public PrintCriticalPathTask(Options opts, Events events, TaskGraph graph) {
+        super("Print critical path");
+        this.events = events;
+        this.graph = graph;
+        this.fileName = opts.getTargetPrefix() + "-criticalPath.txt";
+    }
+
+    @Override
+    public void doWork() throws Exception {
+        List<TaskGraph.Node> roots = graph.getRoots();
+        Collections.sort(roots, new Comparator<TaskGraph.Node>() {
+            @Override
+            public int compare(TaskGraph.Node o1, TaskGraph.Node o2) {
+                return Long.compare(o2.getSpan(), o1.getSpan());
+            }
+        });
+
+        long work = 0;
+        long span = 0;
+        long maxSpan = 0;
+        Set<Long> workers = new HashSet<>();
+        for (TaskGraph.Node root : roots) {
+            work += root.getWork();
+            span += root.getSpan();
+            maxSpan = Math.max(maxSpan, root.getSpan());
+            collectWorkers(root, workers);
+        }
+        double parallelism = (span > 0) ? 1.0 * work / span : 1.0;
+
+        PrintWriter pw = new PrintWriter(fileName);
+
+        pw.println("Work/span analysis:");
+        pw.println("  work is the time to execute all the tasks on a single worker,");
+        pw.println("  span is the time to execute them on infinitely many workers (the critical path length)");
+        pw.println();
+        pw.printf("  external tasks = %d\n", roots.size());
+        pw.printf("  workers executing tasks = %d\n", workers.size());
+        pw.printf("  total work (ms) = %.2f\n", work / 1_000_000.0);
+        pw.printf("  total span (ms) = %.2f, max = %.2f\n", span / 1_000_000.0, maxSpan / 1_000_000.0);
+        pw.printf("  parallelism (work/span) = %.2f\n", parallelism);
+        pw.println();
+        if (parallelism < workers.size()) {
+            pw.printf("  Parallelism is lower than the number of workers: the computation itself can not keep more\n");
+            pw.printf("  than %.1f workers busy, and adding cores would not make the external tasks complete faster.\n", parallelism);
+        } else {
+            pw.printf("  Parallelism is enough to keep all %d workers busy; adding cores may help.\n", workers.size());
+        }
+        pw.println();
+
+        pw.println("Per external task, longest span first:");
+        pw.printf("  %20s %-40s %12s %12s %12s %10s\n", "tag", "class", "work, ms", "span, ms", "parallelism", "tasks");
+        for (TaskGraph.Node root : roots) {
+            pw.printf("  %20d %-40s %12.2f %12.2f %12.2f %10d\n",
+                    root.getTag(), events.getClassName(root.getTaskClass()),
+                    root.getWork() / 1_000_000.0, root.getSpan() / 1_000_000.0, root.getParallelism(),
+                    countTasks(root));
+        }
+        pw.println();
+
+        int paths = 0;
+        for (TaskGraph.Node root : roots) {
+            if (paths++ >= PATHS_LIMIT) {
+                pw.println("Impractical to print more than " + PATHS_LIMIT + " critical paths, limiting output");
+                break;
+            }
+            pw.printf("Critical path of external task %d, span = %.2f ms:\n", root.getTag(), root.getSpan() / 1_000_000.0);
+            pw.printf("  %20s %-40s %12s %12s %12s\n", "tag", "class", "worker", "self, us", "span, us");
+            for (TaskGraph.Node n : graph.getCriticalPath(root)) {
+                pw.printf("  %20d %-40s %12d %12.2f %12.2f\n",
+                        n.getTag(), events.getClassName(n.getTaskClass()), n.getWorker(),
+                        n.getSelf() / 1_000.0, n.getSpan() / 1_000.0);
+            }
+            pw.println();
+        }
+
+        pw.close();
+    }
+
+    private static void collectWorkers(TaskGraph.Node root, Set<Long> workers) {
+        List<TaskGraph.Node> queue = new ArrayList<>();
+        queue.add(root);
+        for (int i = 0; i < queue.size(); i++) {
+            TaskGraph.Node n = queue.get(i);
+            if (n.getSelf() > 0) {
+                workers.add(n.getWorker());
+            }
+            queue.addAll(n.getChildren());
+        }
+    }
+
+    private static int countTasks(TaskGraph.Node root) {
+        List<TaskGraph.Node> queue = new ArrayList<>();
+        queue.add(root);
+        for (int i = 0; i < queue.size(); i++) {
+            queue.addAll(queue.get(i).getChildren());
+        }
+        return queue.size();
+    }
+
+}
@@ -19,8 +19,10 @@ package net.shipilev.fjptrace.tasks;
 import net.shipilev.fjptrace.Event;
 import net.shipilev.fjptrace.Events;
 import net.shipilev.fjptrace.Options;
+import net.shipilev.fjptrace.SummarySection;
 import net.shipilev.fjptrace.Task;
 import net.shipilev.fjptrace.TaskStatus;
+import net.shipilev.fjptrace.TraceMeta;
 import net.shipilev.fjptrace.util.Multiset;
 import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
 import org.apache.commons.math.stat.descriptive.SummaryStatistics;
@@ -29,6 +31,8 @@ import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -43,12 +47,16 @@ public class PrintSummaryTask extends LoggedRecursiveAction {
     private final TaskStatus subgraphs;
     private final String fileName;
     private final Events events;
+    private final boolean showRaw;
+    private final SummarySection[] sections;
 
-    public PrintSummaryTask(Options opts, Events events, TaskStatus subgraphs) {
+    public PrintSummaryTask(Options opts, Events events, TaskStatus subgraphs, SummarySection... sections) {
         super("Print summary");
         this.events = events;
         this.fileName = opts.getTargetPrefix() + "-summary.txt";
         this.subgraphs = subgraphs;
+        this.showRaw = opts.isShowRawTimes();
+        this.sections = sections;
     }
 
     @Override
@@ -59,6 +67,7 @@ public class PrintSummaryTask extends LoggedRecursiveAction {
 
         LayerStatistics global = new LayerStatistics();
         SortedMap<Integer, LayerStatistics> layerStats = new TreeMap<>();
+        Map<Integer, LayerStatistics> classStats = new HashMap<>();
 
         for (Task t : subgraphs.getParents()) {
 
@@ -91,13 +100,20 @@ public class PrintSummaryTask extends LoggedRecursiveAction {
                         cur.addAll(children);
                     }
                     layerStat.arities.addValue(children.size());
-                    layerStat.selfTime.addValue(c.getSelfTime() / 1_000_000.0);
-                    layerStat.totalTime.addValue(c.getTotalTime() / 1_000_000.0);
+                    layerStat.addTimes(c);
 
-                    global.selfTime.addValue(c.getSelfTime() / 1_000_000.0);
-                    global.totalTime.addValue(c.getTotalTime() / 1_000_000.0);
+                    global.addTimes(c);
                     global.arities.addValue(children.size());
 
+                    LayerStatistics classStat = classStats.get(c.getTaskClass());
+                    if (classStat == null) {
+                        classStat = new LayerStatistics();
+                        classStats.put(c.getTaskClass(), classStat);
+                    }
+                    classStat.arities.addValue(children.size());
+                    classStat.depths.addValue(depth);
+                    classStat.addTimes(c);
+
                     layerWorkers.add(c.getWorker());
                 }
 
@@ -117,6 +133,13 @@ public class PrintSummaryTask extends LoggedRecursiveAction {
         pw.printf("  total external tasks = %.0f\n", layerStats.get(0).counts.getSum());
         pw.printf("  total subtasks = %.0f\n", global.counts.getSum());
         pw.printf("  total threads = %.0f\n", global.threads.getMean());
+        if (events.getEventCost() > 0) {
+            pw.printf("  recorder cost = %.1f ns per event, subtracted from task times\n", events.getEventCost());
+        }
+        if (events.getProperty(TraceMeta.SCAN_POLICY) != null) {
+            pw.printf("  scan policy = %s, parking after %s empty scans\n",
+                    events.getProperty(TraceMeta.SCAN_POLICY), events.getProperty(TraceMeta.IDLE_SCANS));
+        }
 
         pw.println();
 
@@ -132,22 +155,62 @@ public class PrintSummaryTask extends LoggedRecursiveAction {
             LayerStatistics s = layerStats.get(depth);
             pw.printf("  Depth = %d: \n", depth);
             pw.printf("    tasks:           sum = %10.0f, min = %5.2f, avg = %5.2f, max = %5.2f\n", s.counts.getSum(), s.counts.getMin(), s.counts.getMean(), s.counts.getMax());
-            pw.printf("    self time (ms):  sum = %10.0f, min = %5.2f, avg = %5.2f, max = %5.2f\n", s.selfTime.getSum(), s.selfTime.getMin(), s.selfTime.getMean(), s.selfTime.getMax());
-            pw.printf("    total time (ms): sum = %10.0f, min = %5.2f, avg = %5.2f, max = %5.2f\n", s.totalTime.getSum(), s.totalTime.getMin(), s.totalTime.getMean(), s.totalTime.getMax());
+            printTimes(pw, s);
             pw.printf("    arity:                             min = %5.2f, avg = %5.2f, max = %5.2f\n", s.arities.getMin(), s.arities.getMean(), s.arities.getMax());
             pw.printf("    threads:                           min = %5.2f, avg = %5.2f, max = %5.2f\n", s.threads.getMin(), s.threads.getMean(), s.threads.getMax());
         }
 
+        if (!events.getClassNames().isEmpty()) {
+            summarizeClasses(pw, classStats);
+        }
+
         summarizeEvents(pw, events);
 
+        for (SummarySection section : sections) {
+            section.printSummary(pw);
+        }
+
         pw.flush();
         pw.close();
     }
 
+    private void summarizeClasses(PrintWriter pw, final Map<Integer, LayerStatistics> classStats) {
+        // heaviest classes go first
+        List<Integer> classes = new ArrayList<>(classStats.keySet());
+        Collections.sort(classes, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(classStats.get(o2).selfTime.getSum(), classStats.get(o1).selfTime.getSum());
+            }
+        });
+
+        pw.println();
+        pw.println("Per task class statistics:");
+        for (Integer taskClass : classes) {
+            LayerStatistics s = classStats.get(taskClass);
+            pw.printf("  %s: \n", events.getClassName(taskClass));
+            pw.printf("    tasks:           sum = %10d\n", s.selfTime.getN());
+            printTimes(pw, s);
+            pw.printf("    arity:                             min = %5.2f, avg = %5.2f, max = %5.2f\n", s.arities.getMin(), s.arities.getMean(), s.arities.getMax());
+            pw.printf("    depth:                             min = %5.2f, avg = %5.2f, max = %5.2f\n", s.depths.getMin(), s.depths.getMean(), s.depths.getMax());
+        }
+    }
+
+    private void printTimes(PrintWriter pw, LayerStatistics s) {
+        pw.printf("    self time (ms):  sum = %10.0f, min = %5.2f, avg = %5.2f, max = %5.2f\n", s.selfTime.getSum(), s.selfTime.getMin(), s.selfTime.getMean(), s.selfTime.getMax());
+        if (showRaw) {
+            pw.printf("      raw:           sum = %10.0f, min = %5.2f, avg = %5.2f, max = %5.2f\n", s.rawSelfTime.getSum(), s.rawSelfTime.getMin(), s.rawSelfTime.getMean(), s.rawSelfTime.getMax());
+        }
+        pw.printf("    total time (ms): sum = %10.0f, min = %5.2f, avg = %5.2f, max = %5.2f\n", s.totalTime.getSum(), s.totalTime.getMin(), s.totalTime.getMean(), s.totalTime.getMax());
+        if (showRaw) {
+            pw.printf("      raw:           sum = %10.0f, min = %5.2f, avg = %5.2f, max = %5.2f\n", s.rawTotalTime.getSum(), s.rawTotalTime.getMin(), s.rawTotalTime.getMean(), s.rawTotalTime.getMax());
+        }
+    }
+
     private void summarizeEvents(PrintWriter pw, Events events) {
         SummaryStatistics completeTimes = new SummaryStatistics();
         SummaryStatistics execTimes = new SummaryStatistics();
-        Map<Integer, Long> times = new HashMap<>();
+        Map<Long, Long> times = new HashMap<>();
 
         for (Event e : events) {
             switch (e.eventType) {
@@ -187,6 +250,15 @@ public class PrintSummaryTask extends LoggedRecursiveAction {
         final DescriptiveStatistics threads = new DescriptiveStatistics();
         final DescriptiveStatistics selfTime = new DescriptiveStatistics();
         final DescriptiveStatistics totalTime = new DescriptiveStatistics();
+        final DescriptiveStatistics rawSelfTime = new DescriptiveStatistics();
+        final DescriptiveStatistics rawTotalTime = new DescriptiveStatistics();
+
+        void addTimes(Task t) {
+            selfTime.addValue(t.getSelfTime() / 1_000_000.0);
+            totalTime.addValue(t.getTotalTime() / 1_000_000.0);
+            rawSelfTime.addValue(t.getRawSelfTime() / 1_000_000.0);
+            rawTotalTime.addValue(t.getRawTotalTime() / 1_000_000.0);
+        }
 
     }
 
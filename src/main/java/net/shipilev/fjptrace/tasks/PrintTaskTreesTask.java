@@ -21,7 +21,6 @@ import net.shipilev.fjptrace.EventType;
 import net.shipilev.fjptrace.Events;
 import net.shipilev.fjptrace.Options;
 import net.shipilev.fjptrace.Task;
-import net.shipilev.fjptrace.TaskStatus;
 import net.shipilev.fjptrace.util.Multimap;
 
 import javax.imageio.ImageIO;
@@ -46,7 +45,6 @@ public class PrintTaskTreesTask extends LoggedRecursiveAction {
     private static final Color EXECUTED_COLOR = new Color(200, 200, 200);
     private static final Color COMPLETING_COLOR = new Color(200, 200, 0);
 
-    private final TaskStatus subgraphs;
     private final String fileNamePng;
     private final Events exEvents;
     private final long fromTime;
@@ -62,7 +60,7 @@ public class PrintTaskTreesTask extends LoggedRecursiveAction {
     // transient
     private Map<Long,Integer> workerId;
 
-    public PrintTaskTreesTask(Options opts, Events events, TaskStatus subgraphs) {
+    public PrintTaskTreesTask(Options opts, Events events) {
         super("Print task subtrees");
         this.fileNamePng = opts.getTargetPrefix() + "-subtrees.png";
         this.exEvents = events;
@@ -70,7 +68,6 @@ public class PrintTaskTreesTask extends LoggedRecursiveAction {
         this.toTime = Math.min(events.getEnd(), opts.getToTime());
         this.width = opts.getWidth();
         this.height = opts.getHeight();
-        this.subgraphs = subgraphs;
     }
 
     @Override
@@ -79,11 +76,10 @@ public class PrintTaskTreesTask extends LoggedRecursiveAction {
 
         List<Event> allEvents = new ArrayList<>();
 
-        // only record the events for the interesting region
+        // only take the events for the interesting region
         for (Event e : exEvents) {
             if (e.time < fromTime) continue;
             if (e.time > toTime) break;
-            subgraphs.recordEvent(e);
             allEvents.add(e);
         }
 
@@ -117,7 +113,7 @@ public class PrintTaskTreesTask extends LoggedRecursiveAction {
     private void render(Collection<Event> allEvents) throws IOException {
 
         // split tasks
-        Multimap<Integer, Event> tasks = new Multimap<>();
+        Multimap<Long, Event> tasks = new Multimap<>();
         for (Event e : allEvents) {
             tasks.put(e.tag, e);
         }
@@ -145,7 +141,7 @@ public class PrintTaskTreesTask extends LoggedRecursiveAction {
         // render graph: edges
         // Inter-thread nodes:
         //   UNPARK -> UNPARKED
-        Map<Integer, Event> unparkRequests = new HashMap<>();
+        Map<Long, Event> unparkRequests = new HashMap<>();
         for (Event e : allEvents) {
             if (e.eventType == EventType.UNPARK) {
                 unparkRequests.put(e.tag, e);
@@ -211,8 +207,8 @@ public class PrintTaskTreesTask extends LoggedRecursiveAction {
         ImageIO.write(image, "png", new File(fileNamePng));
     }
 
-    public void renderEdges(Multimap<Integer, Event> tasks, Graphics g, EventType type1, EventType type2, boolean sameThread, Color color) {
-        for (Integer id : tasks.keySet()) {
+    public void renderEdges(Multimap<Long, Event> tasks, Graphics g, EventType type1, EventType type2, boolean sameThread, Color color) {
+        for (Long id : tasks.keySet()) {
             List<Event> list = tasks.get(id);
 
             Multimap<EventType, Event> byType = new Multimap<>();
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Options;
+import net.shipilev.fjptrace.SampleType;
+import net.shipilev.fjptrace.Samples;
+import sun.misc.Unsafe;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+
+public class ReadSamplesTask extends LoggedRecursiveTask<Samples> {
+
+    private static final Unsafe U;
+    private static final long BBASE;
+
+    static {
+        // steal Unsafe
+        try {
+            Field unsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            U = (Unsafe) unsafe.get(null);
+            BBASE = U.arrayBaseOffset(byte[].class);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+
+    }
+
+    private final String filename;
+    private final long baseTime;
+
+    /**
+     * Reads samples, and aligns them to their own first sample.
+     */
+    public ReadSamplesTask(Options opts) {
+        this(opts, Long.MIN_VALUE);
+    }
+
+    /**
+     * Reads samples, and aligns them to the given time base, i.e. the one of trace events.
+     */
+    public ReadSamplesTask(Options opts, long baseTime) {
+        super("Reading samples file");
+        this.filename = opts.getSamplesSource();
+        this.baseTime = baseTime;
+    }
+
+    @Override
+    public Samples doWork() throws Exception {
+        byte[] buffer = new byte[22];
+
+        long base = baseTime;
+        if (base == Long.MIN_VALUE) {
+            base = Long.MAX_VALUE;
+            InputStream is = new BufferedInputStream(new FileInputStream(filename));
+            while (is.read(buffer) == 22) {
+                base = Math.min(base, U.getLong(buffer, BBASE + 0));
+            }
+            is.close();
+        }
+
+        reportProgress(0.50);
+
+        Samples samples = new Samples();
+        int count = 0;
+
+        InputStream is = new BufferedInputStream(new FileInputStream(filename));
+        while (is.read(buffer) == 22) {
+            long time = U.getLong(buffer, BBASE + 0);
+            int typeOrd = U.getShort(buffer, BBASE + 8);
+            int index = U.getInt(buffer, BBASE + 10);
+            long value = U.getLong(buffer, BBASE + 14);
+
+            samples.add(time - base, SampleType.values()[typeOrd], index, value);
+            count++;
+        }
+        is.close();
+
+        getPw().println(count + " samples read, " + samples.getPools().size() + " pools sampled");
+
+        return samples;
+    }
+}
@@ -20,13 +20,17 @@ import net.shipilev.fjptrace.Event;
 import net.shipilev.fjptrace.EventType;
 import net.shipilev.fjptrace.Events;
 import net.shipilev.fjptrace.Options;
+import net.shipilev.fjptrace.TraceFormat;
+import net.shipilev.fjptrace.TraceMeta;
 import sun.misc.Unsafe;
 
 import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 public class ReadTask extends LoggedRecursiveTask<Events> {
 
@@ -60,7 +64,7 @@ public class ReadTask extends LoggedRecursiveTask<Events> {
     @Override
     public Events doWork() throws Exception {
         int[] relocations;
-        byte[] buffer = new byte[22];
+        byte[] buffer = new byte[TraceFormat.CHUNK_SIZE];
 
         long minTime = Long.MAX_VALUE;
         long maxTime = Long.MIN_VALUE;
@@ -75,10 +79,17 @@ public class ReadTask extends LoggedRecursiveTask<Events> {
          */
         InputStream is = new BufferedInputStream(new FileInputStream(filename));
 
+        List<TraceMeta> metas = new ArrayList<>();
+
         int size = 1;
         long[] times = new long[size];
-        while (is.read(buffer) == 22) {
-            long time = U.getLong(buffer, BBASE + 0);
+        while (is.read(buffer) == TraceFormat.CHUNK_SIZE) {
+            if (TraceMeta.isMeta(buffer)) {
+                metas.add(TraceMeta.read(buffer, is));
+                continue;
+            }
+
+            long time = U.getLong(buffer, BBASE + TraceFormat.TIME_OFFSET);
 
             if (count >= size) {
                 size = Math.max((int) (size * 1.2), size + 1);
@@ -134,24 +145,44 @@ public class ReadTask extends LoggedRecursiveTask<Events> {
         reportProgress(0.50);
 
         Events events = new Events(Math.min(limit, count));
+        for (TraceMeta meta : metas) {
+            switch (meta.getKind()) {
+                case CLASS:
+                    events.addClassName((int) meta.getId(), meta.getPayload());
+                    break;
+                case PROPERTY:
+                    events.setProperty(meta.getPropertyKey(), meta.getPropertyValue());
+                    break;
+            }
+        }
+
         InputStream is2 = new BufferedInputStream(new FileInputStream(filename));
 
         int aCount = 0;
-        while (is2.read(buffer) == 22) {
+        while (is2.read(buffer) == TraceFormat.CHUNK_SIZE) {
+            if (TraceMeta.isMeta(buffer)) {
+                // already read at the first pass
+                TraceMeta.read(buffer, is2);
+                continue;
+            }
 
             // new event index
             int index = relocations[aCount];
 
-            long time = U.getLong(buffer, BBASE + 0);
-            int eventOrd = U.getShort(buffer, BBASE + 8);
-            int taskHC = U.getInt(buffer, BBASE + 10);
-            long threadID = U.getLong(buffer, BBASE + 14);
+            long time = U.getLong(buffer, BBASE + TraceFormat.TIME_OFFSET);
+            int type = U.getShort(buffer, BBASE + TraceFormat.TYPE_OFFSET);
+            long tag = U.getLong(buffer, BBASE + TraceFormat.TAG_OFFSET);
+            long threadID = U.getInt(buffer, BBASE + TraceFormat.THREAD_OFFSET);
 
-            // count workers anyway
+            // count workers and their watermarks anyway
             events.addworker(threadID);
+            EventType eventType = TraceMeta.decodeType(type);
+            if (eventType == EventType.TRACE_BLOCK || eventType == EventType.TRACE_FLUSHED) {
+                events.addWatermark(threadID, time);
+            }
 
             if (0 <= index - offset && index - offset < limit) {
-                Event event = new Event(time, EventType.values()[eventOrd], threadID, taskHC);
+                Event event = new Event(time, eventType, threadID, tag, TraceMeta.decodeClass(type));
                 events.set(index - offset, event);
             }
 
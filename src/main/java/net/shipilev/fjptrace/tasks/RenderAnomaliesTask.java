@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Anomalies;
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.Options;
+import net.shipilev.fjptrace.QueueStatus;
+import net.shipilev.fjptrace.WorkerStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Renders the worker state, queue and subtree graphs zoomed in on every
+ * anomalous window, with the window length of context on both sides.
+ */
+public class RenderAnomaliesTask extends RecursiveAction {
+
+    private final Options opts;
+    private final Events events;
+    private final Anomalies anomalies;
+    private final WorkerStatus workerStatus;
+    private final QueueStatus queueStatus;
+
+    public RenderAnomaliesTask(Options opts, Events events, Anomalies anomalies, WorkerStatus workerStatus, QueueStatus queueStatus) {
+        this.opts = opts;
+        this.events = events;
+        this.anomalies = anomalies;
+        this.workerStatus = workerStatus;
+        this.queueStatus = queueStatus;
+    }
+
+    @Override
+    protected void compute() {
+        List<ForkJoinTask<?>> renders = new ArrayList<>();
+
+        int index = 1;
+        for (Anomalies.Window w : anomalies.getWindows()) {
+            long pad = w.getTo() - w.getFrom();
+            Options zoom = opts.window(w.getFrom() - pad, w.getTo() + pad, opts.getTargetPrefix() + "-anomaly" + index++);
+
+            if (workerStatus != null) {
+                renders.add(new RenderWorkerStateTask(zoom, events, workerStatus));
+            }
+            if (queueStatus != null) {
+                renders.add(new RenderWorkerQueueTask(zoom, events, queueStatus));
+            }
+            renders.add(new PrintTaskTreesTask(zoom, events));
+        }
+
+        ForkJoinTask.invokeAll(renders);
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Options;
+import net.shipilev.fjptrace.SampleType;
+import net.shipilev.fjptrace.Samples;
+import net.shipilev.fjptrace.util.PairedList;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartUtilities;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static net.shipilev.fjptrace.tasks.RenderTaskExecTimeTask.nanosToSeconds;
+
+public class RenderPoolSamplesTask extends LoggedRecursiveAction {
+
+    /**
+     * Do not clutter the legend with too many queues
+     */
+    private static final int MAX_QUEUES_IN_LEGEND = 16;
+
+    private final Samples samples;
+    private final int width;
+    private final int height;
+    private final String prefix;
+    private final long fromTime;
+    private final long toTime;
+
+    public RenderPoolSamplesTask(Options opts, Samples samples) {
+        super("Pool samples render");
+        this.samples = samples;
+        this.width = opts.getWidth();
+        this.height = opts.getHeight();
+        this.prefix = opts.getTargetPrefix();
+        this.fromTime = opts.getFromTime();
+        this.toTime = opts.getToTime();
+    }
+
+    @Override
+    void doWork() throws Exception {
+        for (int pool : samples.getPools()) {
+            render(pool);
+        }
+    }
+
+    private void render(int pool) throws IOException {
+        long start = Math.max(fromTime, samples.getStart());
+        long end = Math.min(toTime, samples.getEnd());
+
+        XYSeriesCollection workers = new XYSeriesCollection();
+        workers.addSeries(toSeries("parallelism", samples.get(pool, SampleType.PARALLELISM), start, end));
+        workers.addSeries(toSeries("total", samples.get(pool, SampleType.TOTAL), start, end));
+        workers.addSeries(toSeries("active", samples.get(pool, SampleType.ACTIVE), start, end));
+        workers.addSeries(toSeries("waiting", samples.get(pool, SampleType.WAITING), start, end));
+
+        Map<Integer, PairedList> queueSamples = samples.getQueues(pool);
+        XYSeriesCollection queues = new XYSeriesCollection();
+        for (Map.Entry<Integer, PairedList> e : queueSamples.entrySet()) {
+            int index = e.getKey();
+            String label = ((index & 1) == 0 ? "submission " : "worker ") + index;
+            queues.addSeries(toSeries(label, e.getValue(), start, end));
+        }
+
+        JFreeChart utilization = chart("Workers", workers, true, start, end);
+        JFreeChart occupancy = chart("Tasks in queue", queues, queueSamples.size() <= MAX_QUEUES_IN_LEGEND, start, end);
+
+        BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = bi.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        utilization.draw(graphics, new Rectangle(0, 0, width, height / 2));
+        occupancy.draw(graphics, new Rectangle(0, height / 2, width, height - height / 2));
+
+        FileOutputStream out = new FileOutputStream(prefix + "-pool" + pool + "-samples.png");
+        ChartUtilities.writeBufferedImageAsPNG(out, bi);
+        out.close();
+    }
+
+    private JFreeChart chart(String yLabel, XYSeriesCollection dataset, boolean legend, long start, long end) {
+        final JFreeChart chart = ChartFactory.createXYLineChart(
+                "",
+                "Run time, sec", yLabel,
+                dataset,
+                PlotOrientation.VERTICAL,
+                legend, false, false
+        );
+
+        chart.setBackgroundPaint(Color.white);
+
+        final XYPlot plot = chart.getXYPlot();
+        plot.setBackgroundPaint(Color.black);
+        plot.setDomainGridlinePaint(Color.LIGHT_GRAY);
+        plot.setRangeGridlinePaint(Color.LIGHT_GRAY);
+        plot.setOutlinePaint(Color.LIGHT_GRAY);
+
+        final ValueAxis domainAxis = plot.getDomainAxis();
+        domainAxis.setLowerMargin(0.0);
+        domainAxis.setUpperMargin(0.0);
+        domainAxis.setLowerBound(nanosToSeconds(start));
+        domainAxis.setUpperBound(nanosToSeconds(end));
+
+        return chart;
+    }
+
+    private XYSeries toSeries(String label, PairedList data, long start, long end) {
+        XYSeries series = new XYSeries(label);
+        for (PairedList.Pair p : data) {
+            long time = p.getK1();
+            if (start <= time && time <= end) {
+                series.add(nanosToSeconds(time), p.getK2(), false);
+            }
+        }
+        return series;
+    }
+
+}
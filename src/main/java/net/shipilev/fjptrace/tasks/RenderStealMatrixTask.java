@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.Options;
+import net.shipilev.fjptrace.StealStatus;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+public class RenderStealMatrixTask extends LoggedRecursiveAction {
+
+    private static final int PAD_LEFT = 150;
+    private static final int PAD_TOP = 200;
+    private static final int PAD = 50;
+
+    private final Events events;
+    private final StealStatus status;
+    private final String fileName;
+    private final String label;
+    private final int width;
+    private final int height;
+
+    public RenderStealMatrixTask(Options opts, Events events, StealStatus status) {
+        this(opts, events, status, opts.getTargetPrefix() + "-stealMatrix.png", "Steals (rows: thief, columns: victim queue owner)");
+    }
+
+    public RenderStealMatrixTask(Options opts, Events events, StealStatus status, String fileName, String label) {
+        super("Steal matrix render \"" + label + "\"");
+        this.events = events;
+        this.status = status;
+        this.fileName = fileName;
+        this.label = label;
+        this.width = opts.getWidth();
+        this.height = opts.getHeight();
+    }
+
+    @Override
+    void doWork() throws Exception {
+        SortedSet<Long> all = new TreeSet<>(events.getWorkers());
+        all.addAll(status.getThieves());
+        all.addAll(status.getVictims());
+        List<Long> workers = new ArrayList<>(all);
+
+        int size = Math.min(width - PAD_LEFT - PAD, height - PAD_TOP - PAD);
+        int step = Math.max(1, size / Math.max(1, workers.size()));
+
+        long maxCount = Math.max(1, status.getMaxCount());
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        Graphics2D g = image.createGraphics();
+        g.setBackground(Color.WHITE);
+
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+
+        FontMetrics fm = g.getFontMetrics();
+        boolean printCounts = step > fm.stringWidth(String.valueOf(maxCount)) + 4;
+
+        for (int r = 0; r < workers.size(); r++) {
+            for (int c = 0; c < workers.size(); c++) {
+                long count = status.getCount(workers.get(r), workers.get(c));
+                int x = PAD_LEFT + c * step;
+                int y = PAD_TOP + r * step;
+
+                g.setColor(heatColor(count, maxCount));
+                g.fillRect(x, y, step, step);
+
+                if (printCounts && count > 0) {
+                    g.setColor(count * 2 > maxCount ? Color.BLACK : Color.WHITE);
+                    g.drawString(String.valueOf(count), x + 2, y + step / 2 + fm.getAscent() / 2);
+                }
+            }
+        }
+
+        g.setColor(Color.BLACK);
+        for (int i = 0; i < workers.size(); i++) {
+            String name = workerName(workers.get(i));
+            g.drawString(name, PAD_LEFT - fm.stringWidth(name) - 5, PAD_TOP + i * step + step / 2 + fm.getAscent() / 2);
+            if (step > fm.getHeight()) {
+                g.drawString(name, PAD_LEFT + i * step + 2, PAD_TOP - 5 - (i % 2) * fm.getHeight());
+            }
+        }
+
+        // legend
+        final int LEG_STEP = 20;
+        g.drawString(label, PAD_LEFT, LEG_STEP);
+        g.drawString(String.format("Total steals: %d, failed attempts: %d", status.getTotalSteals(), status.getTotalFailures()), PAD_LEFT, LEG_STEP * 2);
+
+        int legWidth = Math.min(size, 500);
+        for (int x = 0; x < legWidth; x++) {
+            g.setColor(heatColor(x * maxCount / legWidth, maxCount));
+            g.drawLine(PAD_LEFT + x, LEG_STEP * 3, PAD_LEFT + x, LEG_STEP * 4);
+        }
+        g.setColor(Color.BLACK);
+        g.drawString("0", PAD_LEFT, LEG_STEP * 5);
+        g.drawString(String.valueOf(maxCount), PAD_LEFT + legWidth - fm.stringWidth(String.valueOf(maxCount)), LEG_STEP * 5);
+
+        ImageIO.write(image, "png", new File(fileName));
+    }
+
+    private static Color heatColor(long count, long maxCount) {
+        if (count == 0) {
+            return Color.BLACK;
+        }
+        float f = Math.min(1.0f, 1.0f * count / maxCount);
+        return new Color(1.0f, f, 0.0f);
+    }
+
+    private static String workerName(long worker) {
+        if (worker == WorkerQueueStatusTask.SUBMISSION_WORKER) {
+            return "submissions";
+        }
+        return String.valueOf(worker);
+    }
+
+}
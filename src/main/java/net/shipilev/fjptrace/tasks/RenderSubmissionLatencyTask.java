@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.Options;
+import net.shipilev.fjptrace.SubmissionStatus;
+import net.shipilev.fjptrace.util.PairedList;
+import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartUtilities;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.LogAxis;
+import org.jfree.chart.axis.StandardTickUnitSource;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.XYDotRenderer;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+
+import java.awt.*;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import static net.shipilev.fjptrace.tasks.RenderTaskExecTimeTask.nanosToSeconds;
+
+public class RenderSubmissionLatencyTask extends RecursiveAction {
+
+    /**
+     * Percentiles need enough samples in every bucket, hence the coarser buckets than the other graphs
+     */
+    private static final int BUCKETS = 100;
+
+    private final Events events;
+    private final SubmissionStatus status;
+    private final int width;
+    private final int height;
+    private final String prefix;
+    private final long fromTime;
+    private final long toTime;
+
+    public RenderSubmissionLatencyTask(Options opts, Events events, SubmissionStatus status) {
+        this.events = events;
+        this.status = status;
+        this.width = opts.getWidth();
+        this.height = opts.getHeight();
+        this.prefix = opts.getTargetPrefix();
+        this.fromTime = opts.getFromTime();
+        this.toTime = opts.getToTime();
+    }
+
+    @Override
+    protected void compute() {
+        ForkJoinTask.invokeAll(
+                new ScatterTask(prefix + "-submitLatency.png"),
+                new PercentilesTask(status.getQueueing(), prefix + "-submitQueueing.png", "Queueing latency, us"),
+                new PercentilesTask(status.getCompletion(), prefix + "-submitCompletion.png", "Completion latency, us")
+        );
+    }
+
+    private void write(JFreeChart chart, String filename) {
+        try {
+            FileOutputStream out = new FileOutputStream(filename);
+            ChartUtilities.writeChartAsPNG(out, chart, width, height);
+            out.close();
+        } catch (IOException e) {
+            // do nothing
+        }
+    }
+
+    private void setup(XYPlot plot, long start, long end) {
+        plot.setBackgroundPaint(Color.black);
+        plot.setDomainGridlinePaint(Color.LIGHT_GRAY);
+        plot.setRangeGridlinePaint(Color.LIGHT_GRAY);
+        plot.setOutlinePaint(Color.LIGHT_GRAY);
+
+        final ValueAxis domainAxis = plot.getDomainAxis();
+        domainAxis.setLowerMargin(0.0);
+        domainAxis.setUpperMargin(0.0);
+        domainAxis.setLowerBound(nanosToSeconds(start));
+        domainAxis.setUpperBound(nanosToSeconds(end));
+    }
+
+    /**
+     * Every external task: latency against the submit time.
+     */
+    private class ScatterTask extends LoggedRecursiveAction {
+
+        private final String filename;
+
+        private ScatterTask(String filename) {
+            super("Submission latency render");
+            this.filename = filename;
+        }
+
+        @Override
+        void doWork() {
+            long start = Math.max(fromTime, events.getStart());
+            long end = Math.min(toTime, events.getEnd());
+
+            DescriptiveStatistics range = new DescriptiveStatistics();
+            XYSeries queueing = series("queueing", status.getQueueing(), start, end, range);
+            XYSeries completion = series("completion", status.getCompletion(), start, end, range);
+            if (range.getN() == 0) {
+                return;
+            }
+
+            final XYSeriesCollection dataset = new XYSeriesCollection();
+            dataset.addSeries(queueing);
+            dataset.addSeries(completion);
+
+            final JFreeChart chart = ChartFactory.createXYLineChart(
+                    "External task latency",
+                    "Submit time, sec", "Latency, us, LOG scale",
+                    dataset,
+                    PlotOrientation.VERTICAL,
+                    true, false, false
+            );
+
+            chart.setBackgroundPaint(Color.white);
+
+            int pointSize = (int) Math.min(10, Math.max(1, width * height / range.getN()));
+
+            final XYPlot plot = chart.getXYPlot();
+            XYDotRenderer renderer = new XYDotRenderer();
+            renderer.setDotHeight(pointSize);
+            renderer.setDotWidth(pointSize);
+            renderer.setSeriesPaint(0, Color.GREEN);
+            renderer.setSeriesPaint(1, Color.RED);
+            plot.setRenderer(renderer);
+            setup(plot, start, end);
+
+            final LogAxis rangeAxis = new LogAxis("Latency, us, LOG scale");
+            rangeAxis.setStandardTickUnits(new StandardTickUnitSource());
+            rangeAxis.setBase(10);
+            rangeAxis.setLowerBound(Math.max(0.01, range.getMin()));
+            rangeAxis.setUpperBound(range.getMax());
+            plot.setRangeAxis(rangeAxis);
+
+            write(chart, filename);
+        }
+
+        private XYSeries series(String name, PairedList data, long start, long end, DescriptiveStatistics range) {
+            XYSeries series = new XYSeries(name);
+            for (PairedList.Pair p : data) {
+                long time = p.getK1();
+                if (start <= time && time <= end && p.getK2() > 0) {
+                    double y = p.getK2() / 1000.0;
+                    series.add(nanosToSeconds(time), y, false);
+                    range.addValue(y);
+                }
+            }
+            return series;
+        }
+    }
+
+    /**
+     * Latency percentiles per time bucket.
+     */
+    private class PercentilesTask extends LoggedRecursiveAction {
+
+        private final PairedList data;
+        private final String filename;
+        private final String yLabel;
+
+        private PercentilesTask(PairedList data, String filename, String yLabel) {
+            super("Submission latency percentiles render \"" + yLabel + "\"");
+            this.data = data;
+            this.filename = filename;
+            this.yLabel = yLabel;
+        }
+
+        @Override
+        void doWork() {
+            long start = Math.max(fromTime, events.getStart());
+            long end = Math.min(toTime, events.getEnd());
+            long bucket = Math.max(1, (end - start) / BUCKETS);
+
+            int count = (int) ((end - start) / bucket) + 1;
+            DescriptiveStatistics[] stats = new DescriptiveStatistics[count];
+
+            for (PairedList.Pair p : data) {
+                long time = p.getK1();
+                if (start <= time && time <= end) {
+                    int b = (int) ((time - start) / bucket);
+                    if (stats[b] == null) {
+                        stats[b] = new DescriptiveStatistics();
+                    }
+                    stats[b].addValue(p.getK2());
+                }
+            }
+
+            XYSeries p50 = new XYSeries("p50");
+            XYSeries p99 = new XYSeries("p99");
+            XYSeries p999 = new XYSeries("p99.9");
+            XYSeries max = new XYSeries("max");
+            for (int b = 0; b < count; b++) {
+                if (stats[b] != null) {
+                    double time = nanosToSeconds(start + b * bucket);
+                    p50.add(time, stats[b].getPercentile(50) / 1000, false);
+                    p99.add(time, stats[b].getPercentile(99) / 1000, false);
+                    p999.add(time, stats[b].getPercentile(99.9) / 1000, false);
+                    max.add(time, stats[b].getMax() / 1000, false);
+                }
+            }
+
+            final XYSeriesCollection dataset = new XYSeriesCollection();
+            dataset.addSeries(p50);
+            dataset.addSeries(p99);
+            dataset.addSeries(p999);
+            dataset.addSeries(max);
+
+            final JFreeChart chart = ChartFactory.createXYLineChart(
+                    "",
+                    "Submit time, sec", yLabel,
+                    dataset,
+                    PlotOrientation.VERTICAL,
+                    true, false, false
+            );
+
+            chart.setBackgroundPaint(Color.white);
+
+            final XYPlot plot = chart.getXYPlot();
+            setup(plot, start, end);
+            plot.getRenderer().setSeriesPaint(0, Color.GREEN);
+            plot.getRenderer().setSeriesPaint(1, Color.YELLOW);
+            plot.getRenderer().setSeriesPaint(2, Color.ORANGE);
+            plot.getRenderer().setSeriesPaint(3, Color.RED);
+
+            write(chart, filename);
+        }
+    }
+
+}
@@ -71,23 +71,35 @@ public class RenderTaskExecTimeTask extends RecursiveAction {
     @Override
     protected void compute() {
         ForkJoinTask.invokeAll(
-                new TaskStatsGraphTask(events, taskStatus.getSelf(), prefix + "-exectimeExclusive.png", "Task execution time (exclusive)", "Time to execute, sec, LOG scale"),
-                new TaskStatsGraphTask(events, taskStatus.getTotal(), prefix + "-exectimeInclusive.png", "Task execution times (inclusive, including subtasks)", "Time to execute, sec, LOG scale")
+                new TaskStatsGraphTask(events, taskStatus.getSelf(), false, prefix + "-exectimeExclusive.png", "Task execution time (exclusive)", "Time to execute, sec, LOG scale"),
+                new TaskStatsGraphTask(events, taskStatus.getTotal(), false, prefix + "-exectimeInclusive.png", "Task execution times (inclusive, including subtasks)", "Time to execute, sec, LOG scale")
         );
+
+        if (!events.getClassNames().isEmpty()) {
+            ForkJoinTask.invokeAll(
+                    new TaskStatsGraphTask(events, taskStatus.getSelfByClass(), true, prefix + "-exectimeExclusiveByClass.png", "Task execution time per class (exclusive)", "Time to execute, sec, LOG scale"),
+                    new TaskStatsGraphTask(events, taskStatus.getTotalByClass(), true, prefix + "-exectimeInclusiveByClass.png", "Task execution times per class (inclusive, including subtasks)", "Time to execute, sec, LOG scale")
+            );
+        }
     }
 
     public class TaskStatsGraphTask extends LoggedRecursiveAction {
 
         private final Events events;
         private final Map<Integer, PairedList> data;
+        private final boolean byClass;
         private final String filename;
         private final String chartLabel;
         private final String yLabel;
 
-        private TaskStatsGraphTask(Events events, Map<Integer, PairedList> data, String filename, String chartLabel, String yLabel) {
+        /**
+         * @param byClass true, if data is keyed by task class id; otherwise, by depth
+         */
+        private TaskStatsGraphTask(Events events, Map<Integer, PairedList> data, boolean byClass, String filename, String chartLabel, String yLabel) {
             super("Task statistics render \"" + chartLabel + "\"");
             this.events = events;
             this.data = data;
+            this.byClass = byClass;
             this.filename = filename;
             this.chartLabel = chartLabel;
             this.yLabel = yLabel;
@@ -98,9 +110,9 @@ public class RenderTaskExecTimeTask extends RecursiveAction {
             DescriptiveStatistics rangeStatistics = new DescriptiveStatistics();
 
             final XYSeriesCollection dataset = new XYSeriesCollection();
-            for (Integer depth : data.keySet()) {
-                XYSeries series = new XYSeries("d(" + depth + ")");
-                for (PairedList.Pair entry : data.get(depth)) {
+            for (Integer key : data.keySet()) {
+                XYSeries series = new XYSeries(byClass ? events.getClassName(key) : "d(" + key + ")");
+                for (PairedList.Pair entry : data.get(key)) {
                     double y = nanosToSeconds(entry.getK2());
                     if (y > 0) {
                         series.add(nanosToSeconds(entry.getK1()), y, false);
@@ -198,13 +210,13 @@ public class RenderTaskExecTimeTask extends RecursiveAction {
 
         private JFreeChart getYHistogram(ValueAxis rangeAxis, AxisSpace space) {
             final HistogramDataset histDataSet = new HistogramDataset();
-            for (Integer depth : data.keySet()) {
-                long[] d = data.get(depth).filter(1).getAllY();
+            for (Integer key : data.keySet()) {
+                long[] d = data.get(key).filter(1).getAllY();
                 double[] values = new double[d.length];
                 for (int c = 0; c < d.length; c++) {
                     values[c] = nanosToSeconds(d[c]);
                 }
-                histDataSet.addSeries("depth = " + depth, values, width);
+                histDataSet.addSeries(byClass ? events.getClassName(key) : "depth = " + key, values, width);
             }
 
             final JFreeChart histChart = ChartFactory.createHistogram(
@@ -227,13 +239,13 @@ public class RenderTaskExecTimeTask extends RecursiveAction {
 
         private JFreeChart getXHistogram(ValueAxis axis, AxisSpace space) {
             final HistogramDataset histDataSet = new HistogramDataset();
-            for (Integer depth : data.keySet()) {
-                long[] d = data.get(depth).filter(1).getAllX();
+            for (Integer key : data.keySet()) {
+                long[] d = data.get(key).filter(1).getAllX();
                 double[] values = new double[d.length];
                 for (int c = 0; c < d.length; c++) {
                     values[c] = nanosToSeconds(d[c]);
                 }
-                histDataSet.addSeries("depth = " + depth, values, width);
+                histDataSet.addSeries(byClass ? events.getClassName(key) : "depth = " + key, values, width);
             }
 
             final JFreeChart histChart = ChartFactory.createHistogram(
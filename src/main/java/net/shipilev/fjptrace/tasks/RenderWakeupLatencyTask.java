@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.Options;
+import net.shipilev.fjptrace.WakeupStatus;
+import net.shipilev.fjptrace.util.PairedList;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartUtilities;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+
+import java.awt.*;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static net.shipilev.fjptrace.tasks.RenderTaskExecTimeTask.nanosToSeconds;
+
+public class RenderWakeupLatencyTask extends LoggedRecursiveAction {
+
+    private static final int BUCKETS = 500;
+
+    private final Events events;
+    private final WakeupStatus status;
+    private final int width;
+    private final int height;
+    private final String filename;
+    private final long fromTime;
+    private final long toTime;
+
+    public RenderWakeupLatencyTask(Options opts, Events events, WakeupStatus status) {
+        super("Wake-up latency render");
+        this.events = events;
+        this.status = status;
+        this.width = opts.getWidth();
+        this.height = opts.getHeight();
+        this.filename = opts.getTargetPrefix() + "-wakeupLatency.png";
+        this.fromTime = opts.getFromTime();
+        this.toTime = opts.getToTime();
+    }
+
+    @Override
+    void doWork() {
+        long start = Math.max(fromTime, events.getStart());
+        long end = Math.min(toTime, events.getEnd());
+        long bucket = Math.max(1, (end - start) / BUCKETS);
+
+        int count = (int) ((end - start) / bucket) + 1;
+        long[] sums = new long[count];
+        long[] counts = new long[count];
+        long[] maxs = new long[count];
+
+        for (PairedList.Pair p : status.getLatencies()) {
+            long time = p.getK1();
+            if (start <= time && time <= end) {
+                int b = (int) ((time - start) / bucket);
+                sums[b] += p.getK2();
+                counts[b]++;
+                maxs[b] = Math.max(maxs[b], p.getK2());
+            }
+        }
+
+        XYSeries avg = new XYSeries("average");
+        XYSeries max = new XYSeries("max");
+        for (int b = 0; b < count; b++) {
+            if (counts[b] > 0) {
+                double time = nanosToSeconds(start + b * bucket);
+                avg.add(time, sums[b] / 1000.0 / counts[b], false);
+                max.add(time, maxs[b] / 1000.0, false);
+            }
+        }
+
+        final XYSeriesCollection dataset = new XYSeriesCollection();
+        dataset.addSeries(avg);
+        dataset.addSeries(max);
+
+        final JFreeChart chart = ChartFactory.createXYLineChart(
+                "",
+                "Run time, sec", "Wake-up latency, us",
+                dataset,
+                PlotOrientation.VERTICAL,
+                true, false, false
+        );
+
+        chart.setBackgroundPaint(Color.white);
+
+        final XYPlot plot = chart.getXYPlot();
+        plot.setBackgroundPaint(Color.black);
+        plot.setDomainGridlinePaint(Color.LIGHT_GRAY);
+        plot.setRangeGridlinePaint(Color.LIGHT_GRAY);
+        plot.setOutlinePaint(Color.LIGHT_GRAY);
+        plot.getRenderer().setSeriesPaint(0, Color.GREEN);
+        plot.getRenderer().setSeriesPaint(1, Color.RED);
+
+        final ValueAxis domainAxis = plot.getDomainAxis();
+        domainAxis.setLowerMargin(0.0);
+        domainAxis.setUpperMargin(0.0);
+        domainAxis.setLowerBound(nanosToSeconds(start));
+        domainAxis.setUpperBound(nanosToSeconds(end));
+
+        try {
+            FileOutputStream out = new FileOutputStream(filename);
+            ChartUtilities.writeChartAsPNG(out, chart, width, height);
+            out.close();
+        } catch (IOException e) {
+            // do nothing
+        }
+    }
+
+}
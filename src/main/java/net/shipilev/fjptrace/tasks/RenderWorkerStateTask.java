@@ -26,6 +26,7 @@ import net.shipilev.fjptrace.WorkerStatusJN;
 import net.shipilev.fjptrace.WorkerStatusPK;
 
 import java.awt.*;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.SortedSet;
@@ -39,6 +40,11 @@ public class RenderWorkerStateTask extends AbstractGraphTask {
         this.workerStatus = workerStatus;
     }
 
+    public RenderWorkerStateTask(Options opts, Collection<Long> workers, long start, long end, WorkerStatus workerStatus, String name, String fileName) {
+        super(opts, workers, start, end, name, fileName);
+        this.workerStatus = workerStatus;
+    }
+
     @Override
     protected Color getColor(long tick, long worker) {
         WorkerStatusHolder status = workerStatus.getStatus(worker, tick);
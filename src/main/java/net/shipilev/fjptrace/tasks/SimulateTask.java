@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Event;
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.Options;
+import net.shipilev.fjptrace.Simulator;
+import net.shipilev.fjptrace.TaskGraph;
+
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class SimulateTask extends LoggedRecursiveAction {
+
+    private static final long SEED = Long.getLong("simulation.seed", 42);
+
+    private final Options opts;
+    private final Events events;
+    private final TaskGraph graph;
+    private final String fileName;
+
+    public SimulateTask(Options opts, Events events, TaskGraph graph) {
+        super("Simulating");
+        this.opts = opts;
+        this.events = events;
+        this.graph = graph;
+        this.fileName = opts.getTargetPrefix() + "-simulation.txt";
+    }
+
+    @Override
+    public void doWork() throws Exception {
+        List<Integer> counts = opts.getSimWorkers();
+        if (counts.isEmpty()) {
+            return;
+        }
+
+        List<TaskGraph.Node> roots = graph.getRoots();
+
+        long first = Long.MAX_VALUE;
+        long work = 0;
+        for (TaskGraph.Node root : roots) {
+            first = Math.min(first, root.getStart());
+            work += root.getWork();
+        }
+
+        long last = Long.MIN_VALUE;
+        Set<Long> workers = new HashSet<>();
+        for (Event e : events) {
+            switch (e.eventType) {
+                case EXEC:
+                    workers.add(e.workerId);
+                    break;
+                case EXECUTED:
+                    last = Math.max(last, e.time);
+                    break;
+            }
+        }
+
+        long measured = (last > first) ? last - first : 0;
+
+        PrintWriter pw = new PrintWriter(fileName);
+
+        pw.println("Simulated runs:");
+        pw.println("  the task graph is replayed on virtual workers with measured task times, external tasks");
+        pw.println("  arrive at the recorded times; compare the run on the measured number of workers with");
+        pw.println("  the measured run to see how close the model is");
+        pw.println();
+        pw.printf("  external tasks = %d\n", roots.size());
+        pw.printf("  total work (ms) = %.2f\n", work / 1_000_000.0);
+        pw.printf("  stealing policy = %s, steal cost = %d ns\n", opts.getSimPolicy().toString().toLowerCase(), opts.getSimStealCost());
+        pw.println();
+        pw.printf("  %10s %15s %10s %12s %12s %12s\n", "workers", "makespan, ms", "speedup", "utilization", "steals", "tasks");
+        pw.printf("  %10d %15.2f %10s %11.1f%% %12s %12s   (measured)\n",
+                workers.size(), measured / 1_000_000.0, "",
+                (measured > 0 && !workers.isEmpty()) ? 100.0 * work / (workers.size() * measured) : 0, "", "");
+
+        for (int count : counts) {
+            Simulator sim = new Simulator(graph, count, opts.getSimPolicy(), opts.getSimStealCost(), SEED);
+            sim.run();
+
+            pw.printf("  %10d %15.2f %10s %11.1f%% %12d %12d\n",
+                    count, sim.getMakespan() / 1_000_000.0,
+                    (sim.getMakespan() > 0) ? String.format("%.2fx", 1.0 * measured / sim.getMakespan()) : "",
+                    100.0 * sim.getUtilization(), sim.getSteals(), sim.getTasks());
+
+            getPw().printf("Simulated %d workers: %d ms makespan, %.1f%% utilization\n",
+                    count, sim.getMakespan() / 1_000_000, 100.0 * sim.getUtilization());
+
+            new RenderWorkerStateTask(opts, sim.getWorkers(), sim.getStart(), sim.getEnd(), sim.getWorkerStatus(),
+                    "Simulated task graph", opts.getTargetPrefix() + "-sim" + count + "-workerState.png").invoke();
+        }
+
+        pw.close();
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Event;
+import net.shipilev.fjptrace.EventType;
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.StealStatus;
+
+public class StealStatusTask extends LoggedRecursiveTask<StealStatus> {
+
+    private final Events events;
+
+    public StealStatusTask(Events events) {
+        super("Computing steal stats");
+        this.events = events;
+    }
+
+    @Override
+    public StealStatus doWork() throws Exception {
+        StealStatus status = new StealStatus();
+
+        for (Event e : events) {
+            switch (e.eventType) {
+                case STEAL:
+                    // victim is recorded by its thread id, which is unique across the pools and worker churn
+                    status.register(e.time, e.workerId, resolveVictim(e.tag));
+                    break;
+
+                case STEAL_FAILED:
+                    status.registerFailures(e.time, e.tag);
+                    break;
+            }
+        }
+
+        getPw().printf("Steals: %d succeeded, %d failed (%.2f%% contention)\n",
+                status.getTotalSteals(),
+                status.getTotalFailures(),
+                status.getTotalFailures() * 100.0 / Math.max(1, status.getTotalSteals() + status.getTotalFailures()));
+
+        return status;
+    }
+
+    private static long resolveVictim(long victim) {
+        return (victim == EventType.STEAL_SHARED) ? WorkerQueueStatusTask.SUBMISSION_WORKER : victim;
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Event;
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.Options;
+import net.shipilev.fjptrace.Task;
+import net.shipilev.fjptrace.TaskStatus;
+import net.shipilev.fjptrace.util.PairedList;
+import net.shipilev.fjptrace.util.Timeline;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the tail of every external task, where only a few workers still
+ * execute its subtasks, and the rest are idle or wait for them.
+ */
+public class StragglersTask extends LoggedRecursiveAction {
+
+    private static final double THRESHOLD = Integer.getInteger("stragglers.threshold", 50) / 100.0;
+    private static final Integer LIMIT = Integer.getInteger("stragglers.limit", 20);
+    private static final Integer TASKS_LIMIT = Integer.getInteger("stragglers.tasks", 10);
+
+    private final Events events;
+    private final TaskStatus taskStatus;
+    private final String filename;
+
+    public StragglersTask(Options opts, Events events, TaskStatus taskStatus) {
+        super("Computing stragglers");
+        this.events = events;
+        this.taskStatus = taskStatus;
+        this.filename = opts.getTargetPrefix() + "-stragglers.txt";
+    }
+
+    @Override
+    void doWork() throws Exception {
+        long from = events.getStart();
+        long to = events.getEnd();
+
+        Map<Long, Timeline<Boolean>> running = computeRunning();
+
+        // busy intervals of every external task: executing its subtasks
+        Map<Integer, PairedList> busy = new HashMap<>();
+
+        for (long w : events.getWorkers()) {
+            Timeline<Integer> ids = taskStatus.getTimeline(w);
+            Timeline<Boolean> states = running.get(w);
+            if (ids == null || states == null) {
+                continue;
+            }
+
+            Iterator<Timeline.Interval<Integer>> itA = ids.intervals(from, to).iterator();
+            Iterator<Timeline.Interval<Boolean>> itB = states.intervals(from, to).iterator();
+            if (!itA.hasNext() || !itB.hasNext()) {
+                continue;
+            }
+
+            Timeline.Interval<Integer> a = itA.next();
+            Timeline.Interval<Boolean> b = itB.next();
+
+            int curId = TaskStatus.NO_ID;
+            long curStart = from;
+
+            long time = from;
+            while (time < to) {
+                long end = Math.min(a.getTo(), b.getTo());
+
+                int id = (a.getStatus() != null && Boolean.TRUE.equals(b.getStatus())) ? a.getStatus() : TaskStatus.NO_ID;
+
+                if (id != curId) {
+                    addBusy(busy, curId, curStart, time);
+                    curId = id;
+                    curStart = time;
+                }
+
+                time = end;
+                if (a.getTo() == end && itA.hasNext()) {
+                    a = itA.next();
+                }
+                if (b.getTo() == end && itB.hasNext()) {
+                    b = itB.next();
+                }
+            }
+            addBusy(busy, curId, curStart, to);
+        }
+
+        List<Tail> tails = new ArrayList<>();
+        for (Map.Entry<Integer, PairedList> e : busy.entrySet()) {
+            tails.add(tail(e.getKey(), e.getValue()));
+        }
+
+        Collections.sort(tails, new Comparator<Tail>() {
+            @Override
+            public int compare(Tail o1, Tail o2) {
+                return Long.compare(o2.saved, o1.saved);
+            }
+        });
+
+        long spans = 0;
+        long saved = 0;
+        long tailTime = 0;
+        for (Tail t : tails) {
+            spans += t.end - t.start;
+            saved += t.saved;
+            tailTime += t.end - t.tailStart;
+        }
+
+        PrintWriter pw = new PrintWriter(filename);
+        pw.println("Stragglers:");
+        pw.printf("  tail is the end of the external task where less than %.0f%% of its peak workers are busy with it,\n", 100 * THRESHOLD);
+        pw.println("  the saved time is the tail time less the time to do the tail work on the peak number of workers;");
+        pw.println("  stragglers are the innermost subtasks running in the tail");
+        pw.println("  (-Dstragglers.threshold=#, -Dstragglers.limit=#, -Dstragglers.tasks=# to tune)");
+        pw.println();
+        pw.printf("  external tasks = %d, total span = %.3f ms, in tails = %.3f ms (%.2f%%)\n",
+                tails.size(), spans / 1e6, tailTime / 1e6, 100.0 * tailTime / Math.max(1, spans));
+        pw.printf("  balanced tails would save %.3f ms, estimated speedup = %.3fx\n",
+                saved / 1e6, (double) spans / Math.max(1, spans - saved));
+
+        pw.println();
+        pw.println("  External tasks, most time saved first:");
+        int count = 0;
+        for (Tail t : tails) {
+            if (count++ >= LIMIT || t.saved <= 0) {
+                break;
+            }
+            pw.println();
+            pw.printf("  #%d: %.2f..%.2f us, span = %.2f us, peak = %d workers, tail = %.2f us, tail work = %.2f us, saved = %.2f us (%.3fx)\n",
+                    t.id, t.start / 1e3, t.end / 1e3, (t.end - t.start) / 1e3, t.peak,
+                    (t.end - t.tailStart) / 1e3, t.tailWork / 1e3, t.saved / 1e3,
+                    (double) (t.end - t.start) / Math.max(1, t.end - t.start - t.saved));
+
+            List<Task> stragglers = stragglers(taskStatus.getExternal(t.id), t.tailStart, t.end);
+            pw.printf("    %10s %12s %12s %20s %12s %s\n", "depth", "start, us", "duration, us", "worker", "in tail, us", "class");
+            for (Task s : stragglers.subList(0, Math.min(TASKS_LIMIT, stragglers.size()))) {
+                long start = getStart(s);
+                long end = start + s.getRawTotalTime();
+                pw.printf("    %10d %12.2f %12.2f %20d %12.2f %s\n",
+                        s.getDepth(), start / 1e3, s.getRawTotalTime() / 1e3, s.getWorker(),
+                        (end - Math.max(start, t.tailStart)) / 1e3, events.getClassName(s.getTaskClass()));
+            }
+        }
+        pw.close();
+
+        getPw().printf("Stragglers: %.2f%% of the external task time in the tails, balancing would give %.3fx\n",
+                100.0 * tailTime / Math.max(1, spans), (double) spans / Math.max(1, spans - saved));
+    }
+
+    /**
+     * Worker state graph has the joiner in the same state whether it helps or waits for the
+     * straggler; here, the worker runs when its innermost frame is the task, not the join.
+     *
+     * @return per worker timeline: true when running the task code
+     */
+    private Map<Long, Timeline<Boolean>> computeRunning() {
+        Map<Long, Timeline<Boolean>> running = new HashMap<>();
+        Map<Long, Deque<Boolean>> frames = new HashMap<>();
+        Map<Long, Boolean> waiting = new HashMap<>();
+        Map<Long, Boolean> last = new HashMap<>();
+
+        for (Event e : events) {
+            Deque<Boolean> f = frames.get(e.workerId);
+            if (f == null) {
+                f = new ArrayDeque<>();
+                frames.put(e.workerId, f);
+                running.put(e.workerId, new Timeline<Boolean>());
+                waiting.put(e.workerId, false);
+                last.put(e.workerId, false);
+            }
+
+            switch (e.eventType) {
+                case EXEC:
+                    f.push(true);
+                    break;
+                case JOIN:
+                    f.push(false);
+                    break;
+                case EXECUTED:
+                case JOINED:
+                    if (!f.isEmpty()) {
+                        f.pop();
+                    }
+                    break;
+                case WAIT:
+                    waiting.put(e.workerId, true);
+                    break;
+                case WAITED:
+                    waiting.put(e.workerId, false);
+                    break;
+                default:
+                    continue;
+            }
+
+            boolean run = !f.isEmpty() && f.peek() && !waiting.get(e.workerId);
+            if (run != last.get(e.workerId)) {
+                running.get(e.workerId).add(e.time, run);
+                last.put(e.workerId, run);
+            }
+        }
+
+        return running;
+    }
+
+    private static void addBusy(Map<Integer, PairedList> busy, int id, long start, long end) {
+        if (id == TaskStatus.NO_ID || start >= end) {
+            return;
+        }
+        PairedList list = busy.get(id);
+        if (list == null) {
+            list = new PairedList();
+            busy.put(id, list);
+        }
+        list.add(start, end);
+    }
+
+    private static Tail tail(int id, PairedList busy) {
+        long[] starts = busy.getAllX();
+        long[] ends = busy.getAllY();
+        Arrays.sort(starts);
+        Arrays.sort(ends);
+
+        Tail t = new Tail(id);
+        t.start = starts[0];
+        t.end = ends[ends.length - 1];
+
+        // concurrency over time: sweep over the interval ends
+        int n = starts.length;
+        long[] times = new long[2 * n];
+        int[] levels = new int[2 * n];
+        int c = 0;
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < n || j < n) {
+            long time;
+            if (j >= n || (i < n && starts[i] < ends[j])) {
+                time = starts[i++];
+                c++;
+            } else {
+                time = ends[j++];
+                c--;
+            }
+            t.peak = Math.max(t.peak, c);
+            times[count] = time;
+            levels[count] = c;
+            count++;
+        }
+
+        // the tail starts at the last drop below the threshold
+        double low = THRESHOLD * t.peak;
+        t.tailStart = t.end;
+        for (int k = count - 1; k >= 0; k--) {
+            if (levels[k] >= low) {
+                t.tailStart = (k + 1 < count) ? times[k + 1] : t.end;
+                break;
+            }
+        }
+
+        for (int k = 0; k + 1 < count; k++) {
+            if (times[k] >= t.tailStart) {
+                t.tailWork += levels[k] * (times[k + 1] - times[k]);
+            }
+        }
+
+        long balanced = t.tailWork / Math.max(1, t.peak);
+        t.saved = Math.max(0, (t.end - t.tailStart) - balanced);
+        return t;
+    }
+
+    /**
+     * Task times are kept as the midpoint and the duration.
+     */
+    private static long getStart(Task t) {
+        return t.getTime() - t.getRawTotalTime() / 2;
+    }
+
+    private static boolean overlaps(Task t, long from, long to) {
+        long start = getStart(t);
+        return start < to && from < start + t.getRawTotalTime();
+    }
+
+    /**
+     * @return innermost subtasks running in the given time range, the longest first
+     */
+    private static List<Task> stragglers(Task root, long from, long to) {
+        List<Task> result = new ArrayList<>();
+        if (root == null) {
+            return result;
+        }
+
+        Deque<Task> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            Task t = queue.poll();
+            boolean inner = false;
+            for (Task c : t.getChildren()) {
+                if (overlaps(c, from, to)) {
+                    queue.add(c);
+                    inner = true;
+                }
+            }
+            if (!inner && overlaps(t, from, to)) {
+                result.add(t);
+            }
+        }
+
+        Collections.sort(result, new Comparator<Task>() {
+            @Override
+            public int compare(Task o1, Task o2) {
+                return Long.compare(o2.getRawTotalTime(), o1.getRawTotalTime());
+            }
+        });
+        return result;
+    }
+
+    private static class Tail {
+        private final int id;
+        private long start;
+        private long end;
+        private long tailStart;
+        private long tailWork;
+        private long saved;
+        private int peak;
+
+        private Tail(int id) {
+            this.id = id;
+        }
+    }
+
+}
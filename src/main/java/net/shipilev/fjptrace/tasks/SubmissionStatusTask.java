@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Event;
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.SubmissionStatus;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class SubmissionStatusTask extends LoggedRecursiveTask<SubmissionStatus> {
+
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final Events events;
+
+    public SubmissionStatusTask(Events events) {
+        super("Computing submission latencies");
+        this.events = events;
+    }
+
+    @Override
+    public SubmissionStatus doWork() throws Exception {
+        SubmissionStatus status = new SubmissionStatus();
+
+        // external tasks in the submission order
+        Map<Long, Submission> submissions = new LinkedHashMap<>();
+
+        // external task every forked and not yet executed task belongs to
+        Map<Long, Long> roots = new HashMap<>();
+
+        // external tasks of the tasks being executed by each thread
+        Map<Long, Deque<Long>> stacks = new HashMap<>();
+
+        for (Event e : events) {
+            Deque<Long> stack = stacks.get(e.workerId);
+            if (stack == null) {
+                stack = new ArrayDeque<>();
+                stacks.put(e.workerId, stack);
+            }
+
+            switch (e.eventType) {
+                case SUBMIT:
+                    submissions.put(e.tag, new Submission(e.time));
+                    roots.put(e.tag, e.tag);
+                    status.registerSubmit();
+                    break;
+
+                case FORK:
+                case INVOKE:
+                    if (!stack.isEmpty() && stack.peek() != NONE) {
+                        roots.put(e.tag, stack.peek());
+                    }
+                    break;
+
+                case EXEC: {
+                    Long root = roots.remove(e.tag);
+                    stack.push((root != null) ? root : NONE);
+                    if (root != null && root == e.tag) {
+                        Submission s = submissions.get(root);
+                        if (s.exec < 0) {
+                            s.exec = e.time;
+                        }
+                    }
+                    break;
+                }
+
+                case EXECUTED:
+                    if (!stack.isEmpty()) {
+                        long root = stack.pop();
+                        if (root != NONE) {
+                            Submission s = submissions.get(root);
+                            s.executed = Math.max(s.executed, e.time);
+                        }
+                    }
+                    break;
+            }
+        }
+
+        for (Submission s : submissions.values()) {
+            if (s.exec >= 0) {
+                status.registerQueueing(s.submit, s.exec - s.submit);
+            }
+            if (s.executed >= 0) {
+                status.registerCompletion(s.submit, s.executed - s.submit);
+            }
+        }
+
+        getPw().printf("Submissions: %d submitted, queueing %.2f us p50, %.2f us p99; completion %.2f us p50, %.2f us p99\n",
+                status.getSubmitted(),
+                status.getQueueingPercentile(50) / 1000, status.getQueueingPercentile(99) / 1000,
+                status.getCompletionPercentile(50) / 1000, status.getCompletionPercentile(99) / 1000);
+
+        return status;
+    }
+
+    private static class Submission {
+        private final long submit;
+        private long exec = -1;
+        private long executed = -1;
+
+        private Submission(long submit) {
+            this.submit = submit;
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Event;
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.TaskGraph;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TaskGraphTask extends LoggedRecursiveTask<TaskGraph> {
+
+    private final Events events;
+
+    public TaskGraphTask(Events events) {
+        super("Computing task graph");
+        this.events = events;
+    }
+
+    @Override
+    public TaskGraph doWork() throws Exception {
+        TaskGraph graph = new TaskGraph();
+
+        // tasks being executed by each thread, innermost first
+        Map<Long, Deque<Frame>> stacks = new HashMap<>();
+
+        // events recorded by each thread so far, to account the recorder overhead
+        double eventCost = events.getEventCost();
+        Map<Long, Long> workerEvents = new HashMap<>();
+
+        for (Event e : events) {
+            Long seenBox = workerEvents.get(e.workerId);
+            long seen = (seenBox == null) ? 0 : seenBox;
+            workerEvents.put(e.workerId, seen + 1);
+
+            Deque<Frame> stack = stacks.get(e.workerId);
+            if (stack == null) {
+                stack = new ArrayDeque<>();
+                stacks.put(e.workerId, stack);
+            }
+            Frame top = stack.peek();
+
+            switch (e.eventType) {
+                case SUBMIT:
+                    graph.submit(graph.node(e.tag), e.time);
+                    break;
+
+                case INVOKE:
+                case FORK:
+                    if (top != null) {
+                        graph.fork(top.task, graph.node(e.tag));
+                    }
+                    break;
+
+                case INVOKED:
+                    // executed inline, the invoker was suspended meanwhile
+                    if (top != null) {
+                        graph.join(top.task, graph.node(e.tag));
+                    }
+                    break;
+
+                case JOIN:
+                    if (top != null) {
+                        top.suspend(graph, e.time, seen, eventCost);
+                        top.joins++;
+                        graph.join(top.task, graph.node(e.tag));
+                    }
+                    break;
+
+                case JOINED:
+                    if (top != null && top.joins > 0) {
+                        top.joins--;
+                        top.resume(e.time, seen);
+                    }
+                    break;
+
+                case EXEC: {
+                    if (top != null) {
+                        top.suspend(graph, e.time, seen, eventCost);
+                    }
+                    TaskGraph.Node task = graph.node(e.tag);
+                    graph.exec(task, e.workerId, e.taskClass, e.time);
+                    Frame f = new Frame(task);
+                    f.resume(e.time, seen);
+                    stack.push(f);
+                    break;
+                }
+
+                case EXECUTED: {
+                    if (top == null || top.task.getTag() != e.tag) {
+                        // started before the trace, or the trace is broken
+                        break;
+                    }
+                    top.suspend(graph, e.time, seen, eventCost);
+                    stack.pop();
+
+                    Frame parent = stack.peek();
+                    if (parent != null) {
+                        parent.resume(e.time, seen);
+                    }
+                    break;
+                }
+            }
+        }
+
+        graph.compute();
+
+        long work = 0;
+        long span = 0;
+        for (TaskGraph.Node root : graph.getRoots()) {
+            work += root.getWork();
+            span += root.getSpan();
+        }
+        getPw().printf("Work/span: %d ms work, %d ms span, %.2f parallelism\n",
+                work / 1_000_000, span / 1_000_000, (span > 0) ? 1.0 * work / span : 1.0);
+
+        return graph;
+    }
+
+    /**
+     * Task being executed. It makes progress only while innermost,
+     * and not joining anything.
+     */
+    private static class Frame {
+        private final TaskGraph.Node task;
+        private long since = -1;
+        private long sinceEvents;
+        private int joins;
+
+        Frame(TaskGraph.Node task) {
+            this.task = task;
+        }
+
+        void resume(long time, long seen) {
+            if (joins == 0) {
+                since = time;
+                sinceEvents = seen;
+            }
+        }
+
+        void suspend(TaskGraph graph, long time, long seen, double eventCost) {
+            if (since >= 0) {
+                long duration = time - since - Math.round((seen - sinceEvents) * eventCost);
+                graph.work(task, duration);
+                since = -1;
+            }
+        }
+    }
+
+}
@@ -48,14 +48,27 @@ public class TaskStatusTask extends LoggedRecursiveTask<TaskStatus> {
 
         Map<Task, Integer> taskToID = new HashMap<>();
 
+        // events recorded by each worker so far, to account the recorder overhead
+        double eventCost = events.getEventCost();
+        Map<Long, Long> workerEvents = new HashMap<>();
+        Map<Task, Long> execEvents = new HashMap<>();
+        Map<Task, Long> lastSelfEvents = new HashMap<>();
+        Multiset<Task> selfEvents = new Multiset<>();
+
         int externalTaskID = 0;
 
         for (Event e : events) {
+            // the event cost is paid after its timestamp, i.e. within the interval it starts
+            Long seenBox = workerEvents.get(e.workerId);
+            long seen = (seenBox == null) ? 0 : seenBox;
+            workerEvents.put(e.workerId, seen + 1);
+
             switch (e.eventType) {
                 case SUBMIT: {
                     Task task = taskStatus.newTask(e.tag);
-                    taskToID.put(task, externalTaskID++);
-                    taskStatus.parent(task);
+                    int id = externalTaskID++;
+                    taskToID.put(task, id);
+                    taskStatus.parent(task, id);
                     break;
                 }
 
@@ -72,6 +85,7 @@ public class TaskStatusTask extends LoggedRecursiveTask<TaskStatus> {
                     Task currentTask = currentExec.get(e.workerId);
                     Task newTask = taskStatus.get(e.tag);
                     newTask.setWorker(e.workerId);
+                    newTask.setTaskClass(e.taskClass);
 
                     if (currentTask != null) {
                         // about to leave parent
@@ -83,12 +97,15 @@ public class TaskStatusTask extends LoggedRecursiveTask<TaskStatus> {
                             continue;
                         }
                         timings.add(currentTask, e.time - start);
+                        selfEvents.add(currentTask, seen - lastSelfEvents.remove(currentTask));
                     }
 
                     // start executing
                     lastSelfTime.put(newTask, e.time);
+                    lastSelfEvents.put(newTask, seen);
                     currentExec.put(e.workerId, newTask);
                     execTime.put(newTask, e.time);
+                    execEvents.put(newTask, seen);
 
                     Integer id = taskToID.get(currentTask);
                     if (id != null) {
@@ -113,24 +130,28 @@ public class TaskStatusTask extends LoggedRecursiveTask<TaskStatus> {
                         continue;
                     }
                     timings.add(task, e.time - s);
+                    selfEvents.add(task, seen - lastSelfEvents.remove(task));
                     if (task != null) {
-                        task.addSelf((e.time - timings.count(task) / 2), timings.count(task));
+                        task.addSelf((e.time - timings.count(task) / 2), timings.count(task), selfEvents.count(task), eventCost);
                     }
                     timings.removeKey(task);
+                    selfEvents.removeKey(task);
 
                     // count the time
                     Long s1 = execTime.remove(task);
+                    Long n1 = execEvents.remove(task);
                     if (s1 == null) {
                         continue;
                     }
                     if (task != null) {
-                        task.addTotal((e.time + s1) / 2, e.time - s1);
+                        task.addTotal((e.time + s1) / 2, e.time - s1, seen - n1, eventCost);
                     }
 
                     Task parent = parentTasks.remove(task);
                     if (parent != null) {
                         // getting back to parent
                         lastSelfTime.put(parent, e.time);
+                        lastSelfEvents.put(parent, seen);
                         currentExec.put(e.workerId, parent);
 
                         // next task is parent
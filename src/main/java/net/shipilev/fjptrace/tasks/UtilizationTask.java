@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.Options;
+import net.shipilev.fjptrace.Selectors;
+import net.shipilev.fjptrace.Utilization;
+import net.shipilev.fjptrace.WorkerState;
+import net.shipilev.fjptrace.WorkerStatus;
+import net.shipilev.fjptrace.WorkerStatusHolder;
+import net.shipilev.fjptrace.util.Timeline;
+
+import java.io.PrintWriter;
+import java.util.Collection;
+
+public class UtilizationTask extends LoggedRecursiveTask<Utilization> {
+
+    private final Events events;
+    private final WorkerStatus workerStatus;
+    private final String prefix;
+    private final long fromTime;
+    private final long toTime;
+    private final long bucket;
+
+    public UtilizationTask(Options opts, Events events, WorkerStatus workerStatus) {
+        super("Computing worker utilization");
+        this.events = events;
+        this.workerStatus = workerStatus;
+        this.prefix = opts.getTargetPrefix();
+        this.fromTime = opts.getFromTime();
+        this.toTime = opts.getToTime();
+        this.bucket = opts.getUtilizationBucket();
+    }
+
+    @Override
+    public Utilization doWork() throws Exception {
+        long from = Math.max(fromTime, events.getStart());
+        long to = Math.min(toTime, events.getEnd());
+
+        Utilization util = new Utilization(from, to, bucket);
+
+        Collection<Long> poolWorkers = events.getPoolWorkers();
+        for (long w : events.getWorkers()) {
+            boolean pool = poolWorkers.contains(w);
+            Timeline<WorkerStatusHolder> tl = workerStatus.getTimeline(w);
+            if (tl == null) {
+                add(util, pool, w, from, to, WorkerState.UNKNOWN);
+                continue;
+            }
+            for (Timeline.Interval<WorkerStatusHolder> i : tl.intervals(from, to)) {
+                WorkerStatusHolder s = i.getStatus();
+                WorkerState state = (s != null) ? Selectors.selectState(s.blStatus, s.pkStatus, s.jnStatus) : WorkerState.UNKNOWN;
+                add(util, pool, w, i.getFrom(), i.getTo(), state);
+            }
+        }
+
+        PrintWriter pw = new PrintWriter(prefix + "-utilization.txt");
+        util.printSummary(pw);
+        pw.close();
+
+        PrintWriter csv = new PrintWriter(prefix + "-utilization.csv");
+        util.printCSV(csv);
+        csv.close();
+
+        getPw().printf("Utilization: %.2f%% exec, %.2f%% join, %.2f%% infra, %.2f%% parked, %.2f%% wait\n",
+                util.getShare(WorkerState.EXEC), util.getShare(WorkerState.JOIN), util.getShare(WorkerState.INFRA),
+                util.getShare(WorkerState.PARKED), util.getShare(WorkerState.WAIT));
+
+        return util;
+    }
+
+    private static void add(Utilization util, boolean pool, long thread, long start, long end, WorkerState state) {
+        if (pool) {
+            util.add(thread, start, end, state);
+        } else {
+            util.addExternal(thread, start, end, state);
+        }
+    }
+
+}
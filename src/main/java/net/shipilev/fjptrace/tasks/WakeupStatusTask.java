@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace.tasks;
+
+import net.shipilev.fjptrace.Event;
+import net.shipilev.fjptrace.Events;
+import net.shipilev.fjptrace.WakeupStatus;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class WakeupStatusTask extends LoggedRecursiveTask<WakeupStatus> {
+
+    private final Events events;
+
+    public WakeupStatusTask(Events events) {
+        super("Computing wake-up latencies");
+        this.events = events;
+    }
+
+    @Override
+    public WakeupStatus doWork() throws Exception {
+        WakeupStatus status = new WakeupStatus();
+
+        // first signal since the thread was last woken up
+        Map<Long, Long> signals = new HashMap<>();
+
+        // last park, in case the signal came before it, and park returned immediately
+        Map<Long, Long> parks = new HashMap<>();
+
+        // threads woken up, and not executed anything since
+        Set<Long> idle = new HashSet<>();
+
+        for (Event e : events) {
+            switch (e.eventType) {
+                case UNPARK:
+                    if (!signals.containsKey(e.tag)) {
+                        signals.put(e.tag, e.time);
+                    }
+                    break;
+
+                case PARK:
+                    if (idle.remove(e.workerId)) {
+                        status.registerWasted(e.workerId);
+                    }
+                    parks.put(e.workerId, e.time);
+                    break;
+
+                case UNPARKED: {
+                    Long signal = signals.remove(e.workerId);
+                    Long park = parks.remove(e.workerId);
+                    if (signal != null) {
+                        long from = (park != null) ? Math.max(signal, park) : signal;
+                        status.registerWakeup(e.time, e.workerId, e.time - from);
+                    } else {
+                        status.registerUnsolicited(e.workerId);
+                    }
+                    idle.add(e.workerId);
+                    break;
+                }
+
+                case EXEC:
+                    idle.remove(e.workerId);
+                    break;
+            }
+        }
+
+        getPw().printf("Wake-ups: %d signalled, %d wasted, %.2f us p50, %.2f us p99\n",
+                status.getWakeups(), status.getWasted(),
+                status.getPercentile(50) / 1000, status.getPercentile(99) / 1000);
+
+        return status;
+    }
+
+}
@@ -43,7 +43,7 @@ public class WorkerQueueStatusTask extends LoggedRecursiveTask<QueueStatus> {
 
         QueueStatus status = new QueueStatus(events.getWorkers());
 
-        Map<Integer, Long> taskToWorker = new HashMap<>();
+        Map<Long, Long> taskToWorker = new HashMap<>();
         Multiset<Long> currentCount = new Multiset<>();
 
         for (Event e : events) {
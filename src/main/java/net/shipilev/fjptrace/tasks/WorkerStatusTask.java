@@ -115,6 +115,9 @@ public class WorkerStatusTask extends LoggedRecursiveTask<WorkerStatus> {
                         break;
                 }
             }
+
+            // the state is known up to the last flush
+            workerStatus.seal(events.getWatermark(w), w);
         }
 
         return workerStatus;
@@ -18,7 +18,9 @@ package net.shipilev.fjptrace.util;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 public class Timeline<T> {
 
@@ -33,13 +35,17 @@ public class Timeline<T> {
         isSorted = false;
     }
 
-    public T getStatus(long time, boolean makePrediction) {
+    private void ensureSorted() {
         if (!isSorted) {
             List<Tick<T>> newTicks = new ArrayList<>(ticks);
             Collections.sort(newTicks);
             ticks = newTicks;
             isSorted = true;
         }
+    }
+
+    public T getStatus(long time, boolean makePrediction) {
+        ensureSorted();
 
         int i = binarySearch(ticks, new Tick<T>(time, null), lastFound);
         if (i >= 0) {
@@ -99,6 +105,71 @@ public class Timeline<T> {
         return getStatus(time, false);
     }
 
+    /**
+     * Walks the timeline in time order. Every status lasts until the next
+     * tick; the status before the first tick, and after the last one, is
+     * unknown, and reported as null.
+     *
+     * @param from low bound, inclusive
+     * @param to   high bound, exclusive
+     * @return intervals covering [from, to), in time order
+     */
+    public Iterable<Interval<T>> intervals(final long from, final long to) {
+        ensureSorted();
+        final List<Tick<T>> list = ticks;
+
+        return new Iterable<Interval<T>>() {
+            @Override
+            public Iterator<Interval<T>> iterator() {
+                return new Iterator<Interval<T>>() {
+                    // first tick past the from time
+                    int i = upperBound(list, from);
+                    long time = from;
+
+                    @Override
+                    public boolean hasNext() {
+                        return time < to;
+                    }
+
+                    @Override
+                    public Interval<T> next() {
+                        if (time >= to) {
+                            throw new NoSuchElementException();
+                        }
+                        T status = (0 < i && i < list.size()) ? list.get(i - 1).status : null;
+                        long end = (i < list.size()) ? Math.min(to, list.get(i).time) : to;
+                        Interval<T> r = new Interval<>(time, end, status);
+                        time = end;
+                        i++;
+                        return r;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return index of the first tick after the given time
+     */
+    private static <T> int upperBound(List<Tick<T>> list, long time) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (list.get(mid).time <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
     public void removeBefore(long time) {
         // FIXME: Crude and inefficient
 
@@ -114,6 +185,33 @@ public class Timeline<T> {
     }
 
 
+    public static class Interval<T> {
+        private final long from;
+        private final long to;
+        private final T status;
+
+        public Interval(long from, long to, T status) {
+            this.from = from;
+            this.to = to;
+            this.status = status;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public long getTo() {
+            return to;
+        }
+
+        /**
+         * @return status, or null if unknown
+         */
+        public T getStatus() {
+            return status;
+        }
+    }
+
     private static class Tick<T> implements Comparable<Tick<T>> {
         private final long time;
         private final T status;
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace.util;
+
+import junit.framework.Assert;
+import net.shipilev.fjptrace.Calibration;
+import net.shipilev.fjptrace.TraceFormat;
+import org.junit.Test;
+
+public class CalibrationTest {
+
+    private static final int OPS = 10000;
+
+    @Test
+    public void testNanoTimeCost() {
+        double cost = Calibration.nanoTimeCost(OPS);
+        Assert.assertTrue("nanoTime() cost is out of range: " + cost, cost > 0 && cost < 10000);
+    }
+
+    @Test
+    public void testRecorderLike() {
+        final byte[] buffer = new byte[OPS * TraceFormat.CHUNK_SIZE];
+        double cost = Calibration.calibrate(new Runnable() {
+            @Override
+            public void run() {
+                int pos = 0;
+                for (int i = 0; i < OPS; i++) {
+                    long time = System.nanoTime();
+                    for (int b = 0; b < 8; b++) {
+                        buffer[pos + b] = (byte) (time >>> (b * 8));
+                    }
+                    buffer[pos + 8] = (byte) i;
+                    pos += TraceFormat.CHUNK_SIZE;
+                }
+            }
+        }, OPS);
+
+        Assert.assertFalse("Recorder-like cost is deemed implausible", Double.isNaN(cost));
+        Assert.assertTrue("Recorder-like cost is out of range: " + cost,
+                cost > 0 && cost <= Calibration.MAX_NANOTIME_RATIO * Math.max(1, Calibration.nanoTimeCost(OPS)));
+    }
+
+    @Test
+    public void testImplausible() {
+        Assert.assertTrue(Calibration.isSane(40, 31));
+        Assert.assertFalse("Cold class init estimate is accepted", Calibration.isSane(5926.7, 31));
+        Assert.assertFalse(Calibration.isSane(0, 31));
+        Assert.assertFalse(Calibration.isSane(Double.NaN, 31));
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace.util;
+
+import junit.framework.Assert;
+import net.shipilev.fjptrace.Simulator;
+import net.shipilev.fjptrace.TaskGraph;
+import org.junit.Test;
+
+public class SimulatorTest {
+
+    private TaskGraph forkJoin() {
+        TaskGraph g = new TaskGraph();
+        TaskGraph.Node r = g.node(1);
+        TaskGraph.Node a = g.node(2);
+        TaskGraph.Node b = g.node(3);
+        g.submit(r, 0);
+
+        g.work(r, 10);
+        g.fork(r, a);
+        g.fork(r, b);
+        g.work(r, 5);
+        g.join(r, a);
+        g.join(r, b);
+        g.work(r, 2);
+        g.work(a, 20);
+        g.work(b, 30);
+        return g;
+    }
+
+    @Test
+    public void testSingleWorker() {
+        Simulator sim = new Simulator(forkJoin(), 1, Simulator.Policy.RANDOM, 0, 42);
+        sim.run();
+
+        Assert.assertEquals(67, sim.getMakespan());
+        Assert.assertEquals(3, sim.getTasks());
+        Assert.assertEquals(1.0, sim.getUtilization(), 0.001);
+    }
+
+    @Test
+    public void testSpan() {
+        for (Simulator.Policy policy : Simulator.Policy.values()) {
+            Simulator sim = new Simulator(forkJoin(), 3, policy, 0, 42);
+            sim.run();
+
+            Assert.assertEquals(policy.toString(), 42, sim.getMakespan());
+            Assert.assertEquals(policy.toString(), 3, sim.getTasks());
+        }
+    }
+
+    @Test
+    public void testStealCost() {
+        Simulator sim = new Simulator(forkJoin(), 3, Simulator.Policy.RANDOM, 1, 42);
+        sim.run();
+
+        // root is taken from the submission queue, and "b" is stolen after "a"
+        Assert.assertEquals(44, sim.getMakespan());
+        Assert.assertEquals(3, sim.getSteals());
+    }
+
+    @Test
+    public void testArrivals() {
+        TaskGraph g = new TaskGraph();
+        TaskGraph.Node r1 = g.node(1);
+        TaskGraph.Node r2 = g.node(2);
+        g.submit(r1, 0);
+        g.submit(r2, 100);
+        g.work(r1, 10);
+        g.work(r2, 10);
+
+        Simulator sim = new Simulator(g, 2, Simulator.Policy.RANDOM, 0, 42);
+        sim.run();
+
+        Assert.assertEquals(110, sim.getMakespan());
+        Assert.assertEquals(20.0 / 220, sim.getUtilization(), 0.001);
+    }
+
+}
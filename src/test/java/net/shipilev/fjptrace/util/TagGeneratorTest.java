@@ -17,22 +17,51 @@ import net.shipilev.fjptrace.TagGenerator;
 
 public class TagGeneratorTest {
 
+    /**
+     * Walks the reserved ranges, the same way pool workers do.
+     */
+    private static class Owner {
+        private final TagGenerator generator;
+        private long next;
+        private long limit;
+
+        Owner(TagGenerator generator) {
+            this.generator = generator;
+        }
+
+        long next() {
+            long t = next;
+            if (t >= limit) {
+                t = generator.reserve();
+                limit = t + generator.getChunkSize();
+            }
+            next = t + 1;
+            return t;
+        }
+    }
+
     @Test
     public void testSeq() {
-        TagGenerator generator = new TagGenerator(1);
+        for (int chunk : new int[] { 1, 7, 1000 }) {
+            Owner owner = new Owner(new TagGenerator(chunk));
 
-        Set<Integer> results = new HashSet<>();
-        for (int c = 0; c < 100000; c++) {
-            boolean added = results.add(generator.next());
-            Assert.assertTrue("Duplicate element", added);
+            Set<Long> results = new HashSet<>();
+            for (int c = 0; c < 100000; c++) {
+                boolean added = results.add(owner.next());
+                Assert.assertTrue("Duplicate element", added);
+            }
         }
     }
 
     @Test
-    public void testWrap() {
-        TagGenerator generator = new TagGenerator(100_000_000);
-        for (int c = 0; c < Integer.MAX_VALUE - 1; c++) {
-            Assert.assertTrue("value is not positive", generator.next() > 0);
+    public void testNoWrap() {
+        TagGenerator generator = new TagGenerator(Integer.MAX_VALUE);
+        long last = 0;
+        for (int c = 0; c < 100; c++) {
+            long start = generator.reserve();
+            Assert.assertTrue("value is not positive", start > 0);
+            Assert.assertTrue("value is not increasing", start > last);
+            last = start;
         }
     }
 
@@ -43,26 +72,29 @@ public class TagGeneratorTest {
         int threads = Runtime.getRuntime().availableProcessors();
         ExecutorService pool = Executors.newFixedThreadPool(threads);
 
-        List<Future<Set<Integer>>> futures = new ArrayList<>(threads);
+        List<Future<Set<Long>>> futures = new ArrayList<>(threads);
         for (int t = 0; t < threads; t++) {
-            futures.add(pool.submit(new Callable<Set<Integer>>() {
+            futures.add(pool.submit(new Callable<Set<Long>>() {
                 @Override
-                public Set<Integer> call() throws Exception {
-                    Set<Integer> results = new HashSet<>();
+                public Set<Long> call() throws Exception {
+                    Owner owner = new Owner(generator);
+                    Set<Long> results = new HashSet<>();
                     for (int c = 0; c < 100000; c++) {
-                        Assert.assertTrue("Duplicate element", results.add(generator.next()));
+                        Assert.assertTrue("Duplicate element", results.add(owner.next()));
                     }
                     return results;
                 }
             }));
         }
 
-        Set<Integer> global = new HashSet<>();
-        for (Future<Set<Integer>> f : futures) {
-            for (Integer i : f.get()) {
+        Set<Long> global = new HashSet<>();
+        for (Future<Set<Long>> f : futures) {
+            for (Long i : f.get()) {
                 Assert.assertTrue("Duplicate element", global.add(i));
             }
         }
+
+        pool.shutdown();
     }
 
 
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.util;
+
+import junit.framework.Assert;
+import net.shipilev.fjptrace.TaskGraph;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class TaskGraphTest {
+
+    @Test
+    public void testForkJoin() {
+        TaskGraph g = new TaskGraph();
+        TaskGraph.Node r = g.node(1);
+        TaskGraph.Node a = g.node(2);
+        TaskGraph.Node b = g.node(3);
+        g.submit(r, 0);
+
+        g.work(r, 10);
+        g.fork(r, a);
+        g.fork(r, b);
+        g.work(r, 5);
+        g.join(r, a);
+        g.join(r, b);
+        g.work(r, 2);
+        g.work(a, 20);
+        g.work(b, 30);
+        g.compute();
+
+        Assert.assertEquals(67, r.getWork());
+        Assert.assertEquals(42, r.getSpan());
+        Assert.assertEquals(Arrays.asList(r, b), g.getCriticalPath(r));
+    }
+
+    @Test
+    public void testSequentialJoins() {
+        TaskGraph g = new TaskGraph();
+        TaskGraph.Node r = g.node(1);
+        TaskGraph.Node a = g.node(2);
+        TaskGraph.Node b = g.node(3);
+        g.submit(r, 0);
+
+        g.fork(r, a);
+        g.join(r, a);
+        g.fork(r, b);
+        g.work(r, 1);
+        g.join(r, b);
+        g.work(a, 20);
+        g.work(b, 30);
+        g.compute();
+
+        Assert.assertEquals(51, r.getWork());
+        Assert.assertEquals(50, r.getSpan());
+        Assert.assertEquals(Arrays.asList(r, a, b), g.getCriticalPath(r));
+    }
+
+    @Test
+    public void testUnjoined() {
+        TaskGraph g = new TaskGraph();
+        TaskGraph.Node r = g.node(1);
+        TaskGraph.Node a = g.node(2);
+        g.submit(r, 0);
+
+        g.work(r, 10);
+        g.fork(r, a);
+        g.work(r, 1);
+        g.work(a, 5);
+        g.compute();
+
+        Assert.assertEquals(16, r.getWork());
+        Assert.assertEquals(15, r.getSpan());
+    }
+
+    @Test
+    public void testDeepChain() {
+        TaskGraph g = new TaskGraph();
+        TaskGraph.Node prev = g.node(0);
+        g.submit(prev, 0);
+        for (int i = 1; i < 100_000; i++) {
+            TaskGraph.Node n = g.node(i);
+            g.fork(prev, n);
+            g.work(n, 1);
+            g.join(prev, n);
+            prev = n;
+        }
+        g.compute();
+
+        Assert.assertEquals(99_999, g.node(0).getWork());
+        Assert.assertEquals(99_999, g.node(0).getSpan());
+        Assert.assertEquals(100_000, g.getCriticalPath(g.node(0)).size());
+    }
+
+}
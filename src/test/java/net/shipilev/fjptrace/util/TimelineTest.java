@@ -24,4 +24,37 @@ public class TimelineTest {
         Assert.assertEquals(null, t.getStatus(40));
     }
 
+    @Test
+    public void testIntervals() {
+        Timeline<Integer> t = new Timeline<Integer>();
+
+        t.add(20, 2);
+        t.add(10, 1);
+        t.add(30, 3);
+
+        StringBuilder sb = new StringBuilder();
+        for (Timeline.Interval<Integer> i : t.intervals(0, 40)) {
+            sb.append(i.getFrom()).append("-").append(i.getTo()).append(":").append(i.getStatus()).append(" ");
+        }
+        Assert.assertEquals("0-10:null 10-20:1 20-30:2 30-40:null ", sb.toString());
+    }
+
+    @Test
+    public void testIntervalsInside() {
+        Timeline<Integer> t = new Timeline<Integer>();
+
+        t.add(10, 1);
+        t.add(20, 2);
+        t.add(30, 3);
+
+        long total = 0;
+        StringBuilder sb = new StringBuilder();
+        for (Timeline.Interval<Integer> i : t.intervals(15, 25)) {
+            sb.append(i.getFrom()).append("-").append(i.getTo()).append(":").append(i.getStatus()).append(" ");
+            total += i.getTo() - i.getFrom();
+        }
+        Assert.assertEquals("15-20:1 20-25:2 ", sb.toString());
+        Assert.assertEquals(10, total);
+    }
+
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.shipilev.fjptrace.TraceFormat;
+import net.shipilev.fjptrace.TraceGenerator;
+
+public class TraceGeneratorTest {
+
+    private static byte[] generate(long seed, int reorder) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        long count = new TraceGenerator()
+                .seed(seed).workers(4).depth(5).stealProbability(0.3).blockEvents(64).reorder(reorder)
+                .generate(bos, 10000);
+        Assert.assertTrue("Too few events", count >= 10000);
+        Assert.assertEquals("Size mismatch", count * TraceFormat.CHUNK_SIZE, bos.size());
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void testDeterministic() throws IOException {
+        Assert.assertTrue(Arrays.equals(generate(1, 0), generate(1, 0)));
+        Assert.assertTrue(Arrays.equals(generate(1, 4), generate(1, 4)));
+        Assert.assertFalse(Arrays.equals(generate(1, 0), generate(2, 0)));
+    }
+
+    @Test
+    public void testBudget() throws IOException {
+        // overshoot is a single tree, not a tree per worker
+        long count = new TraceGenerator()
+                .seed(1).workers(256).depth(5).stealProbability(0.3)
+                .generate(new ByteArrayOutputStream(), 10000);
+        Assert.assertTrue("Too few events: " + count, count >= 10000);
+        Assert.assertTrue("Too many events: " + count, count < 11000);
+    }
+
+    @Test
+    public void testPerThreadOrder() throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(generate(1, 0)).order(ByteOrder.nativeOrder());
+        Map<Integer, Long> lastTime = new HashMap<>();
+        for (int pos = 0; pos < buf.limit(); pos += TraceFormat.CHUNK_SIZE) {
+            long time = buf.getLong(pos + TraceFormat.TIME_OFFSET);
+            int thread = buf.getInt(pos + TraceFormat.THREAD_OFFSET);
+            Long last = lastTime.put(thread, time);
+            Assert.assertTrue("Time goes backwards for thread " + thread, last == null || last <= time);
+        }
+    }
+
+    @Test
+    public void testReorderKeepsEvents() throws IOException {
+        byte[] ordered = generate(1, 0);
+        byte[] reordered = generate(1, 16);
+        Assert.assertFalse("Blocks are not reordered", Arrays.equals(ordered, reordered));
+        Assert.assertTrue("Events differ", Arrays.equals(records(ordered), records(reordered)));
+    }
+
+    private static String[] records(byte[] trace) {
+        String[] r = new String[trace.length / TraceFormat.CHUNK_SIZE];
+        for (int i = 0; i < r.length; i++) {
+            r[i] = Arrays.toString(Arrays.copyOfRange(trace, i * TraceFormat.CHUNK_SIZE, (i + 1) * TraceFormat.CHUNK_SIZE));
+        }
+        Arrays.sort(r);
+        return r;
+    }
+
+}
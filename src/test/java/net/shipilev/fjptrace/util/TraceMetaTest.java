@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.shipilev.fjptrace.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import net.shipilev.fjptrace.EventType;
+import net.shipilev.fjptrace.TraceMeta;
+
+public class TraceMetaTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (String payload : new String[] { "", "a", "java.util.concurrent.RecursiveAction", "\u043f\u0440\u0438\u0432\u0435\u0442" }) {
+            byte[] block = new TraceMeta(TraceMeta.Kind.CLASS, 42, payload).encode();
+            Assert.assertEquals("Block is not chunk-aligned", 0, block.length % TraceMeta.CHUNK_SIZE);
+
+            byte[] header = Arrays.copyOf(block, TraceMeta.CHUNK_SIZE);
+            Assert.assertTrue("Header is not recognized", TraceMeta.isMeta(header));
+
+            ByteArrayInputStream is = new ByteArrayInputStream(block, TraceMeta.CHUNK_SIZE, block.length - TraceMeta.CHUNK_SIZE);
+            TraceMeta meta = TraceMeta.read(header, is);
+            Assert.assertEquals(TraceMeta.Kind.CLASS, meta.getKind());
+            Assert.assertEquals(42, meta.getId());
+            Assert.assertEquals(payload, meta.getPayload());
+            Assert.assertEquals("Block is not consumed", 0, is.available());
+        }
+    }
+
+    @Test
+    public void testTypePacking() {
+        for (EventType type : EventType.values()) {
+            for (int classId : new int[] { TraceMeta.NO_CLASS, 1, TraceMeta.MAX_CLASSES - 1 }) {
+                short packed = TraceMeta.encodeType(type, classId);
+                Assert.assertEquals(type, TraceMeta.decodeType(packed));
+                Assert.assertEquals(classId, TraceMeta.decodeClass(packed));
+            }
+        }
+    }
+
+}
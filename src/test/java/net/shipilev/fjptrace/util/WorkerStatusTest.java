@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2012 Aleksey Shipilev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.shipilev.fjptrace.util;
+
+import junit.framework.Assert;
+import net.shipilev.fjptrace.WorkerStatus;
+import net.shipilev.fjptrace.WorkerStatusPK;
+import org.junit.Test;
+
+public class WorkerStatusTest {
+
+    @Test
+    public void testSealAfterEvents() {
+        WorkerStatus s = new WorkerStatus();
+        s.add(10, 1, WorkerStatusPK.ACTIVE);
+        s.add(20, 1, WorkerStatusPK.PARKED);
+        s.seal(30, 1);
+
+        Assert.assertEquals(WorkerStatusPK.ACTIVE, s.getStatus(1, 15).pkStatus);
+        Assert.assertEquals(WorkerStatusPK.PARKED, s.getStatus(1, 25).pkStatus);
+        Assert.assertEquals(30L, (long) s.getTimes().last());
+    }
+
+    @Test
+    public void testSealBeforeEvents() {
+        WorkerStatus s = new WorkerStatus();
+        s.add(10, 1, WorkerStatusPK.ACTIVE);
+        s.add(20, 1, WorkerStatusPK.PARKED);
+        s.seal(15, 1);
+
+        // watermark behind the last event must not bring the final status earlier
+        Assert.assertEquals(WorkerStatusPK.ACTIVE, s.getStatus(1, 15).pkStatus);
+        Assert.assertEquals(WorkerStatusPK.ACTIVE, s.getStatus(1, 19).pkStatus);
+        Assert.assertEquals(WorkerStatusPK.PARKED, s.getStatus(1, 20).pkStatus);
+        Assert.assertEquals(20L, (long) s.getTimes().last());
+    }
+
+}